@@ -24,6 +24,9 @@ import io.netty.util.internal.MathUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Skeletal {@link ByteBufAllocator} implementation to extend.
  */
@@ -38,6 +41,13 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
     }
 
     protected static ByteBuf toLeakAwareBuffer(ByteBuf buf) {
+        ByteBufAllocator alloc = buf.alloc();
+        if (alloc instanceof AbstractByteBufAllocator) {
+            AllocationSiteSampler sampler = ((AbstractByteBufAllocator) alloc).sampler;
+            if (sampler != null) {
+                buf = sampler.sample(buf);
+            }
+        }
         ResourceLeakTracker<ByteBuf> leak;
         switch (ResourceLeakDetector.getLevel()) {
             case SIMPLE:
@@ -83,6 +93,7 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
 
     private final boolean directByDefault;
     private final ByteBuf emptyBuf;
+    private volatile AllocationSiteSampler sampler;
 
     /**
      * Instance use heap buffers by default
@@ -100,6 +111,51 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
     protected AbstractByteBufAllocator(boolean preferDirect) {
         directByDefault = preferDirect && PlatformDependent.hasUnsafe();
         emptyBuf = new EmptyByteBuf(this);
+        if (AllocationSiteSampler.DEFAULT_SAMPLING_INTERVAL > 0) {
+            sampler = new AllocationSiteSampler(AllocationSiteSampler.DEFAULT_SAMPLING_INTERVAL);
+        }
+    }
+
+    /**
+     * Sets the interval at which allocated buffers are sampled to track the live buffers by allocation site. On
+     * average every {@code samplingInterval}-th buffer is sampled, {@code 1} samples every buffer and {@code 0}
+     * disables sampling. The default is set via {@code -Dio.netty.allocator.liveBufferSamplingInterval} and is
+     * {@code 0}.
+     * <p>
+     * Changing the interval discards the sites that were tracked so far.
+     *
+     * @see #liveAllocationSites()
+     */
+    public void setLiveBufferSamplingInterval(int samplingInterval) {
+        checkPositiveOrZero(samplingInterval, "samplingInterval");
+        sampler = samplingInterval == 0 ? null : new AllocationSiteSampler(samplingInterval);
+    }
+
+    /**
+     * Returns the interval at which allocated buffers are sampled, or {@code 0} if sampling is disabled.
+     *
+     * @see #setLiveBufferSamplingInterval(int)
+     */
+    public int liveBufferSamplingInterval() {
+        AllocationSiteSampler sampler = this.sampler;
+        return sampler == null ? 0 : sampler.samplingInterval();
+    }
+
+    /**
+     * Returns a snapshot of the sampled buffers which were allocated by this allocator and are not released yet,
+     * aggregated by the site they were allocated at and ordered by their capacity. This allows to find the code that
+     * retains memory without enabling {@link ResourceLeakDetector.Level#PARANOID} leak detection.
+     * <p>
+     * Returns an empty list if sampling is disabled.
+     *
+     * @see #setLiveBufferSamplingInterval(int)
+     */
+    public List<ByteBufAllocationSite> liveAllocationSites() {
+        AllocationSiteSampler sampler = this.sampler;
+        if (sampler == null) {
+            return Collections.emptyList();
+        }
+        return sampler.liveSites();
     }
 
     @Override
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * An auto-tuning pooling {@link ByteBufAllocator}, that follows an anti-generational hypothesis.
+ * <p>
+ * Instead of using fixed size classes and per-thread caches like {@link PooledByteBufAllocator}, this allocator
+ * carves buffers out of chunks that are held by "magazines". Event loop threads own a magazine each, all other threads
+ * share a set of magazines that grows when contention is detected. The size of the chunks is adapted to the observed
+ * distribution of allocation sizes, and chunks that no longer fit the allocation pattern are released to the system
+ * once all buffers that were allocated from them are released.
+ * <p>
+ * This allocator can be used as the default by setting {@code -Dio.netty.allocator.type=adaptive}.
+ */
+public final class AdaptiveByteBufAllocator extends AbstractByteBufAllocator
+        implements ByteBufAllocatorMetricProvider, ByteBufAllocatorMetric {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AdaptiveByteBufAllocator.class);
+    private static final boolean DEFAULT_USE_CACHED_MAGAZINES_FOR_NON_EVENT_LOOP_THREADS;
+
+    static {
+        DEFAULT_USE_CACHED_MAGAZINES_FOR_NON_EVENT_LOOP_THREADS = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.useCachedMagazinesForNonEventLoopThreads", false);
+        logger.debug("-Dio.netty.allocator.useCachedMagazinesForNonEventLoopThreads: {}",
+                     DEFAULT_USE_CACHED_MAGAZINES_FOR_NON_EVENT_LOOP_THREADS);
+    }
+
+    private final UnpooledByteBufAllocator chunkAllocator;
+    private final AdaptivePoolingAllocator direct;
+    private final AdaptivePoolingAllocator heap;
+
+    public AdaptiveByteBufAllocator() {
+        this(PlatformDependent.directBufferPreferred());
+    }
+
+    public AdaptiveByteBufAllocator(boolean preferDirect) {
+        this(preferDirect, DEFAULT_USE_CACHED_MAGAZINES_FOR_NON_EVENT_LOOP_THREADS);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param preferDirect {@code true} if {@link #buffer(int)} should try to allocate a direct buffer rather than
+     *                     a heap buffer
+     * @param useCacheForNonEventLoopThreads {@code true} if all {@link io.netty.util.concurrent.FastThreadLocalThread}s
+     *                                       should use a magazine of their own, and not only event loop threads.
+     */
+    public AdaptiveByteBufAllocator(boolean preferDirect, boolean useCacheForNonEventLoopThreads) {
+        super(preferDirect);
+        // The chunks are never exposed to the user, so there is no need for leak detection on them.
+        chunkAllocator = new UnpooledByteBufAllocator(false, true);
+        direct = new AdaptivePoolingAllocator(this, new DirectChunkAllocator(chunkAllocator),
+                useCacheForNonEventLoopThreads);
+        heap = new AdaptivePoolingAllocator(this, new HeapChunkAllocator(chunkAllocator),
+                useCacheForNonEventLoopThreads);
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        return toLeakAwareBuffer(heap.allocate(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        return toLeakAwareBuffer(direct.allocate(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return true;
+    }
+
+    @Override
+    public long usedHeapMemory() {
+        return chunkAllocator.metric().usedHeapMemory();
+    }
+
+    @Override
+    public long usedDirectMemory() {
+        return chunkAllocator.metric().usedDirectMemory();
+    }
+
+    @Override
+    public ByteBufAllocatorMetric metric() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) +
+                "(usedHeapMemory: " + usedHeapMemory() + "; usedDirectMemory: " + usedDirectMemory() + ')';
+    }
+
+    private static final class HeapChunkAllocator implements AdaptivePoolingAllocator.ChunkAllocator {
+        private final ByteBufAllocator allocator;
+
+        HeapChunkAllocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public AbstractByteBuf allocate(int initialCapacity, int maxCapacity) {
+            return (AbstractByteBuf) allocator.heapBuffer(initialCapacity, maxCapacity);
+        }
+    }
+
+    private static final class DirectChunkAllocator implements AdaptivePoolingAllocator.ChunkAllocator {
+        private final ByteBufAllocator allocator;
+
+        DirectChunkAllocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public AbstractByteBuf allocate(int initialCapacity, int maxCapacity) {
+            return (AbstractByteBuf) allocator.directBuffer(initialCapacity, maxCapacity);
+        }
+    }
+}
@@ -0,0 +1,899 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.NettyRuntime;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.internal.ObjectPool;
+import io.netty.util.internal.ObjectPool.Handle;
+import io.netty.util.internal.ObjectPool.ObjectCreator;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An auto-tuning pooling allocator, that follows an anti-generational hypothesis.
+ * <p>
+ * The allocator is organized into a list of Magazines, and each magazine has a chunk-buffer that they allocate buffers
+ * from.
+ * <p>
+ * The magazines hold the mutexes that ensure the thread-safety of the allocator, and each thread picks a magazine
+ * based on the id of the thread. This spreads the contention of multi-threaded access across the magazines.
+ * If contention is detected above a certain threshold, the number of magazines are increased in response to the
+ * contention. Event loop threads get a magazine of their own, which they can use without any locking at all.
+ * <p>
+ * The magazines maintain histograms of the sizes of the allocations they do. The histograms are used to compute the
+ * preferred chunk size. The preferred chunk size is one that is big enough to service 10 allocations of the
+ * 99-percentile size. This way, the chunk size is adapted to the allocation patterns.
+ * <p>
+ * Computing the preferred chunk size is a somewhat expensive operation. Therefore, the frequency with which this is
+ * done, is also adapted to the allocation pattern. If a newly computed preferred chunk is the same as the previous
+ * preferred chunk size, then the frequency is reduced. Otherwise, the frequency is increased.
+ * <p>
+ * This allows the allocator to quickly respond to changes in the application workload,
+ * without suffering undue overhead from maintaining its statistics.
+ * <p>
+ * Since magazines are "relatively thread-local", the allocator has a central queue that allow excess chunks from any
+ * magazine, to be shared with other magazines. Chunks are only put back into the central queue while it has capacity
+ * and while their size still matches the preferred chunk size, all other chunks are released to the system once the
+ * last buffer that was allocated from them is released. This way idle memory is given back automatically.
+ */
+final class AdaptivePoolingAllocator {
+    private static final int EXPANSION_ATTEMPTS = 3;
+    private static final int INITIAL_MAGAZINES = 4;
+    private static final int MIN_CHUNK_SIZE = 128 * 1024;
+    private static final int MAX_STRIPES = NettyRuntime.availableProcessors() * 2;
+    // For large buffers, aim to have about this many buffers per chunk.
+    private static final int BUFS_PER_CHUNK = 10;
+    // Buffers bigger than the largest histogram bucket are never pooled.
+    private static final int MAX_POOLED_BUF_SIZE = 1 << AllocationStatistics.HISTO_MAX_BUCKET_SHIFT;
+    private static final int MAX_CHUNK_SIZE = BUFS_PER_CHUNK * MAX_POOLED_BUF_SIZE;
+
+    /**
+     * The capacity of the central queue that allow chunks to be shared across magazines.
+     * The default size is {@link NettyRuntime#availableProcessors()},
+     * and the maximum number of magazines is twice this.
+     * <p>
+     * This means the maximum amount of memory that we can have allocated-but-not-in-use is
+     * 5 * {@link NettyRuntime#availableProcessors()} * {@link #MAX_CHUNK_SIZE} bytes.
+     */
+    private static final int CENTRAL_QUEUE_CAPACITY = Math.max(2, SystemPropertyUtil.getInt(
+            "io.netty.allocator.centralQueueCapacity", NettyRuntime.availableProcessors()));
+
+    private static final Object NO_MAGAZINE = Boolean.TRUE;
+
+    private final ChunkAllocator chunkAllocator;
+    private final ByteBufAllocator parent;
+    private final Queue<Chunk> centralQueue;
+    private final ReentrantLock magazineExpandLock;
+    private final FastThreadLocal<Object> threadLocalMagazine;
+    private volatile Magazine[] magazines;
+
+    AdaptivePoolingAllocator(ByteBufAllocator parent, ChunkAllocator chunkAllocator,
+                             final boolean useCacheForNonEventLoopThreads) {
+        this.parent = parent;
+        this.chunkAllocator = chunkAllocator;
+        centralQueue = PlatformDependent.newFixedMpmcQueue(CENTRAL_QUEUE_CAPACITY);
+        magazineExpandLock = new ReentrantLock();
+        threadLocalMagazine = new FastThreadLocal<Object>() {
+            @Override
+            protected Object initialValue() {
+                if (useCacheForNonEventLoopThreads || ThreadExecutorMap.currentExecutor() != null) {
+                    // Only cache magazines for threads that will clean up their FastThreadLocals, as otherwise the
+                    // memory of the magazine's current chunk could not be released once the thread terminates.
+                    if (FastThreadLocalThread.willCleanupFastThreadLocals(Thread.currentThread())) {
+                        return new Magazine(AdaptivePoolingAllocator.this, false);
+                    }
+                }
+                return NO_MAGAZINE;
+            }
+
+            @Override
+            protected void onRemoval(Object value) {
+                if (value != NO_MAGAZINE) {
+                    ((Magazine) value).free();
+                }
+            }
+        };
+        Magazine[] mags = new Magazine[INITIAL_MAGAZINES];
+        for (int i = 0; i < mags.length; i++) {
+            mags[i] = new Magazine(this, true);
+        }
+        magazines = mags;
+    }
+
+    ByteBuf allocate(int size, int maxCapacity) {
+        AdaptiveByteBuf buf = AdaptiveByteBuf.newInstance(this, maxCapacity);
+        allocate(size, maxCapacity, Thread.currentThread(), buf);
+        return buf;
+    }
+
+    private void allocate(int size, int maxCapacity, Thread currentThread, AdaptiveByteBuf buf) {
+        if (size <= MAX_POOLED_BUF_SIZE && tryAllocateFromMagazine(size, maxCapacity, currentThread, buf)) {
+            return;
+        }
+        // The magazines failed us, or the buffer is too big to be pooled.
+        Chunk chunk = new Chunk(chunkAllocator.allocate(size, size), null, false);
+        chunk.readInitInto(buf, size, maxCapacity);
+        // The buffer now holds the only reference to the chunk.
+        chunk.release();
+    }
+
+    private boolean tryAllocateFromMagazine(int size, int maxCapacity, Thread currentThread, AdaptiveByteBuf buf) {
+        int sizeBucket = AllocationStatistics.sizeBucket(size); // Compute outside of Magazine lock for better ILP.
+        if (currentThread instanceof FastThreadLocalThread) {
+            Object mag = threadLocalMagazine.get();
+            if (mag != NO_MAGAZINE) {
+                boolean allocated = ((Magazine) mag).tryAllocate(size, sizeBucket, maxCapacity, buf);
+                assert allocated : "Allocation of threadLocalMagazine must always succeed";
+                return true;
+            }
+        }
+        long threadId = currentThread.getId();
+        Magazine[] mags;
+        int expansions = 0;
+        do {
+            mags = magazines;
+            int mask = mags.length - 1;
+            int index = (int) (threadId & mask);
+            for (int i = 0, m = Integer.numberOfTrailingZeros(~mask); i < m; i++) {
+                Magazine mag = mags[index + i & mask];
+                if (mag.tryAllocate(size, sizeBucket, maxCapacity, buf)) {
+                    return true;
+                }
+            }
+            expansions++;
+        } while (expansions <= EXPANSION_ATTEMPTS && tryExpandMagazines(mags.length));
+        return false;
+    }
+
+    /**
+     * Allocate into the given buffer. Used by {@link AdaptiveByteBuf#capacity(int)}.
+     */
+    void reallocate(int size, int maxCapacity, AdaptiveByteBuf into) {
+        allocate(size, maxCapacity, Thread.currentThread(), into);
+    }
+
+    private boolean tryExpandMagazines(int currentLength) {
+        if (currentLength >= MAX_STRIPES) {
+            return true;
+        }
+        if (!magazineExpandLock.tryLock()) {
+            // Someone else is expanding the magazines right now, just try again.
+            return true;
+        }
+        try {
+            Magazine[] mags = magazines;
+            if (mags.length >= MAX_STRIPES || mags.length > currentLength) {
+                return true;
+            }
+            Magazine[] expanded = Arrays.copyOf(mags, mags.length * 2);
+            for (int i = mags.length; i < expanded.length; i++) {
+                expanded[i] = new Magazine(this, true);
+            }
+            magazines = expanded;
+        } finally {
+            magazineExpandLock.unlock();
+        }
+        return true;
+    }
+
+    private boolean offerToQueue(Chunk chunk) {
+        return centralQueue.offer(chunk);
+    }
+
+    int preferredChunkSize() {
+        int size = MIN_CHUNK_SIZE;
+        for (Magazine mag : magazines) {
+            size = Math.max(size, mag.localPrefChunkSize);
+        }
+        return size;
+    }
+
+    /**
+     * Allocates the memory that backs a {@link Chunk}.
+     */
+    interface ChunkAllocator {
+        /**
+         * Allocate a buffer for a chunk. This can be any kind of {@link AbstractByteBuf} implementation.
+         * @param initialCapacity The initial capacity of the returned {@link AbstractByteBuf}.
+         * @param maxCapacity The maximum capacity of the returned {@link AbstractByteBuf}.
+         * @return The buffer that represents the chunk memory.
+         */
+        AbstractByteBuf allocate(int initialCapacity, int maxCapacity);
+    }
+
+    /**
+     * Keeps track of the sizes of allocations a {@link Magazine} performs, so it can compute the preferred chunk size.
+     */
+    private abstract static class AllocationStatistics {
+        static final int HISTO_MIN_BUCKET_SHIFT = 13; // Smallest bucket is 1 << 13 = 8192 bytes in size.
+        static final int HISTO_MAX_BUCKET_SHIFT = 20; // Biggest bucket is 1 << 20 = 1 MiB bytes in size.
+        private static final int HISTO_BUCKET_COUNT = 1 + HISTO_MAX_BUCKET_SHIFT - HISTO_MIN_BUCKET_SHIFT; // 8 buckets.
+        private static final int HISTO_MAX_BUCKET_MASK = HISTO_BUCKET_COUNT - 1;
+        private static final int SIZE_MAX_MASK = MAX_CHUNK_SIZE - 1;
+        private static final int MIN_DATUM_TARGET = 1024;
+        private static final int MAX_DATUM_TARGET = 65534;
+
+        private final int[][] histos = {
+                new int[HISTO_BUCKET_COUNT], new int[HISTO_BUCKET_COUNT],
+                new int[HISTO_BUCKET_COUNT], new int[HISTO_BUCKET_COUNT],
+        };
+        private final int[] sums = new int[HISTO_BUCKET_COUNT];
+        private int[] histo = histos[0];
+        private int histoIndex;
+        private int datumCount;
+        private int datumTarget = MIN_DATUM_TARGET;
+        protected volatile int localPrefChunkSize = MIN_CHUNK_SIZE;
+
+        static int sizeBucket(int size) {
+            if (size == 0) {
+                return 0;
+            }
+            // Minimum chunk size is 128 KiB. We'll only make bigger chunks if the 99-percentile is 16 KiB or greater,
+            // so we truncate and roll up the bottom part of the histogram to 8 KiB.
+            // The upper size band is 1 MiB, and that gives us exactly 8 size buckets,
+            // which is a magical number for JIT optimisations.
+            int normalizedSize = size - 1 >> HISTO_MIN_BUCKET_SHIFT & SIZE_MAX_MASK;
+            return Math.min(Integer.SIZE - Integer.numberOfLeadingZeros(normalizedSize), HISTO_MAX_BUCKET_MASK);
+        }
+
+        final void recordAllocationSize(int bucket) {
+            histo[bucket]++;
+            if (datumCount++ == datumTarget) {
+                rotateHistograms();
+            }
+        }
+
+        private void rotateHistograms() {
+            int[][] hs = histos;
+            for (int i = 0; i < HISTO_BUCKET_COUNT; i++) {
+                sums[i] = (hs[0][i] & 0xFFFF) + (hs[1][i] & 0xFFFF) + (hs[2][i] & 0xFFFF) + (hs[3][i] & 0xFFFF);
+            }
+            int sum = 0;
+            for (int count : sums) {
+                sum += count;
+            }
+            int targetPercentile = (int) (sum * 0.99);
+            int sizeBucket = 0;
+            for (; sizeBucket < sums.length; sizeBucket++) {
+                if (sums[sizeBucket] > targetPercentile) {
+                    break;
+                }
+                targetPercentile -= sums[sizeBucket];
+            }
+            int percentileSize = 1 << sizeBucket + HISTO_MIN_BUCKET_SHIFT;
+            int prefChunkSize = Math.max(percentileSize * BUFS_PER_CHUNK, MIN_CHUNK_SIZE);
+            if (localPrefChunkSize != prefChunkSize) {
+                // Preferred chunk size changed. Increase check frequency.
+                datumTarget = Math.max(datumTarget >> 1, MIN_DATUM_TARGET);
+                localPrefChunkSize = prefChunkSize;
+            } else {
+                // Preferred chunk size did not change. Check less often.
+                datumTarget = Math.min(datumTarget << 1, MAX_DATUM_TARGET);
+            }
+
+            histoIndex = histoIndex + 1 & 3;
+            histo = histos[histoIndex];
+            datumCount = 0;
+            Arrays.fill(histo, 0);
+        }
+    }
+
+    private static final class Magazine extends AllocationStatistics {
+        private final AdaptivePoolingAllocator parent;
+        // Only shareable magazines need to be guarded by the lock, thread-local ones are only used by their owner.
+        private final ReentrantLock allocationLock;
+        private Chunk current;
+
+        Magazine(AdaptivePoolingAllocator parent, boolean shareable) {
+            this.parent = parent;
+            allocationLock = shareable ? new ReentrantLock() : null;
+        }
+
+        boolean tryAllocate(int size, int sizeBucket, int maxCapacity, AdaptiveByteBuf buf) {
+            if (allocationLock == null) {
+                allocate(size, sizeBucket, maxCapacity, buf);
+                return true;
+            }
+            if (!allocationLock.tryLock()) {
+                return false;
+            }
+            try {
+                allocate(size, sizeBucket, maxCapacity, buf);
+                return true;
+            } finally {
+                allocationLock.unlock();
+            }
+        }
+
+        private void allocate(int size, int sizeBucket, int maxCapacity, AdaptiveByteBuf buf) {
+            recordAllocationSize(sizeBucket);
+            Chunk curr = current;
+            if (curr != null) {
+                if (curr.remainingCapacity() >= size) {
+                    curr.readInitInto(buf, size, maxCapacity);
+                    if (curr.remainingCapacity() == 0) {
+                        current = null;
+                        curr.release();
+                    }
+                    return;
+                }
+                // The current chunk is too small to service this allocation, retire it. Its memory becomes
+                // available again once all buffers that were allocated from it are released.
+                current = null;
+                curr.release();
+            }
+
+            curr = parent.centralQueue.poll();
+            if (curr != null && curr.capacity() < size) {
+                // The chunk can't service this allocation, release it to the system.
+                curr.pooled = false;
+                curr.release();
+                curr = null;
+            }
+            if (curr == null) {
+                curr = newChunkAllocation(size);
+            } else {
+                curr.attachToMagazine(this);
+            }
+            curr.readInitInto(buf, size, maxCapacity);
+            if (curr.remainingCapacity() == 0) {
+                curr.release();
+            } else {
+                current = curr;
+            }
+        }
+
+        private Chunk newChunkAllocation(int promptingSize) {
+            int size = Math.max(promptingSize, preferredChunkSize());
+            return new Chunk(parent.chunkAllocator.allocate(size, size), this, true);
+        }
+
+        int preferredChunkSize() {
+            return allocationLock == null ? localPrefChunkSize : parent.preferredChunkSize();
+        }
+
+        void free() {
+            Chunk curr = current;
+            if (curr != null) {
+                current = null;
+                // The owning thread is gone, give the memory back once all its buffers are released.
+                curr.pooled = false;
+                curr.release();
+            }
+        }
+    }
+
+    private static final class Chunk extends AbstractReferenceCounted {
+        private final AbstractByteBuf delegate;
+        private Magazine magazine;
+        private int allocatedBytes;
+        boolean pooled;
+
+        Chunk(AbstractByteBuf delegate, Magazine magazine, boolean pooled) {
+            this.delegate = delegate;
+            this.magazine = magazine;
+            this.pooled = pooled;
+        }
+
+        void attachToMagazine(Magazine magazine) {
+            this.magazine = magazine;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+
+        @Override
+        protected void deallocate() {
+            Magazine mag = magazine;
+            if (pooled && mag != null) {
+                int chunkSize = mag.preferredChunkSize();
+                int memSize = delegate.capacity();
+                // Only keep the chunk around if its size is still a good fit for the current allocation pattern.
+                if (memSize >= chunkSize && memSize <= chunkSize + (chunkSize >> 1)) {
+                    allocatedBytes = 0;
+                    setRefCnt(1);
+                    if (mag.parent.offerToQueue(this)) {
+                        return;
+                    }
+                }
+            }
+            magazine = null;
+            delegate.release();
+        }
+
+        void readInitInto(AdaptiveByteBuf buf, int size, int maxCapacity) {
+            int startIndex = allocatedBytes;
+            allocatedBytes = startIndex + size;
+            retain();
+            buf.init(delegate, this, startIndex, size, maxCapacity);
+        }
+
+        int remainingCapacity() {
+            return delegate.capacity() - allocatedBytes;
+        }
+
+        int capacity() {
+            return delegate.capacity();
+        }
+    }
+
+    static final class AdaptiveByteBuf extends AbstractReferenceCountedByteBuf {
+        private static final ObjectPool<AdaptiveByteBuf> RECYCLER = ObjectPool.newPool(
+                new ObjectCreator<AdaptiveByteBuf>() {
+                    @Override
+                    public AdaptiveByteBuf newObject(Handle<AdaptiveByteBuf> handle) {
+                        return new AdaptiveByteBuf(handle);
+                    }
+                });
+
+        static AdaptiveByteBuf newInstance(AdaptivePoolingAllocator allocator, int maxCapacity) {
+            AdaptiveByteBuf buf = RECYCLER.get();
+            buf.allocator = allocator;
+            buf.reuse(maxCapacity);
+            return buf;
+        }
+
+        private final Handle<AdaptiveByteBuf> handle;
+
+        private AdaptivePoolingAllocator allocator;
+        private AbstractByteBuf rootParent;
+        private Chunk chunk;
+        private int adjustment;
+        private int length;
+        private int maxFastCapacity;
+        private ByteBuffer tmpNioBuf;
+
+        AdaptiveByteBuf(Handle<AdaptiveByteBuf> recyclerHandle) {
+            super(0);
+            handle = recyclerHandle;
+        }
+
+        void init(AbstractByteBuf unwrapped, Chunk wrapped, int adjustment, int capacity, int maxCapacity) {
+            this.adjustment = adjustment;
+            length = capacity;
+            maxFastCapacity = capacity;
+            maxCapacity(maxCapacity);
+            tmpNioBuf = null;
+            rootParent = unwrapped;
+            chunk = wrapped;
+        }
+
+        private void reuse(int maxCapacity) {
+            maxCapacity(maxCapacity);
+            resetRefCnt();
+            setIndex0(0, 0);
+            discardMarks();
+        }
+
+        @Override
+        public int capacity() {
+            return length;
+        }
+
+        @Override
+        public int maxFastWritableBytes() {
+            return Math.min(maxFastCapacity, maxCapacity()) - writerIndex;
+        }
+
+        @Override
+        public ByteBuf capacity(int newCapacity) {
+            if (length <= newCapacity && newCapacity <= maxFastCapacity) {
+                ensureAccessible();
+                length = newCapacity;
+                return this;
+            }
+            checkNewCapacity(newCapacity);
+            if (newCapacity < capacity()) {
+                length = newCapacity;
+                trimIndicesToCapacity(newCapacity);
+                return this;
+            }
+
+            // Reallocation required.
+            Chunk chunk = this.chunk;
+            AdaptivePoolingAllocator allocator = this.allocator;
+            int readerIndex = this.readerIndex;
+            int writerIndex = this.writerIndex;
+            int baseOldRootIndex = adjustment;
+            int oldCapacity = length;
+            AbstractByteBuf oldRoot = rootParent;
+            allocator.reallocate(newCapacity, maxCapacity(), this);
+            oldRoot.getBytes(baseOldRootIndex, this, 0, oldCapacity);
+            chunk.release();
+            setIndex0(readerIndex, writerIndex);
+            return this;
+        }
+
+        @Override
+        public ByteBufAllocator alloc() {
+            return allocator.parent;
+        }
+
+        @Override
+        public ByteOrder order() {
+            return ByteOrder.BIG_ENDIAN;
+        }
+
+        @Override
+        public ByteBuf unwrap() {
+            return null;
+        }
+
+        // Visible for testing
+        Object magazine() {
+            Chunk chunk = this.chunk;
+            return chunk == null ? null : chunk.magazine;
+        }
+
+        @Override
+        public boolean isDirect() {
+            return rootParent().isDirect();
+        }
+
+        @Override
+        public boolean isContiguous() {
+            return true;
+        }
+
+        @Override
+        public boolean hasArray() {
+            AbstractByteBuf rootParent = this.rootParent;
+            return rootParent != null && rootParent.hasArray();
+        }
+
+        @Override
+        public byte[] array() {
+            ensureAccessible();
+            return rootParent().array();
+        }
+
+        @Override
+        public int arrayOffset() {
+            return idx(rootParent().arrayOffset());
+        }
+
+        @Override
+        public boolean hasMemoryAddress() {
+            AbstractByteBuf rootParent = this.rootParent;
+            return rootParent != null && rootParent.hasMemoryAddress();
+        }
+
+        @Override
+        public long memoryAddress() {
+            ensureAccessible();
+            return rootParent().memoryAddress() + adjustment;
+        }
+
+        @Override
+        public int nioBufferCount() {
+            return 1;
+        }
+
+        @Override
+        public ByteBuffer nioBuffer(int index, int length) {
+            checkIndex(index, length);
+            return rootParent.nioBuffer(idx(index), length);
+        }
+
+        @Override
+        public ByteBuffer internalNioBuffer(int index, int length) {
+            checkIndex(index, length);
+            return _internalNioBuffer(index, length);
+        }
+
+        private ByteBuffer _internalNioBuffer(int index, int length) {
+            // The root buffer is shared by all buffers of a chunk, so we must never use its internal NIO buffer.
+            ByteBuffer tmpNioBuf = this.tmpNioBuf;
+            if (tmpNioBuf == null) {
+                this.tmpNioBuf = tmpNioBuf = rootParent.nioBuffer(adjustment, maxFastCapacity);
+            }
+            tmpNioBuf.clear();
+            tmpNioBuf.position(index).limit(index + length);
+            return tmpNioBuf;
+        }
+
+        @Override
+        public ByteBuffer[] nioBuffers(int index, int length) {
+            return new ByteBuffer[] { nioBuffer(index, length) };
+        }
+
+        /**
+         * Returns {@code true} if the bulk operations of the root buffer do not touch any state that is shared
+         * between all the buffers of a chunk, and so can be used directly.
+         */
+        private boolean rootBulkAccessible() {
+            return rootParent.hasArray() || rootParent.hasMemoryAddress();
+        }
+
+        @Override
+        protected byte _getByte(int index) {
+            return rootParent._getByte(idx(index));
+        }
+
+        @Override
+        protected short _getShort(int index) {
+            return rootParent._getShort(idx(index));
+        }
+
+        @Override
+        protected short _getShortLE(int index) {
+            return rootParent._getShortLE(idx(index));
+        }
+
+        @Override
+        protected int _getUnsignedMedium(int index) {
+            return rootParent._getUnsignedMedium(idx(index));
+        }
+
+        @Override
+        protected int _getUnsignedMediumLE(int index) {
+            return rootParent._getUnsignedMediumLE(idx(index));
+        }
+
+        @Override
+        protected int _getInt(int index) {
+            return rootParent._getInt(idx(index));
+        }
+
+        @Override
+        protected int _getIntLE(int index) {
+            return rootParent._getIntLE(idx(index));
+        }
+
+        @Override
+        protected long _getLong(int index) {
+            return rootParent._getLong(idx(index));
+        }
+
+        @Override
+        protected long _getLongLE(int index) {
+            return rootParent._getLongLE(idx(index));
+        }
+
+        @Override
+        protected void _setByte(int index, int value) {
+            rootParent._setByte(idx(index), value);
+        }
+
+        @Override
+        protected void _setShort(int index, int value) {
+            rootParent._setShort(idx(index), value);
+        }
+
+        @Override
+        protected void _setShortLE(int index, int value) {
+            rootParent._setShortLE(idx(index), value);
+        }
+
+        @Override
+        protected void _setMedium(int index, int value) {
+            rootParent._setMedium(idx(index), value);
+        }
+
+        @Override
+        protected void _setMediumLE(int index, int value) {
+            rootParent._setMediumLE(idx(index), value);
+        }
+
+        @Override
+        protected void _setInt(int index, int value) {
+            rootParent._setInt(idx(index), value);
+        }
+
+        @Override
+        protected void _setIntLE(int index, int value) {
+            rootParent._setIntLE(idx(index), value);
+        }
+
+        @Override
+        protected void _setLong(int index, long value) {
+            rootParent._setLong(idx(index), value);
+        }
+
+        @Override
+        protected void _setLongLE(int index, long value) {
+            rootParent._setLongLE(idx(index), value);
+        }
+
+        @Override
+        public ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+            checkDstIndex(index, length, dstIndex, dst.capacity());
+            if (rootBulkAccessible()) {
+                rootParent.getBytes(idx(index), dst, dstIndex, length);
+            } else {
+                dst.setBytes(dstIndex, _internalNioBuffer(index, length));
+            }
+            return this;
+        }
+
+        @Override
+        public ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+            checkDstIndex(index, length, dstIndex, dst.length);
+            if (rootBulkAccessible()) {
+                rootParent.getBytes(idx(index), dst, dstIndex, length);
+            } else {
+                _internalNioBuffer(index, length).get(dst, dstIndex, length);
+            }
+            return this;
+        }
+
+        @Override
+        public ByteBuf getBytes(int index, ByteBuffer dst) {
+            int length = dst.remaining();
+            checkIndex(index, length);
+            if (rootBulkAccessible()) {
+                rootParent.getBytes(idx(index), dst);
+            } else {
+                dst.put(_internalNioBuffer(index, length));
+            }
+            return this;
+        }
+
+        @Override
+        public ByteBuf getBytes(int index, OutputStream out, int length) throws IOException {
+            checkIndex(index, length);
+            if (length != 0) {
+                ByteBufUtil.readBytes(alloc(), rootParent.nioBuffer(idx(index), length), 0, length, out);
+            }
+            return this;
+        }
+
+        @Override
+        public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+            return out.write(nioBuffer(index, length));
+        }
+
+        @Override
+        public int getBytes(int index, FileChannel out, long position, int length) throws IOException {
+            return out.write(nioBuffer(index, length), position);
+        }
+
+        @Override
+        public int readBytes(GatheringByteChannel out, int length) throws IOException {
+            checkReadableBytes(length);
+            int readBytes = out.write(_internalNioBuffer(readerIndex, length));
+            readerIndex += readBytes;
+            return readBytes;
+        }
+
+        @Override
+        public int readBytes(FileChannel out, long position, int length) throws IOException {
+            checkReadableBytes(length);
+            int readBytes = out.write(_internalNioBuffer(readerIndex, length), position);
+            readerIndex += readBytes;
+            return readBytes;
+        }
+
+        @Override
+        public ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+            checkSrcIndex(index, length, srcIndex, src.capacity());
+            if (rootBulkAccessible()) {
+                rootParent.setBytes(idx(index), src, srcIndex, length);
+            } else {
+                src.getBytes(srcIndex, _internalNioBuffer(index, length));
+            }
+            return this;
+        }
+
+        @Override
+        public ByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+            checkSrcIndex(index, length, srcIndex, src.length);
+            if (rootBulkAccessible()) {
+                rootParent.setBytes(idx(index), src, srcIndex, length);
+            } else {
+                _internalNioBuffer(index, length).put(src, srcIndex, length);
+            }
+            return this;
+        }
+
+        @Override
+        public ByteBuf setBytes(int index, ByteBuffer src) {
+            int length = src.remaining();
+            checkIndex(index, length);
+            if (rootBulkAccessible()) {
+                rootParent.setBytes(idx(index), src);
+            } else {
+                _internalNioBuffer(index, length).put(src);
+            }
+            return this;
+        }
+
+        @Override
+        public int setBytes(int index, InputStream in, int length) throws IOException {
+            checkIndex(index, length);
+            if (rootBulkAccessible()) {
+                return rootParent.setBytes(idx(index), in, length);
+            }
+            byte[] tmp = ByteBufUtil.threadLocalTempArray(length);
+            int readBytes = in.read(tmp, 0, length);
+            if (readBytes <= 0) {
+                return readBytes;
+            }
+            _internalNioBuffer(index, readBytes).put(tmp, 0, readBytes);
+            return readBytes;
+        }
+
+        @Override
+        public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+            try {
+                return in.read(internalNioBuffer(index, length));
+            } catch (ClosedChannelException ignored) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int setBytes(int index, FileChannel in, long position, int length) throws IOException {
+            try {
+                return in.read(internalNioBuffer(index, length), position);
+            } catch (ClosedChannelException ignored) {
+                return -1;
+            }
+        }
+
+        @Override
+        public ByteBuf copy(int index, int length) {
+            checkIndex(index, length);
+            ByteBuf copy = isDirect() ? alloc().directBuffer(length, maxCapacity()) :
+                    alloc().heapBuffer(length, maxCapacity());
+            return copy.writeBytes(this, index, length);
+        }
+
+        private AbstractByteBuf rootParent() {
+            AbstractByteBuf rootParent = this.rootParent;
+            if (rootParent != null) {
+                return rootParent;
+            }
+            throw new IllegalReferenceCountException();
+        }
+
+        private int idx(int index) {
+            return index + adjustment;
+        }
+
+        @Override
+        protected void deallocate() {
+            if (chunk != null) {
+                chunk.release();
+            }
+            tmpNioBuf = null;
+            chunk = null;
+            rootParent = null;
+            handle.recycle(this);
+        }
+    }
+}
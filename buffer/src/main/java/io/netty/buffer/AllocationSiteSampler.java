@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakTracker;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * Samples every n-th allocated buffer on average and keeps track of the live sampled buffers by the site they were
+ * allocated at. Unlike leak detection, only the allocation site is recorded and no access records are kept, and the
+ * only overhead of an allocation that is not sampled is drawing a random number.
+ */
+final class AllocationSiteSampler {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AllocationSiteSampler.class);
+
+    static final int DEFAULT_SAMPLING_INTERVAL;
+    private static final int STACK_DEPTH;
+
+    static {
+        DEFAULT_SAMPLING_INTERVAL = Math.max(0, SystemPropertyUtil.getInt(
+                "io.netty.allocator.liveBufferSamplingInterval", 0));
+        STACK_DEPTH = Math.max(1, SystemPropertyUtil.getInt("io.netty.allocator.liveBufferStackDepth", 4));
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.allocator.liveBufferSamplingInterval: {}", DEFAULT_SAMPLING_INTERVAL);
+            logger.debug("-Dio.netty.allocator.liveBufferStackDepth: {}", STACK_DEPTH);
+        }
+    }
+
+    private static final Comparator<ByteBufAllocationSite> LIVE_BYTES_DESCENDING =
+            new Comparator<ByteBufAllocationSite>() {
+                @Override
+                public int compare(ByteBufAllocationSite o1, ByteBufAllocationSite o2) {
+                    long b1 = o1.liveBytes();
+                    long b2 = o2.liveBytes();
+                    return b1 > b2 ? -1 : b1 == b2 ? 0 : 1;
+                }
+            };
+
+    private final int samplingInterval;
+    private final ConcurrentMap<String, Site> sites = PlatformDependent.newConcurrentHashMap();
+
+    AllocationSiteSampler(int samplingInterval) {
+        this.samplingInterval = checkPositive(samplingInterval, "samplingInterval");
+    }
+
+    int samplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Returns the given buffer, or a wrapper that tracks it if the buffer was sampled.
+     */
+    ByteBuf sample(ByteBuf buf) {
+        if (samplingInterval > 1 && PlatformDependent.threadLocalRandom().nextInt(samplingInterval) != 0) {
+            return buf;
+        }
+        String callSite = callSite(new Throwable().getStackTrace());
+        Site site = sites.get(callSite);
+        if (site == null) {
+            Site newSite = new Site(callSite);
+            site = sites.putIfAbsent(callSite, newSite);
+            if (site == null) {
+                site = newSite;
+            }
+        }
+        return new SimpleLeakAwareByteBuf(buf, new Sample(site, buf));
+    }
+
+    /**
+     * Returns the sites which have live sampled buffers, ordered by the number of live bytes.
+     */
+    List<ByteBufAllocationSite> liveSites() {
+        List<ByteBufAllocationSite> liveSites = new ArrayList<ByteBufAllocationSite>();
+        for (Site site : sites.values()) {
+            long buffers = 0;
+            long bytes = 0;
+            // Read the current capacity, as buffers such as cumulations grow after they were allocated.
+            for (Sample sample : site.samples) {
+                buffers++;
+                bytes += sample.buf.capacity();
+            }
+            if (buffers > 0) {
+                liveSites.add(new ByteBufAllocationSite(site.callSite, buffers, bytes));
+            }
+        }
+        Collections.sort(liveSites, LIVE_BYTES_DESCENDING);
+        return liveSites;
+    }
+
+    private static String callSite(StackTraceElement[] stackTrace) {
+        StringBuilder buf = new StringBuilder(128);
+        int depth = 0;
+        for (StackTraceElement element : stackTrace) {
+            if (depth == 0 && isAllocatorFrame(element.getClassName())) {
+                continue;
+            }
+            if (depth > 0) {
+                buf.append('\n');
+            }
+            buf.append(element);
+            if (++depth == STACK_DEPTH) {
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns {@code true} if the class is one of the allocators, buffers or utility classes of this package, which
+     * are part of every allocation and say nothing about the site.
+     */
+    private static boolean isAllocatorFrame(String className) {
+        if (!className.startsWith("io.netty.buffer.")) {
+            return false;
+        }
+        return className.contains("ByteBuf") || className.contains("Allocator") ||
+                className.startsWith("io.netty.buffer.Unpooled") ||
+                className.equals(AllocationSiteSampler.class.getName());
+    }
+
+    private static final class Site {
+        final String callSite;
+        final Set<Sample> samples =
+                Collections.newSetFromMap(PlatformDependent.<Sample, Boolean>newConcurrentHashMap());
+
+        Site(String callSite) {
+            this.callSite = callSite;
+        }
+    }
+
+    /**
+     * Tracks a sampled buffer until it is released.
+     */
+    private static final class Sample implements ResourceLeakTracker<ByteBuf> {
+        private final Site site;
+        final ByteBuf buf;
+        private boolean closed;
+
+        Sample(Site site, ByteBuf buf) {
+            this.site = site;
+            this.buf = buf;
+            site.samples.add(this);
+        }
+
+        @Override
+        public void record() {
+        }
+
+        @Override
+        public void record(Object hint) {
+        }
+
+        @Override
+        public boolean close(ByteBuf trackedObject) {
+            // The buffer is released by the thread that released its last reference, so there is no need to
+            // synchronize.
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            site.samples.remove(this);
+            return true;
+        }
+    }
+}
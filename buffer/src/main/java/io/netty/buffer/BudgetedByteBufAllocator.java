@@ -0,0 +1,694 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.CharsetUtil;
+import io.netty.util.ResourceLeakTracker;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * A {@link ByteBufAllocator} which accounts the capacity of the buffers that are allocated through it against a
+ * budget, and forwards the allocations to another {@link ByteBufAllocator}.
+ * <p>
+ * The bytes of a buffer are accounted until it is released. Budgets can be nested by using a
+ * {@link BudgetedByteBufAllocator} as the delegate of another one, for example to limit the memory of a single
+ * {@code Channel} as well as the memory of all channels of the same user. Once the budget is
+ * exceeded, allocations either fail with a {@link ByteBufBudgetExceededException} or still succeed and only notify
+ * the {@link Listener}s, which can then stop reading from the channels that use the allocator.
+ * <p>
+ * The capacity of a buffer is accounted when it is allocated, and again whenever it changes, for example when a
+ * cumulation grows via {@link ByteBuf#ensureWritable(int)}. Growth is charged before the buffer grows, so it fails
+ * the same way as an allocation. This includes the fast-paths of {@link ByteBufUtil}, while a buffer that is grown
+ * through {@link ByteBuf#unwrap()} is accounted the next time it grows or is released. {@link CompositeByteBuf}s
+ * allocate the buffers they need to grow or consolidate through this allocator, while the components that are added
+ * to them are accounted by the allocators they were allocated from.
+ */
+public final class BudgetedByteBufAllocator implements ByteBufAllocator, ByteBufAllocatorMetricProvider,
+        ByteBufAllocatorMetric {
+
+    /**
+     * Is notified when a {@link BudgetedByteBufAllocator} exceeds its budget, and when enough memory was released
+     * to be within the budget again. The methods are called by the thread that allocated or released the buffer.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the used memory of the allocator exceeded its budget.
+         */
+        void budgetExceeded(BudgetedByteBufAllocator allocator);
+
+        /**
+         * Called when the used memory of the allocator is within its budget again.
+         */
+        void budgetAvailable(BudgetedByteBufAllocator allocator);
+    }
+
+    private final ByteBufAllocator delegate;
+    private final long maxBytes;
+    private final boolean failAllocations;
+    private final AtomicLong usedHeapMemory = new AtomicLong();
+    private final AtomicLong usedDirectMemory = new AtomicLong();
+    private final AtomicLong usedMemory = new AtomicLong();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Create a new instance, which does not fail allocations if the budget is exceeded.
+     *
+     * @param delegate the {@link ByteBufAllocator} which is used to allocate the buffers
+     * @param maxBytes the number of bytes that can be used by buffers of this allocator
+     */
+    public BudgetedByteBufAllocator(ByteBufAllocator delegate, long maxBytes) {
+        this(delegate, maxBytes, false);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param delegate        the {@link ByteBufAllocator} which is used to allocate the buffers
+     * @param maxBytes        the number of bytes that can be used by buffers of this allocator
+     * @param failAllocations {@code true} if allocations which would exceed the budget should fail with a
+     *                        {@link ByteBufBudgetExceededException}, {@code false} if they should succeed and only
+     *                        notify the {@link Listener}s
+     */
+    public BudgetedByteBufAllocator(ByteBufAllocator delegate, long maxBytes, boolean failAllocations) {
+        this.delegate = ObjectUtil.checkNotNull(delegate, "delegate");
+        this.maxBytes = checkPositive(maxBytes, "maxBytes");
+        this.failAllocations = failAllocations;
+    }
+
+    /**
+     * Returns the {@link ByteBufAllocator} which is used to allocate the buffers.
+     */
+    public ByteBufAllocator delegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the number of bytes that can be used by buffers of this allocator.
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes that are used by the buffers of this allocator which were not released yet.
+     */
+    public long usedMemory() {
+        return usedMemory.get();
+    }
+
+    /**
+     * Returns {@code true} if the used memory exceeds the budget.
+     */
+    public boolean isExceeded() {
+        return usedMemory.get() > maxBytes;
+    }
+
+    /**
+     * Adds a {@link Listener} which is notified when the budget is exceeded or available again.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(ObjectUtil.checkNotNull(listener, "listener"));
+    }
+
+    /**
+     * Removes a {@link Listener} which was added by {@link #addListener(Listener)}.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public ByteBuf buffer() {
+        return buffer(AbstractByteBufAllocator.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity) {
+        return buffer(initialCapacity, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity, int maxCapacity) {
+        reserve(initialCapacity);
+        ByteBuf buf = null;
+        try {
+            buf = delegate.buffer(initialCapacity, maxCapacity);
+        } finally {
+            if (buf == null) {
+                unreserve(initialCapacity);
+            }
+        }
+        return account(buf, initialCapacity);
+    }
+
+    @Override
+    public ByteBuf ioBuffer() {
+        return ioBuffer(AbstractByteBufAllocator.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity) {
+        return ioBuffer(initialCapacity, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity, int maxCapacity) {
+        reserve(initialCapacity);
+        ByteBuf buf = null;
+        try {
+            buf = delegate.ioBuffer(initialCapacity, maxCapacity);
+        } finally {
+            if (buf == null) {
+                unreserve(initialCapacity);
+            }
+        }
+        return account(buf, initialCapacity);
+    }
+
+    @Override
+    public ByteBuf heapBuffer() {
+        return heapBuffer(AbstractByteBufAllocator.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity) {
+        return heapBuffer(initialCapacity, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity, int maxCapacity) {
+        reserve(initialCapacity);
+        ByteBuf buf = null;
+        try {
+            buf = delegate.heapBuffer(initialCapacity, maxCapacity);
+        } finally {
+            if (buf == null) {
+                unreserve(initialCapacity);
+            }
+        }
+        return account(buf, initialCapacity);
+    }
+
+    @Override
+    public ByteBuf directBuffer() {
+        return directBuffer(AbstractByteBufAllocator.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity) {
+        return directBuffer(initialCapacity, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+        reserve(initialCapacity);
+        ByteBuf buf = null;
+        try {
+            buf = delegate.directBuffer(initialCapacity, maxCapacity);
+        } finally {
+            if (buf == null) {
+                unreserve(initialCapacity);
+            }
+        }
+        return account(buf, initialCapacity);
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer() {
+        return compositeBuffer(AbstractByteBufAllocator.DEFAULT_MAX_COMPONENTS);
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer(int maxNumComponents) {
+        return PlatformDependent.directBufferPreferred() ?
+                compositeDirectBuffer(maxNumComponents) : compositeHeapBuffer(maxNumComponents);
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer() {
+        return compositeHeapBuffer(AbstractByteBufAllocator.DEFAULT_MAX_COMPONENTS);
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer(int maxNumComponents) {
+        // Use this allocator, so the buffers that are allocated when the composite grows or is consolidated are
+        // accounted as well.
+        return AbstractByteBufAllocator.toLeakAwareBuffer(new CompositeByteBuf(this, false, maxNumComponents));
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer() {
+        return compositeDirectBuffer(AbstractByteBufAllocator.DEFAULT_MAX_COMPONENTS);
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer(int maxNumComponents) {
+        return AbstractByteBufAllocator.toLeakAwareBuffer(new CompositeByteBuf(this, true, maxNumComponents));
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return delegate.isDirectBufferPooled();
+    }
+
+    @Override
+    public int calculateNewCapacity(int minNewCapacity, int maxCapacity) {
+        return delegate.calculateNewCapacity(minNewCapacity, maxCapacity);
+    }
+
+    @Override
+    public ByteBufAllocatorMetric metric() {
+        return this;
+    }
+
+    @Override
+    public long usedHeapMemory() {
+        return usedHeapMemory.get();
+    }
+
+    @Override
+    public long usedDirectMemory() {
+        return usedDirectMemory.get();
+    }
+
+    /**
+     * Adds the given number of bytes to the used memory, or fails with a {@link ByteBufBudgetExceededException} if
+     * this would exceed the budget and {@link #failAllocations} is set. The check and the update are done atomically,
+     * so concurrent allocations can not exceed the budget together.
+     */
+    private void reserve(int bytes) {
+        checkPositiveOrZero(bytes, "bytes");
+        for (;;) {
+            long used = usedMemory.get();
+            long newUsed = used + bytes;
+            if (failAllocations && newUsed > maxBytes && bytes > 0) {
+                throw new ByteBufBudgetExceededException("failed to allocate " + bytes + " byte(s) (used: " +
+                        used + ", max: " + maxBytes + ')');
+            }
+            if (usedMemory.compareAndSet(used, newUsed)) {
+                notifyListeners(used, newUsed);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives bytes which were added by {@link #reserve(int)} back to the budget.
+     */
+    private void unreserve(int bytes) {
+        adjust(-bytes);
+    }
+
+    /**
+     * Adds the given number of bytes to the used memory without checking the budget.
+     */
+    private void adjust(long bytes) {
+        long used = usedMemory.addAndGet(bytes);
+        notifyListeners(used - bytes, used);
+    }
+
+    private void notifyListeners(long oldUsed, long newUsed) {
+        if (newUsed > maxBytes && oldUsed <= maxBytes) {
+            for (Listener listener : listeners) {
+                listener.budgetExceeded(this);
+            }
+        } else if (newUsed <= maxBytes && oldUsed > maxBytes) {
+            for (Listener listener : listeners) {
+                listener.budgetAvailable(this);
+            }
+        }
+    }
+
+    private ByteBuf account(ByteBuf buf, int reserved) {
+        int capacity = buf.capacity();
+        boolean direct = buf.isDirect();
+        (direct ? usedDirectMemory : usedHeapMemory).addAndGet(capacity);
+        if (capacity != reserved) {
+            adjust(capacity - reserved);
+        }
+        return new BudgetedByteBuf(buf, new Reservation(buf, capacity, direct));
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(usedMemory: " + usedMemory() + "; maxBytes: " + maxBytes +
+                "; delegate: " + delegate + ')';
+    }
+
+    /**
+     * Tracks the bytes that are accounted for a buffer, and gives them back to the budget once the buffer is released.
+     * Apart from {@link #close(ByteBuf)} the methods are only called by the thread which currently uses the buffer.
+     */
+    private final class Reservation implements ResourceLeakTracker<ByteBuf> {
+        private final ByteBuf buf;
+        private final boolean direct;
+        private int accounted;
+        private boolean closed;
+
+        Reservation(ByteBuf buf, int accounted, boolean direct) {
+            this.buf = buf;
+            this.accounted = accounted;
+            this.direct = direct;
+        }
+
+        /**
+         * Reserves the bytes which are needed to grow the buffer to the given capacity.
+         */
+        void reserveCapacity(int newCapacity) {
+            // Account growth which was not reserved upfront first, so it counts against the budget.
+            reconcile();
+            if (!closed && newCapacity > accounted) {
+                int bytes = newCapacity - accounted;
+                reserve(bytes);
+                (direct ? usedDirectMemory : usedHeapMemory).addAndGet(bytes);
+                accounted = newCapacity;
+            }
+        }
+
+        /**
+         * Updates the accounted bytes to the current capacity of the buffer, which gives back bytes that were reserved
+         * but not used, and accounts growth which was not reserved upfront.
+         */
+        void reconcile() {
+            if (closed) {
+                return;
+            }
+            int bytes = buf.capacity() - accounted;
+            if (bytes != 0) {
+                (direct ? usedDirectMemory : usedHeapMemory).addAndGet(bytes);
+                adjust(bytes);
+                accounted += bytes;
+            }
+        }
+
+        @Override
+        public void record() {
+        }
+
+        @Override
+        public void record(Object hint) {
+        }
+
+        @Override
+        public boolean close(ByteBuf trackedObject) {
+            // The buffer is released by the thread that released its last reference, so there is no need to
+            // synchronize.
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            (direct ? usedDirectMemory : usedHeapMemory).addAndGet(-accounted);
+            adjust(-accounted);
+            return true;
+        }
+    }
+
+    /**
+     * Charges the budget before the buffer grows, and gives the bytes back when the capacity of the buffer is
+     * reduced. Derived buffers share the {@link Reservation} of the buffer they were derived from.
+     */
+    private final class BudgetedByteBuf extends SimpleLeakAwareByteBuf {
+        private final Reservation reservation;
+
+        BudgetedByteBuf(ByteBuf wrapped, Reservation reservation) {
+            this(wrapped, wrapped, reservation);
+        }
+
+        BudgetedByteBuf(ByteBuf wrapped, ByteBuf trackedByteBuf, Reservation reservation) {
+            super(wrapped, trackedByteBuf, reservation);
+            this.reservation = reservation;
+        }
+
+        @Override
+        protected SimpleLeakAwareByteBuf newLeakAwareByteBuf(
+                ByteBuf buf, ByteBuf trackedByteBuf, ResourceLeakTracker<ByteBuf> leakTracker) {
+            if (leakTracker == reservation) {
+                return new BudgetedByteBuf(buf, trackedByteBuf, reservation);
+            }
+            return super.newLeakAwareByteBuf(buf, trackedByteBuf, leakTracker);
+        }
+
+        @Override
+        public ByteBuf capacity(int newCapacity) {
+            reservation.reserveCapacity(newCapacity);
+            try {
+                return super.capacity(newCapacity);
+            } finally {
+                reservation.reconcile();
+            }
+        }
+
+        @Override
+        public ByteBuf ensureWritable(int minWritableBytes) {
+            reserveWritable(minWritableBytes, false);
+            try {
+                return super.ensureWritable(minWritableBytes);
+            } finally {
+                reservation.reconcile();
+            }
+        }
+
+        @Override
+        public int ensureWritable(int minWritableBytes, boolean force) {
+            reserveWritable(minWritableBytes, force);
+            try {
+                return super.ensureWritable(minWritableBytes, force);
+            } finally {
+                reservation.reconcile();
+            }
+        }
+
+        /**
+         * Reserves the capacity that {@link AbstractByteBuf#ensureWritable(int)} will grow the buffer to.
+         */
+        private void reserveWritable(int minWritableBytes, boolean force) {
+            int writerIndex = writerIndex();
+            if (minWritableBytes <= capacity() - writerIndex) {
+                return;
+            }
+            int maxCapacity = maxCapacity();
+            final int newCapacity;
+            if (minWritableBytes > maxCapacity - writerIndex) {
+                if (!force) {
+                    // Let the buffer fail with an IndexOutOfBoundsException.
+                    return;
+                }
+                newCapacity = maxCapacity;
+            } else {
+                int fastWritable = maxFastWritableBytes();
+                newCapacity = fastWritable >= minWritableBytes ? writerIndex + fastWritable
+                        : alloc().calculateNewCapacity(writerIndex + minWritableBytes, maxCapacity);
+            }
+            reservation.reserveCapacity(newCapacity);
+        }
+
+        @Override
+        ByteBuf unwrapForWrite(int minWritableBytes) {
+            ensureWritable0(minWritableBytes);
+            return super.unwrapForWrite(minWritableBytes);
+        }
+
+        @Override
+        public boolean release() {
+            // The capacity of the buffer can not be read anymore once it was deallocated.
+            reservation.reconcile();
+            return super.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            reservation.reconcile();
+            return super.release(decrement);
+        }
+
+        /**
+         * Grows the buffer through {@link #ensureWritable(int)} if needed, so the following write does not change
+         * the capacity without being accounted.
+         */
+        private void ensureWritable0(int minWritableBytes) {
+            if (minWritableBytes > writableBytes()) {
+                ensureWritable(minWritableBytes);
+            }
+        }
+
+        @Override
+        public ByteBuf writeBoolean(boolean value) {
+            ensureWritable0(1);
+            return super.writeBoolean(value);
+        }
+
+        @Override
+        public ByteBuf writeByte(int value) {
+            ensureWritable0(1);
+            return super.writeByte(value);
+        }
+
+        @Override
+        public ByteBuf writeShort(int value) {
+            ensureWritable0(2);
+            return super.writeShort(value);
+        }
+
+        @Override
+        public ByteBuf writeShortLE(int value) {
+            ensureWritable0(2);
+            return super.writeShortLE(value);
+        }
+
+        @Override
+        public ByteBuf writeMedium(int value) {
+            ensureWritable0(3);
+            return super.writeMedium(value);
+        }
+
+        @Override
+        public ByteBuf writeMediumLE(int value) {
+            ensureWritable0(3);
+            return super.writeMediumLE(value);
+        }
+
+        @Override
+        public ByteBuf writeInt(int value) {
+            ensureWritable0(4);
+            return super.writeInt(value);
+        }
+
+        @Override
+        public ByteBuf writeIntLE(int value) {
+            ensureWritable0(4);
+            return super.writeIntLE(value);
+        }
+
+        @Override
+        public ByteBuf writeLong(long value) {
+            ensureWritable0(8);
+            return super.writeLong(value);
+        }
+
+        @Override
+        public ByteBuf writeLongLE(long value) {
+            ensureWritable0(8);
+            return super.writeLongLE(value);
+        }
+
+        @Override
+        public ByteBuf writeChar(int value) {
+            ensureWritable0(2);
+            return super.writeChar(value);
+        }
+
+        @Override
+        public ByteBuf writeFloat(float value) {
+            ensureWritable0(4);
+            return super.writeFloat(value);
+        }
+
+        @Override
+        public ByteBuf writeDouble(double value) {
+            ensureWritable0(8);
+            return super.writeDouble(value);
+        }
+
+        @Override
+        public ByteBuf writeBytes(ByteBuf src) {
+            ensureWritable0(src.readableBytes());
+            return super.writeBytes(src);
+        }
+
+        @Override
+        public ByteBuf writeBytes(ByteBuf src, int length) {
+            ensureWritable0(length);
+            return super.writeBytes(src, length);
+        }
+
+        @Override
+        public ByteBuf writeBytes(ByteBuf src, int srcIndex, int length) {
+            ensureWritable0(length);
+            return super.writeBytes(src, srcIndex, length);
+        }
+
+        @Override
+        public ByteBuf writeBytes(byte[] src) {
+            ensureWritable0(src.length);
+            return super.writeBytes(src);
+        }
+
+        @Override
+        public ByteBuf writeBytes(byte[] src, int srcIndex, int length) {
+            ensureWritable0(length);
+            return super.writeBytes(src, srcIndex, length);
+        }
+
+        @Override
+        public ByteBuf writeBytes(ByteBuffer src) {
+            ensureWritable0(src.remaining());
+            return super.writeBytes(src);
+        }
+
+        @Override
+        public int writeBytes(InputStream in, int length) throws IOException {
+            ensureWritable0(length);
+            return super.writeBytes(in, length);
+        }
+
+        @Override
+        public int writeBytes(ScatteringByteChannel in, int length) throws IOException {
+            ensureWritable0(length);
+            return super.writeBytes(in, length);
+        }
+
+        @Override
+        public int writeBytes(FileChannel in, long position, int length) throws IOException {
+            ensureWritable0(length);
+            return super.writeBytes(in, position, length);
+        }
+
+        @Override
+        public ByteBuf writeZero(int length) {
+            ensureWritable0(length);
+            return super.writeZero(length);
+        }
+
+        @Override
+        public int writeCharSequence(CharSequence sequence, Charset charset) {
+            // ByteBufUtil grows the buffer through unwrapForWrite(int).
+            if (charset.equals(CharsetUtil.UTF_8)) {
+                return ByteBufUtil.writeUtf8(this, sequence);
+            }
+            if (charset.equals(CharsetUtil.US_ASCII)) {
+                return ByteBufUtil.writeAscii(this, sequence);
+            }
+            byte[] bytes = sequence.toString().getBytes(charset);
+            writeBytes(bytes);
+            return bytes.length;
+        }
+    }
+}
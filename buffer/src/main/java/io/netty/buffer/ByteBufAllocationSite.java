@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.StringUtil;
+
+/**
+ * The live sampled buffers that were allocated at the same site.
+ *
+ * @see AbstractByteBufAllocator#liveAllocationSites()
+ */
+public final class ByteBufAllocationSite {
+    private final String callSite;
+    private final long liveBuffers;
+    private final long liveBytes;
+
+    ByteBufAllocationSite(String callSite, long liveBuffers, long liveBytes) {
+        this.callSite = callSite;
+        this.liveBuffers = liveBuffers;
+        this.liveBytes = liveBytes;
+    }
+
+    /**
+     * Returns the top frames of the stack that allocated the buffers, one per line, starting with the first frame
+     * outside of the allocator.
+     */
+    public String callSite() {
+        return callSite;
+    }
+
+    /**
+     * Returns the number of sampled buffers that were allocated at this site and not released yet.
+     */
+    public long liveBuffers() {
+        return liveBuffers;
+    }
+
+    /**
+     * Returns the current capacity of the sampled buffers that were allocated at this site and not released yet.
+     * Multiply by the sampling interval to estimate the capacity of all live buffers.
+     */
+    public long liveBytes() {
+        return liveBytes;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(liveBuffers: " + liveBuffers + ", liveBytes: " + liveBytes +
+                ", callSite: " + callSite + ')';
+    }
+}
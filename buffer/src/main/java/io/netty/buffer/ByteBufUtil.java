@@ -71,6 +71,10 @@ public final class ByteBufUtil {
             (int) CharsetUtil.encoder(CharsetUtil.UTF_8).maxBytesPerChar();
 
     static final int WRITE_CHUNK_SIZE = 8192;
+    // Needles up to this length are searched by scanning for their first byte, see indexOf(ByteBuf, ByteBuf).
+    private static final int MAX_SHORT_NEEDLE_LENGTH = 16;
+    // The highest bit of every byte in a word, which is only set for bytes that are not ASCII.
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
     static final ByteBufAllocator DEFAULT_ALLOCATOR;
 
     static {
@@ -85,6 +89,9 @@ public final class ByteBufUtil {
         } else if ("pooled".equals(allocType)) {
             alloc = PooledByteBufAllocator.DEFAULT;
             logger.debug("-Dio.netty.allocator.type: {}", allocType);
+        } else if ("adaptive".equals(allocType)) {
+            alloc = new AdaptiveByteBufAllocator();
+            logger.debug("-Dio.netty.allocator.type: {}", allocType);
         } else {
             alloc = PooledByteBufAllocator.DEFAULT;
             logger.debug("-Dio.netty.allocator.type: pooled (unknown: {})", allocType);
@@ -252,6 +259,12 @@ public final class ByteBufUtil {
                           needle.getByte(needle.readerIndex()));
         }
 
+        // Short needles are found faster by scanning for their first byte with ByteBuf.indexOf(), which reads a word
+        // at a time, and only comparing the remaining bytes at the candidates.
+        if (m <= MAX_SHORT_NEEDLE_LENGTH) {
+            return shortNeedleIndexOf(needle, haystack, m);
+        }
+
         int i;
         int j = 0;
         int aStartIndex = needle.readerIndex();
@@ -315,6 +328,25 @@ public final class ByteBufUtil {
         return -1;
     }
 
+    private static int shortNeedleIndexOf(ByteBuf needle, ByteBuf haystack, int m) {
+        final int needleStart = needle.readerIndex();
+        final byte first = needle.getByte(needleStart);
+        // The last index at which the needle can start.
+        final int last = haystack.writerIndex() - m;
+        int i = haystack.readerIndex();
+        while (i <= last) {
+            i = haystack.indexOf(i, last + 1, first);
+            if (i == -1) {
+                return -1;
+            }
+            if (equals(needle, needleStart + 1, haystack, i + 1, m - 1)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
     private static long maxSuf(ByteBuf x, int m, int start, boolean isSuffix) {
         int p = 1;
         int ms = -1;
@@ -519,12 +551,28 @@ public final class ByteBufUtil {
         }
 
         private static int firstAnyPattern(long word, long pattern, boolean leading) {
-            long input = word ^ pattern;
-            long tmp = (input & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
-            tmp = ~(tmp | input | 0x7F7F7F7F7F7F7F7FL);
+            final long tmp = applyPattern(word, pattern);
             final int binaryPosition = leading? Long.numberOfLeadingZeros(tmp) : Long.numberOfTrailingZeros(tmp);
             return binaryPosition >>> 3;
         }
+
+        /**
+         * Returns the position of the last byte that matches the pattern, or {@code -1} if there is none.
+         */
+        private static int lastAnyPattern(long word, long pattern, boolean leading) {
+            final long tmp = applyPattern(word, pattern);
+            final int binaryPosition = leading? Long.numberOfTrailingZeros(tmp) : Long.numberOfLeadingZeros(tmp);
+            return 7 - (binaryPosition >>> 3);
+        }
+
+        /**
+         * Returns a word in which the highest bit of every byte that matches the pattern is set.
+         */
+        private static long applyPattern(long word, long pattern) {
+            long input = word ^ pattern;
+            long tmp = (input & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
+            return ~(tmp | input | 0x7F7F7F7F7F7F7F7FL);
+        }
     }
 
     private static int unrolledFirstIndexOf(AbstractByteBuf buffer, int fromIndex, int byteCount, byte value) {
@@ -715,13 +763,46 @@ public final class ByteBufUtil {
         if (fromIndex < 0 || capacity == 0) {
             return -1;
         }
-        buffer.checkIndex(toIndex, fromIndex - toIndex);
+        final int length = fromIndex - toIndex;
+        buffer.checkIndex(toIndex, length);
+        if (!PlatformDependent.isUnaligned()) {
+            return linearLastIndexOf(buffer, fromIndex, toIndex, value);
+        }
+        // Search the unaligned tail first and then the remaining bytes a word at a time, like firstIndexOf(...).
+        int offset = fromIndex;
+        final int byteCount = length & 7;
+        if (byteCount > 0) {
+            final int index = linearLastIndexOf(buffer, fromIndex, fromIndex - byteCount, value);
+            if (index != -1) {
+                return index;
+            }
+            offset -= byteCount;
+            if (offset == toIndex) {
+                return -1;
+            }
+        }
+        final int longCount = length >>> 3;
+        final ByteOrder nativeOrder = ByteOrder.nativeOrder();
+        final boolean isNative = nativeOrder == buffer.order();
+        final boolean useLE = nativeOrder == ByteOrder.LITTLE_ENDIAN;
+        final long pattern = SWARByteSearch.compilePattern(value);
+        for (int i = 0; i < longCount; i++) {
+            offset -= Long.BYTES;
+            final long word = useLE? buffer._getLongLE(offset) : buffer._getLong(offset);
+            int index = SWARByteSearch.lastAnyPattern(word, pattern, isNative);
+            if (index >= 0) {
+                return offset + index;
+            }
+        }
+        return -1;
+    }
+
+    private static int linearLastIndexOf(AbstractByteBuf buffer, int fromIndex, int toIndex, byte value) {
         for (int i = fromIndex - 1; i >= toIndex; i--) {
             if (buffer._getByte(i) == value) {
                 return i;
             }
         }
-
         return -1;
     }
 
@@ -807,7 +888,7 @@ public final class ByteBufUtil {
                 return written;
             } else if (buf instanceof WrappedByteBuf) {
                 // Unwrap as the wrapped buffer may be an AbstractByteBuf and so we can use fast-path.
-                buf = buf.unwrap();
+                buf = ((WrappedByteBuf) buf).unwrapForWrite(reserveBytes);
             } else {
                 byte[] bytes = seq.subSequence(start, end).toString().getBytes(CharsetUtil.UTF_8);
                 buf.writeBytes(bytes);
@@ -1178,7 +1259,7 @@ public final class ByteBufUtil {
                 return len;
             } else if (buf instanceof WrappedByteBuf) {
                 // Unwrap as the wrapped buffer may be an AbstractByteBuf and so we can use fast-path.
-                buf = buf.unwrap();
+                buf = ((WrappedByteBuf) buf).unwrapForWrite(seq.length());
             } else {
                 byte[] bytes = seq.toString().getBytes(CharsetUtil.US_ASCII);
                 buf.writeBytes(bytes);
@@ -1269,8 +1350,9 @@ public final class ByteBufUtil {
             offset = 0;
             src.getBytes(readerIndex, array, 0, len);
         }
-        if (CharsetUtil.US_ASCII.equals(charset)) {
-            // Fast-path for US-ASCII which is used frequently.
+        if (CharsetUtil.US_ASCII.equals(charset) ||
+                CharsetUtil.UTF_8.equals(charset) && isAscii(array, offset, len)) {
+            // Fast-path for US-ASCII, and UTF-8 that only contains ASCII, which are used frequently.
             return new String(array, 0, offset, len);
         }
         return new String(array, offset, len, charset);
@@ -1747,7 +1829,36 @@ public final class ByteBufUtil {
      * @param length The length of the specified buffer.
      */
     private static boolean isAscii(ByteBuf buf, int index, int length) {
-        return buf.forEachByte(index, length, FIND_NON_ASCII) == -1;
+        if (buf.hasArray()) {
+            return isAscii(buf.array(), buf.arrayOffset() + index, length);
+        }
+        // Check a word at a time, and only the remaining bytes one by one.
+        final int longCount = length >>> 3;
+        for (int i = 0; i < longCount; i++) {
+            if ((buf.getLong(index) & NON_ASCII_MASK) != 0) {
+                return false;
+            }
+            index += Long.BYTES;
+        }
+        return buf.forEachByte(index, length & 7, FIND_NON_ASCII) == -1;
+    }
+
+    private static boolean isAscii(byte[] array, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        if (PlatformDependent.hasUnsafe() && PlatformDependent.isUnaligned()) {
+            for (final int longEnd = offset + (length & ~7); i < longEnd; i += Long.BYTES) {
+                if ((PlatformDependent.getLong(array, i) & NON_ASCII_MASK) != 0) {
+                    return false;
+                }
+            }
+        }
+        for (; i < end; i++) {
+            if (array[i] < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -1800,6 +1911,11 @@ public final class ByteBufUtil {
             byte b2, b3, b4;
             if ((b1 & 0x80) == 0) {
                 // 1 byte
+                //
+                // Text is mostly ASCII, so skip the ASCII bytes that follow a word at a time.
+                while (index <= endIndex - Long.BYTES && (buf.getLong(index) & NON_ASCII_MASK) == 0) {
+                    index += Long.BYTES;
+                }
                 continue;
             }
             if ((b1 & 0xE0) == 0xC0) {
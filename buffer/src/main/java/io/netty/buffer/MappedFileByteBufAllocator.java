@@ -0,0 +1,340 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * A {@link ByteBufAllocator} whose direct buffers are backed by memory mapped regions of a temporary file.
+ * <p>
+ * This is useful to keep very large content, like aggregated bodies or cached responses, off the heap without
+ * counting against {@code -XX:MaxDirectMemorySize}. The buffers are still direct, so {@link ByteBuf#nioBuffers()}
+ * can be used to write them without copying, and they can be added to a {@link CompositeByteBuf} like any other
+ * buffer.
+ * <p>
+ * The file is split into segments of a fixed size. Buffers that fit into one segment reuse the mappings of released
+ * segments, bigger buffers get a dedicated mapping that spans multiple segments and is unmapped once the buffer is
+ * released. The ranges of released mappings are reused by later buffers, and the file is truncated once its end is
+ * not used anymore. Heap buffers are not backed by the file.
+ * <p>
+ * The allocator must be {@linkplain #close() closed} once all of its buffers were released, which unmaps the pooled
+ * segments and deletes the file.
+ */
+public final class MappedFileByteBufAllocator extends AbstractByteBufAllocator implements Closeable {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(MappedFileByteBufAllocator.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    private static final int DEFAULT_MAX_POOLED_SEGMENTS = 64;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final int maxPooledSegments;
+    private final Queue<Region> pooledSegments;
+    // Unused ranges of the file, from their position to their size. Adjacent ranges are always coalesced and no range
+    // ends at the end of the file, as the file is truncated instead. Guarded by synchronized (this).
+    private final TreeMap<Long, Long> freeRanges = new TreeMap<Long, Long>();
+    private final AtomicLong usedMemory = new AtomicLong();
+    // Guarded by synchronized (this).
+    private long fileLength;
+    private volatile boolean closed;
+
+    /**
+     * Create a new instance which uses a file in the default temporary-file directory.
+     */
+    public MappedFileByteBufAllocator() throws IOException {
+        this(null, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_POOLED_SEGMENTS);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param directory         the directory in which the file is created, or {@code null} to use the default
+     *                          temporary-file directory
+     * @param segmentSize       the size of the segments the file is split into
+     * @param maxPooledSegments the maximum number of released segments that are kept mapped for reuse
+     */
+    public MappedFileByteBufAllocator(File directory, int segmentSize, int maxPooledSegments) throws IOException {
+        super(true);
+        this.segmentSize = checkPositive(segmentSize, "segmentSize");
+        this.maxPooledSegments = checkPositiveOrZero(maxPooledSegments, "maxPooledSegments");
+        // The queue needs a capacity of at least 2, the limit itself is enforced when a segment is released.
+        pooledSegments = maxPooledSegments == 0 ? null : PlatformDependent.<Region>newFixedMpmcQueue(
+                Math.max(2, maxPooledSegments));
+        file = PlatformDependent.createTempFile("netty-mapped", ".tmp", directory);
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        ByteBuf buf = PlatformDependent.hasUnsafe() ?
+                new UnpooledUnsafeHeapByteBuf(this, initialCapacity, maxCapacity) :
+                new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+        return toLeakAwareBuffer(buf);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        ByteBuf buf = PlatformDependent.hasUnsafe() ?
+                new MappedUnsafeDirectByteBuf(this, initialCapacity, maxCapacity) :
+                new MappedDirectByteBuf(this, initialCapacity, maxCapacity);
+        return toLeakAwareBuffer(buf);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return true;
+    }
+
+    /**
+     * Returns the size of the segments the file is split into.
+     */
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns the number of bytes of the file that are currently used by buffers.
+     */
+    public long usedMappedMemory() {
+        return usedMemory.get();
+    }
+
+    /**
+     * Unmap all pooled segments and delete the file. Buffers that were allocated by this allocator must not be used
+     * anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pooledSegments != null) {
+            for (;;) {
+                Region region = pooledSegments.poll();
+                if (region == null) {
+                    break;
+                }
+                PlatformDependent.freeDirectBuffer(region.mapped);
+            }
+        }
+        try {
+            channel.close();
+            raf.close();
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    Region allocateRegion(int capacity) {
+        if (closed) {
+            throw new IllegalStateException(StringUtil.simpleClassName(this) + " is closed");
+        }
+        Region region;
+        if (capacity <= segmentSize && pooledSegments != null && (region = pooledSegments.poll()) != null) {
+            usedMemory.addAndGet(region.size);
+            return region;
+        }
+
+        // Round up to a multiple of the segment size so the ranges of the file can be reused by other buffers.
+        long size = ((long) Math.max(capacity, 1) + segmentSize - 1) / segmentSize * segmentSize;
+        if (size > Integer.MAX_VALUE) {
+            size = capacity;
+        }
+        long position = reserveRange((int) size);
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            region = new Region(position, (int) size, mapped);
+        } catch (IOException e) {
+            releaseRange(position, (int) size);
+            throw new IllegalStateException("Unable to map " + size + " bytes of " + file, e);
+        }
+        usedMemory.addAndGet(region.size);
+        return region;
+    }
+
+    void releaseRegion(Region region) {
+        usedMemory.addAndGet(-region.size);
+        if (region.size == segmentSize && !closed && pooledSegments != null &&
+                pooledSegments.size() < maxPooledSegments && pooledSegments.offer(region)) {
+            return;
+        }
+        PlatformDependent.freeDirectBuffer(region.mapped);
+        releaseRange(region.position, region.size);
+    }
+
+    private synchronized long reserveRange(int size) {
+        // Use the first free range that is big enough, which keeps the used ranges at the start of the file so its
+        // end can be truncated.
+        Iterator<Map.Entry<Long, Long>> ranges = freeRanges.entrySet().iterator();
+        while (ranges.hasNext()) {
+            Map.Entry<Long, Long> range = ranges.next();
+            long rangeSize = range.getValue();
+            if (rangeSize >= size) {
+                long position = range.getKey();
+                ranges.remove();
+                if (rangeSize > size) {
+                    freeRanges.put(position + size, rangeSize - size);
+                }
+                return position;
+            }
+        }
+        long position = fileLength;
+        fileLength += size;
+        return position;
+    }
+
+    private synchronized void releaseRange(long position, int size) {
+        long end = position + size;
+        Map.Entry<Long, Long> previous = freeRanges.floorEntry(position);
+        if (previous != null && previous.getKey() + previous.getValue() == position) {
+            freeRanges.remove(previous.getKey());
+            position = previous.getKey();
+        }
+        Long nextSize = freeRanges.remove(end);
+        if (nextSize != null) {
+            end += nextSize;
+        }
+
+        if (end == fileLength) {
+            // The end of the file is not used anymore, so give it back to the file system.
+            fileLength = position;
+            if (!closed) {
+                try {
+                    channel.truncate(position);
+                } catch (IOException e) {
+                    logger.debug("Unable to truncate {} to {} bytes", file, position, e);
+                }
+            }
+        } else {
+            freeRanges.put(position, end - position);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(file: " + file + ", segmentSize: " + segmentSize +
+                ", usedMappedMemory: " + usedMappedMemory() + ')';
+    }
+
+    /**
+     * A mapped range of the file.
+     */
+    static final class Region {
+        final long position;
+        final int size;
+        final MappedByteBuffer mapped;
+
+        Region(long position, int size, MappedByteBuffer mapped) {
+            this.position = position;
+            this.size = size;
+            this.mapped = mapped;
+        }
+
+        ByteBuffer slice(int capacity) {
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.clear().limit(capacity);
+            return buffer.slice();
+        }
+    }
+
+    private static final class MappedDirectByteBuf extends UnpooledDirectByteBuf {
+        // These fields must not have initializers, as they are assigned by allocateDirect(...) which is already
+        // called by the super constructor.
+        private Region region;
+        private Region newRegion;
+
+        MappedDirectByteBuf(MappedFileByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+            super(alloc, initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuffer allocateDirect(int initialCapacity) {
+            Region allocated = ((MappedFileByteBufAllocator) alloc()).allocateRegion(initialCapacity);
+            if (region == null) {
+                region = allocated;
+            } else {
+                // The buffer is reallocated, the old region is freed once its content was copied.
+                newRegion = allocated;
+            }
+            return allocated.slice(initialCapacity);
+        }
+
+        @Override
+        protected void freeDirect(ByteBuffer buffer) {
+            Region freed = region;
+            region = newRegion;
+            newRegion = null;
+            ((MappedFileByteBufAllocator) alloc()).releaseRegion(ObjectUtil.checkNotNull(freed, "region"));
+        }
+    }
+
+    private static final class MappedUnsafeDirectByteBuf extends UnpooledUnsafeDirectByteBuf {
+        // These fields must not have initializers, as they are assigned by allocateDirect(...) which is already
+        // called by the super constructor.
+        private Region region;
+        private Region newRegion;
+
+        MappedUnsafeDirectByteBuf(MappedFileByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+            super(alloc, initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuffer allocateDirect(int initialCapacity) {
+            Region allocated = ((MappedFileByteBufAllocator) alloc()).allocateRegion(initialCapacity);
+            if (region == null) {
+                region = allocated;
+            } else {
+                // The buffer is reallocated, the old region is freed once its content was copied.
+                newRegion = allocated;
+            }
+            return allocated.slice(initialCapacity);
+        }
+
+        @Override
+        protected void freeDirect(ByteBuffer buffer) {
+            Region freed = region;
+            region = newRegion;
+            newRegion = null;
+            ((MappedFileByteBufAllocator) alloc()).releaseRegion(ObjectUtil.checkNotNull(freed, "region"));
+        }
+    }
+}
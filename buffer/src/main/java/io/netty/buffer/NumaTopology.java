@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * The NUMA topology of the system, as exposed by Linux via {@code sysfs}. On every other system, or if the topology
+ * can not be read, the system is treated as a single node.
+ */
+class NumaTopology {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(NumaTopology.class);
+
+    static final NumaTopology SINGLE_NODE = new NumaTopology(1, new int[0]);
+
+    private static final String NODE_DIR = "/sys/devices/system/node";
+    private static final String THREAD_STAT = "/proc/thread-self/stat";
+    // The field of /proc/[pid]/stat that contains the CPU the thread last ran on, counted from the state field
+    // which follows the command name. See proc(5).
+    private static final int PROCESSOR_FIELD = 36;
+
+    private final int numNodes;
+    // Maps the index of a CPU to its node.
+    private final int[] cpuToNode;
+
+    NumaTopology(int numNodes, int[] cpuToNode) {
+        this.numNodes = numNodes;
+        this.cpuToNode = cpuToNode;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    final int numNodes() {
+        return numNodes;
+    }
+
+    /**
+     * Returns the node of the CPU the calling thread currently runs on, or {@code 0} if it is unknown.
+     */
+    int currentNode() {
+        if (numNodes == 1) {
+            return 0;
+        }
+        String stat = readFirstLine(new File(THREAD_STAT));
+        return stat == null ? 0 : node(parseProcessor(stat));
+    }
+
+    /**
+     * Returns the node of the given CPU, or {@code 0} if it is unknown.
+     */
+    final int node(int cpu) {
+        if (cpu < 0 || cpu >= cpuToNode.length) {
+            return 0;
+        }
+        return cpuToNode[cpu];
+    }
+
+    static NumaTopology detect() {
+        if (!PlatformDependent.isOsx() && !PlatformDependent.isWindows()) {
+            try {
+                File[] nodeDirs = new File(NODE_DIR).listFiles();
+                if (nodeDirs != null) {
+                    int[] cpuToNode = new int[0];
+                    int numNodes = 0;
+                    for (File nodeDir : nodeDirs) {
+                        String name = nodeDir.getName();
+                        if (!name.matches("node[0-9]+")) {
+                            continue;
+                        }
+                        String cpuList = readFirstLine(new File(nodeDir, "cpulist"));
+                        if (cpuList == null) {
+                            continue;
+                        }
+                        int node = Integer.parseInt(name.substring(4));
+                        cpuToNode = assignCpus(cpuToNode, cpuList, node);
+                        numNodes = Math.max(numNodes, node + 1);
+                    }
+                    if (numNodes > 1) {
+                        return new NumaTopology(numNodes, cpuToNode);
+                    }
+                }
+            } catch (SecurityException e) {
+                logger.debug("Unable to read the NUMA topology from {}", NODE_DIR, e);
+            } catch (NumberFormatException e) {
+                logger.debug("Unable to parse the NUMA topology from {}", NODE_DIR, e);
+            }
+        }
+        return SINGLE_NODE;
+    }
+
+    /**
+     * Assigns the CPUs of the given cpu list (e.g. {@code 0-3,8-11}) to the node.
+     */
+    static int[] assignCpus(int[] cpuToNode, String cpuList, int node) {
+        for (String range : cpuList.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            int first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+            int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1));
+            if (last >= cpuToNode.length) {
+                cpuToNode = Arrays.copyOf(cpuToNode, last + 1);
+            }
+            for (int cpu = first; cpu <= last; cpu++) {
+                cpuToNode[cpu] = node;
+            }
+        }
+        return cpuToNode;
+    }
+
+    /**
+     * Returns the CPU the thread last ran on from the content of {@code /proc/[pid]/stat}, or {@code -1} if it can
+     * not be parsed.
+     */
+    static int parseProcessor(String stat) {
+        // The command name is enclosed in parentheses and may contain whitespaces and parentheses itself.
+        int commandEnd = stat.lastIndexOf(')');
+        if (commandEnd < 0) {
+            return -1;
+        }
+        String[] fields = stat.substring(commandEnd + 1).trim().split(" ");
+        if (fields.length <= PROCESSOR_FIELD) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(fields[PROCESSOR_FIELD]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readFirstLine(File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CharsetUtil.US_ASCII));
+            return reader.readLine();
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", file, e);
+            return null;
+        } catch (SecurityException e) {
+            logger.debug("Unable to read {}", file, e);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // Ignore
+                }
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static io.netty.buffer.PoolChunk.isSubpage;
 import static java.lang.Math.max;
@@ -52,22 +53,31 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
 
     private final List<PoolChunkListMetric> chunkListMetrics;
 
-    // Metrics for allocations and deallocations
-    private long allocationsNormal;
-    // We need to use the LongCounter here as this is not guarded via synchronized block.
+    // Metrics for allocations and deallocations.
+    // We use LongCounters here so the counters can be updated without holding the arena lock.
+    private final LongCounter allocationsNormal = PlatformDependent.newLongCounter();
     private final LongCounter allocationsSmall = PlatformDependent.newLongCounter();
     private final LongCounter allocationsHuge = PlatformDependent.newLongCounter();
     private final LongCounter activeBytesHuge = PlatformDependent.newLongCounter();
 
-    private long deallocationsSmall;
-    private long deallocationsNormal;
-
-    // We need to use the LongCounter here as this is not guarded via synchronized block.
+    private final LongCounter deallocationsSmall = PlatformDependent.newLongCounter();
+    private final LongCounter deallocationsNormal = PlatformDependent.newLongCounter();
     private final LongCounter deallocationsHuge = PlatformDependent.newLongCounter();
 
+    // Bytes of the chunks that were released by trimIdleChunks(...).
+    private final LongCounter trimmedBytes = PlatformDependent.newLongCounter();
+
+    // Guards the PoolChunkLists and the moving of PoolChunks between them. Allocations of small sizes only need the
+    // lock of the subpage pool head of their size index, unless a run needs to be allocated. Runs are freed while
+    // only holding the lock of their PoolChunk, the arena lock is only needed if the chunk must move to another list.
+    private final ReentrantLock lock = new ReentrantLock();
+
     // Number of thread caches backed by this arena.
     final AtomicInteger numThreadCaches = new AtomicInteger();
 
+    // Statistics of the thread caches backed by this arena.
+    final ThreadCacheMetric threadCacheMetric = new ThreadCacheMetric();
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
@@ -151,12 +161,13 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
         }
 
         /*
-         * Synchronize on the head. This is needed as {@link PoolChunk#allocateSubpage(int)} and
-         * {@link PoolChunk#free(long)} may modify the doubly linked list as well.
+         * Lock the head. This is needed as {@link PoolChunk#allocateSubpage(int)} and
+         * {@link PoolChunk#freeSubpage(long, int)} may modify the doubly linked list as well.
          */
         final PoolSubpage<T> head = smallSubpagePools[sizeIdx];
         final boolean needsNormalAllocation;
-        synchronized (head) {
+        head.lock();
+        try {
             final PoolSubpage<T> s = head.next;
             needsNormalAllocation = s == head;
             if (!needsNormalAllocation) {
@@ -166,11 +177,16 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
                 assert handle >= 0;
                 s.chunk.initBufWithSubpage(buf, null, handle, reqCapacity, cache);
             }
+        } finally {
+            head.unlock();
         }
 
         if (needsNormalAllocation) {
-            synchronized (this) {
+            lock();
+            try {
                 allocateNormal(buf, reqCapacity, sizeIdx, cache);
+            } finally {
+                unlock();
             }
         }
 
@@ -183,13 +199,16 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
             // was able to allocate out of the cache so move on
             return;
         }
-        synchronized (this) {
+        lock();
+        try {
             allocateNormal(buf, reqCapacity, sizeIdx, cache);
-            ++allocationsNormal;
+        } finally {
+            unlock();
         }
+        allocationsNormal.increment();
     }
 
-    // Method must be called inside synchronized(this) { ... } block
+    // Method must be called while holding the arena lock.
     private void allocateNormal(PooledByteBuf<T> buf, int reqCapacity, int sizeIdx, PoolThreadCache threadCache) {
         if (q050.allocate(buf, reqCapacity, sizeIdx, threadCache) ||
             q025.allocate(buf, reqCapacity, sizeIdx, threadCache) ||
@@ -203,7 +222,12 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
         PoolChunk<T> c = newChunk(pageSize, nPSizes, pageShifts, chunkSize);
         boolean success = c.allocate(buf, reqCapacity, sizeIdx, threadCache);
         assert success;
-        qInit.add(c);
+        c.lock();
+        try {
+            qInit.add(c);
+        } finally {
+            c.unlock();
+        }
     }
 
     private void incSmallAllocation() {
@@ -240,34 +264,93 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
 
     void freeChunk(PoolChunk<T> chunk, long handle, int normCapacity, SizeClass sizeClass, ByteBuffer nioBuffer,
                    boolean finalizer) {
+        // We only call this if freeChunk is not called because of the PoolThreadCache finalizer as otherwise this
+        // may fail due lazy class-loading in for example tomcat.
+        if (!finalizer) {
+            switch (sizeClass) {
+                case Normal:
+                    deallocationsNormal.increment();
+                    break;
+                case Small:
+                    deallocationsSmall.increment();
+                    break;
+                default:
+                    throw new Error();
+            }
+        }
+        if (sizeClass == SizeClass.Small && chunk.freeSubpage(handle, normCapacity)) {
+            // The subpage is still in use, which means the usage of the chunk did not change. There is no need to
+            // acquire the arena lock at all.
+            return;
+        }
+        if (!chunk.freeRun(handle, nioBuffer)) {
+            // The chunk stays in its PoolChunkList, so there is no need to acquire the arena lock either.
+            return;
+        }
         final boolean destroyChunk;
-        synchronized (this) {
-            // We only call this if freeChunk is not called because of the PoolThreadCache finalizer as otherwise this
-            // may fail due lazy class-loading in for example tomcat.
-            if (!finalizer) {
-                switch (sizeClass) {
-                    case Normal:
-                        ++deallocationsNormal;
-                        break;
-                    case Small:
-                        ++deallocationsSmall;
-                        break;
-                    default:
-                        throw new Error();
-                }
+        lock();
+        try {
+            chunk.lock();
+            try {
+                // Other threads may have allocated from, moved or destroyed the chunk since its run was freed.
+                PoolChunkList<T> parent = chunk.parent;
+                destroyChunk = parent != null && parent.needsMove(chunk) && !parent.free(chunk);
+            } finally {
+                chunk.unlock();
             }
-            destroyChunk = !chunk.parent.free(chunk, handle, normCapacity, nioBuffer);
+        } finally {
+            unlock();
         }
         if (destroyChunk) {
-            // destroyChunk not need to be called while holding the synchronized lock.
+            // destroyChunk not need to be called while holding the lock.
+            destroyChunk(chunk);
+        }
+    }
+
+    /**
+     * Destroys the chunks of which no memory was used for at least {@code idleNanos}, and returns the number of bytes
+     * that were released.
+     */
+    long trimIdleChunks(long idleNanos) {
+        List<PoolChunk<T>> idleChunks = new ArrayList<PoolChunk<T>>();
+        long nowNanos = System.nanoTime();
+        lock();
+        try {
+            // Only qInit keeps unused chunks. A chunk of any other list is destroyed as soon as its usage drops below
+            // 1%, as q000 has no previous list to move it to.
+            qInit.removeIdleChunks(nowNanos, idleNanos, idleChunks);
+        } finally {
+            unlock();
+        }
+        long bytes = 0;
+        for (PoolChunk<T> chunk : idleChunks) {
+            bytes += chunk.chunkSize();
+            // destroyChunk not need to be called while holding the lock.
             destroyChunk(chunk);
         }
+        trimmedBytes.add(bytes);
+        return bytes;
+    }
+
+    /**
+     * Return the number of bytes of the chunks that were released because they were idle.
+     */
+    long numTrimmedBytes() {
+        return trimmedBytes.value();
     }
 
     PoolSubpage<T> findSubpagePoolHead(int sizeIdx) {
         return smallSubpagePools[sizeIdx];
     }
 
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
     void reallocate(PooledByteBuf<T> buf, int newCapacity, boolean freeOldMemory) {
         assert newCapacity >= 0 && newCapacity <= buf.maxCapacity();
 
@@ -353,11 +436,7 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
 
     @Override
     public long numAllocations() {
-        final long allocsNormal;
-        synchronized (this) {
-            allocsNormal = allocationsNormal;
-        }
-        return allocationsSmall.value() + allocsNormal + allocationsHuge.value();
+        return allocationsSmall.value() + allocationsNormal.value() + allocationsHuge.value();
     }
 
     @Override
@@ -371,17 +450,13 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
     }
 
     @Override
-    public synchronized long numNormalAllocations() {
-        return allocationsNormal;
+    public long numNormalAllocations() {
+        return allocationsNormal.value();
     }
 
     @Override
     public long numDeallocations() {
-        final long deallocs;
-        synchronized (this) {
-            deallocs = deallocationsSmall + deallocationsNormal;
-        }
-        return deallocs + deallocationsHuge.value();
+        return deallocationsSmall.value() + deallocationsNormal.value() + deallocationsHuge.value();
     }
 
     @Override
@@ -390,13 +465,13 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
     }
 
     @Override
-    public synchronized long numSmallDeallocations() {
-        return deallocationsSmall;
+    public long numSmallDeallocations() {
+        return deallocationsSmall.value();
     }
 
     @Override
-    public synchronized long numNormalDeallocations() {
-        return deallocationsNormal;
+    public long numNormalDeallocations() {
+        return deallocationsNormal.value();
     }
 
     @Override
@@ -411,11 +486,8 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
 
     @Override
     public  long numActiveAllocations() {
-        long val = allocationsSmall.value() + allocationsHuge.value()
-                - deallocationsHuge.value();
-        synchronized (this) {
-            val += allocationsNormal - (deallocationsSmall + deallocationsNormal);
-        }
+        long val = allocationsSmall.value() + allocationsHuge.value() + allocationsNormal.value()
+                - deallocationsHuge.value() - deallocationsSmall.value() - deallocationsNormal.value();
         return max(val, 0);
     }
 
@@ -431,11 +503,7 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
 
     @Override
     public long numActiveNormalAllocations() {
-        final long val;
-        synchronized (this) {
-            val = allocationsNormal - deallocationsNormal;
-        }
-        return max(val, 0);
+        return max(allocationsNormal.value() - deallocationsNormal.value(), 0);
     }
 
     @Override
@@ -446,12 +514,15 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
     @Override
     public long numActiveBytes() {
         long val = activeBytesHuge.value();
-        synchronized (this) {
+        lock();
+        try {
             for (int i = 0; i < chunkListMetrics.size(); i++) {
                 for (PoolChunkMetric m: chunkListMetrics.get(i)) {
                     val += m.chunkSize();
                 }
             }
+        } finally {
+            unlock();
         }
         return max(0, val);
     }
@@ -462,12 +533,15 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
      */
     public long numPinnedBytes() {
         long val = activeBytesHuge.value(); // Huge chunks are exact-sized for the buffers they were allocated to.
-        synchronized (this) {
+        lock();
+        try {
             for (int i = 0; i < chunkListMetrics.size(); i++) {
                 for (PoolChunkMetric m: chunkListMetrics.get(i)) {
                     val += ((PoolChunk<?>) m).pinnedBytes();
                 }
             }
+        } finally {
+            unlock();
         }
         return max(0, val);
     }
@@ -479,7 +553,16 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
     protected abstract void destroyChunk(PoolChunk<T> chunk);
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
+        lock();
+        try {
+            return toString0();
+        } finally {
+            unlock();
+        }
+    }
+
+    private String toString0() {
         StringBuilder buf = new StringBuilder()
             .append("Chunk(s) at 0~25%:")
             .append(StringUtil.NEWLINE)
@@ -555,6 +638,59 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
         }
     }
 
+    /**
+     * Aggregated statistics of all {@link PoolThreadCache}s that are backed by an arena. The thread caches only
+     * publish their numbers when they are trimmed or freed, so updating these counters is not on the hot path.
+     */
+    static final class ThreadCacheMetric implements PoolThreadCacheMetric {
+        private final LongCounter hits = PlatformDependent.newLongCounter();
+        private final LongCounter misses = PlatformDependent.newLongCounter();
+        private final LongCounter rejected = PlatformDependent.newLongCounter();
+        private final LongCounter trimmed = PlatformDependent.newLongCounter();
+
+        void record(int hits, int misses, int rejected, int trimmed) {
+            if (hits > 0) {
+                this.hits.add(hits);
+            }
+            if (misses > 0) {
+                this.misses.add(misses);
+            }
+            if (rejected > 0) {
+                this.rejected.add(rejected);
+            }
+            if (trimmed > 0) {
+                this.trimmed.add(trimmed);
+            }
+        }
+
+        @Override
+        public long numHits() {
+            return hits.value();
+        }
+
+        @Override
+        public long numMisses() {
+            return misses.value();
+        }
+
+        @Override
+        public long numRejected() {
+            return rejected.value();
+        }
+
+        @Override
+        public long numTrimmed() {
+            return trimmed.value();
+        }
+
+        @Override
+        public String toString() {
+            return StringUtil.simpleClassName(this) +
+                    "(hits: " + numHits() + ", misses: " + numMisses() +
+                    ", rejected: " + numRejected() + ", trimmed: " + numTrimmed() + ')';
+        }
+    }
+
     static final class HeapArena extends PoolArena<byte[]> {
 
         HeapArena(PooledByteBufAllocator parent, int pageSize, int pageShifts,
@@ -605,11 +741,20 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
     }
 
     static final class DirectArena extends PoolArena<ByteBuffer> {
+        // The alignment of the memory of the pooled chunks, which is at least the cache alignment.
+        private final int chunkAlignment;
 
         DirectArena(PooledByteBufAllocator parent, int pageSize, int pageShifts,
                     int chunkSize, int directMemoryCacheAlignment) {
+            this(parent, pageSize, pageShifts, chunkSize, directMemoryCacheAlignment, 0);
+        }
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int pageShifts,
+                    int chunkSize, int directMemoryCacheAlignment, int directChunkAlignment) {
             super(parent, pageSize, pageShifts, chunkSize,
                   directMemoryCacheAlignment);
+            // Both are powers of two, so aligning to the bigger one also satisfies the smaller one.
+            chunkAlignment = max(directMemoryCacheAlignment, directChunkAlignment);
         }
 
         @Override
@@ -620,14 +765,14 @@ abstract class PoolArena<T> extends SizeClasses implements PoolArenaMetric {
         @Override
         protected PoolChunk<ByteBuffer> newChunk(int pageSize, int maxPageIdx,
             int pageShifts, int chunkSize) {
-            if (directMemoryCacheAlignment == 0) {
+            if (chunkAlignment == 0) {
                 ByteBuffer memory = allocateDirect(chunkSize);
                 return new PoolChunk<ByteBuffer>(this, memory, memory, pageSize, pageShifts,
                         chunkSize, maxPageIdx);
             }
 
-            final ByteBuffer base = allocateDirect(chunkSize + directMemoryCacheAlignment);
-            final ByteBuffer memory = PlatformDependent.alignDirectBuffer(base, directMemoryCacheAlignment);
+            final ByteBuffer base = allocateDirect(chunkSize + chunkAlignment);
+            final ByteBuffer memory = PlatformDependent.alignDirectBuffer(base, chunkAlignment);
             return new PoolChunk<ByteBuffer>(this, base, memory, pageSize,
                     pageShifts, chunkSize, maxPageIdx);
         }
@@ -22,6 +22,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Description of algorithm for PageRun/PoolSubpage allocation from PoolChunk
@@ -158,6 +159,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
      */
     private final LongPriorityQueue[] runsAvail;
 
+    // Guards runsAvail, runsAvailMap, freeBytes, idleSinceNanos, parent and cachedNioBuffers. This allows runs to be
+    // freed without holding the arena lock, the arena lock is only needed when the chunk must move to another
+    // PoolChunkList. If both locks are needed the arena lock must be acquired first.
+    private final ReentrantLock lock;
+
     /**
      * manage all subpages in this chunk
      */
@@ -181,7 +187,13 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     int freeBytes;
 
+    // The time at which the last allocation of this chunk was freed, only valid if no memory of the chunk is in use.
+    long idleSinceNanos;
+
+    // The PoolChunkList that contains this chunk, or null once it was removed from the lists to be destroyed.
+    // Changed while holding both the arena lock and the chunk lock.
     PoolChunkList<T> parent;
+    // Guarded by the arena lock.
     PoolChunk<T> prev;
     PoolChunk<T> next;
 
@@ -200,6 +212,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
         freeBytes = chunkSize;
 
         runsAvail = newRunsAvailqueueArray(maxPageIdx);
+        lock = new ReentrantLock();
         runsAvailMap = new LongLongHashMap(-1);
         subpages = new PoolSubpage[chunkSize >> pageShifts];
 
@@ -221,6 +234,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
         pageShifts = 0;
         runsAvailMap = null;
         runsAvail = null;
+        lock = null;
         subpages = null;
         chunkSize = size;
         cachedNioBuffers = null;
@@ -281,11 +295,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public int usage() {
-        final int freeBytes;
-        synchronized (arena) {
-            freeBytes = this.freeBytes;
-        }
-        return usage(freeBytes);
+        return usage(freeBytes());
     }
 
     private int usage(int freeBytes) {
@@ -320,16 +330,28 @@ final class PoolChunk<T> implements PoolChunkMetric {
             assert !isSubpage(handle);
         }
 
-        ByteBuffer nioBuffer = cachedNioBuffers != null? cachedNioBuffers.pollLast() : null;
-        initBuf(buf, nioBuffer, handle, reqCapacity, cache);
+        initBuf(buf, pollCachedNioBuffer(), handle, reqCapacity, cache);
         return true;
     }
 
+    private ByteBuffer pollCachedNioBuffer() {
+        if (cachedNioBuffers == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            return cachedNioBuffers.pollLast();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private long allocateRun(int runSize) {
         int pages = runSize >> pageShifts;
         int pageIdx = arena.pages2pageIdx(pages);
 
-        synchronized (runsAvail) {
+        lock.lock();
+        try {
             //find first queue which has at least one big enough run
             int queueIdx = runFirstBestFit(pageIdx);
             if (queueIdx == -1) {
@@ -351,6 +373,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
             int pinnedSize = runSize(pageShifts, handle);
             freeBytes -= pinnedSize;
             return handle;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -426,10 +450,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
      * @return index in memoryMap
      */
     private long allocateSubpage(int sizeIdx) {
-        // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
+        // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and lock it.
         // This is need as we may add it back and so alter the linked-list structure.
         PoolSubpage<T> head = arena.findSubpagePoolHead(sizeIdx);
-        synchronized (head) {
+        head.lock();
+        try {
             //allocate a new run
             int runSize = calculateRunSize(sizeIdx);
             //runSize must be multiples of pageSize
@@ -447,41 +472,59 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
             subpages[runOffset] = subpage;
             return subpage.allocate();
+        } finally {
+            head.unlock();
         }
     }
 
     /**
-     * Free a subpage or a run of pages When a subpage is freed from PoolSubpage, it might be added back to subpage pool
+     * Free an element of a subpage. When a subpage is freed from PoolSubpage, it might be added back to subpage pool
      * of the owning PoolArena. If the subpage pool in PoolArena has at least one other PoolSubpage of given elemSize,
-     * we can completely free the owning Page so it is available for subsequent allocations
+     * we can completely free the owning Page so it is available for subsequent allocations.
+     * <p>
+     * This only needs the lock of the subpage pool head, and not the arena lock.
      *
-     * @param handle handle to free
+     * @param handle handle to free, must be a subpage handle
+     * @return {@code true} if the subpage is still used, {@code false} if the run of the subpage needs to be freed
+     *         via {@link #freeRun(long, ByteBuffer)}.
      */
-    void free(long handle, int normCapacity, ByteBuffer nioBuffer) {
-        int runSize = runSize(pageShifts, handle);
-        if (isSubpage(handle)) {
-            int sizeIdx = arena.size2SizeIdx(normCapacity);
-            PoolSubpage<T> head = arena.findSubpagePoolHead(sizeIdx);
-
-            int sIdx = runOffset(handle);
-            PoolSubpage<T> subpage = subpages[sIdx];
-            assert subpage != null && subpage.doNotDestroy;
-
-            // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
-            // This is need as we may add it back and so alter the linked-list structure.
-            synchronized (head) {
-                if (subpage.free(head, bitmapIdx(handle))) {
-                    //the subpage is still used, do not free it
-                    return;
-                }
-                assert !subpage.doNotDestroy;
-                // Null out slot in the array as it was freed and we should not use it anymore.
-                subpages[sIdx] = null;
+    boolean freeSubpage(long handle, int normCapacity) {
+        assert isSubpage(handle);
+        int sizeIdx = arena.size2SizeIdx(normCapacity);
+        PoolSubpage<T> head = arena.findSubpagePoolHead(sizeIdx);
+
+        int sIdx = runOffset(handle);
+        PoolSubpage<T> subpage = subpages[sIdx];
+        assert subpage != null && subpage.doNotDestroy;
+
+        // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and lock it.
+        // This is need as we may add it back and so alter the linked-list structure.
+        head.lock();
+        try {
+            if (subpage.free(head, bitmapIdx(handle))) {
+                return true;
             }
+            assert !subpage.doNotDestroy;
+            // Null out slot in the array as it was freed and we should not use it anymore.
+            subpages[sIdx] = null;
+            return false;
+        } finally {
+            head.unlock();
         }
+    }
 
+    /**
+     * Free a run of pages. This only needs the lock of this chunk, and not the arena lock.
+     *
+     * @return {@code true} if the usage of this chunk dropped below the minimum usage of its {@link PoolChunkList},
+     *         in which case the chunk must be moved via {@link PoolChunkList#free(PoolChunk)} while holding the arena
+     *         lock.
+     */
+    boolean freeRun(long handle, ByteBuffer nioBuffer) {
+        int runSize = runSize(pageShifts, handle);
         //start free run
-        synchronized (runsAvail) {
+        lock.lock();
+        try {
             // collapse continuous runs, successfully collapsed runs
             // will be removed from runsAvail and runsAvailMap
             long finalRun = collapseRuns(handle);
@@ -493,11 +536,18 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
             insertAvailRun(runOffset(finalRun), runPages(finalRun), finalRun);
             freeBytes += runSize;
-        }
+            if (freeBytes == chunkSize) {
+                idleSinceNanos = System.nanoTime();
+            }
 
-        if (nioBuffer != null && cachedNioBuffers != null &&
-            cachedNioBuffers.size() < PooledByteBufAllocator.DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK) {
-            cachedNioBuffers.offer(nioBuffer);
+            if (nioBuffer != null && cachedNioBuffers != null &&
+                cachedNioBuffers.size() < PooledByteBufAllocator.DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK) {
+                cachedNioBuffers.offer(nioBuffer);
+            }
+            PoolChunkList<T> parent = this.parent;
+            return parent != null && parent.needsMove(this);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -600,8 +650,14 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public int freeBytes() {
-        synchronized (arena) {
+        if (lock == null) {
+            return freeBytes;
+        }
+        lock.lock();
+        try {
             return freeBytes;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -611,11 +667,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public String toString() {
-        final int freeBytes;
-        synchronized (arena) {
-            freeBytes = this.freeBytes;
-        }
-
+        final int freeBytes = freeBytes();
         return new StringBuilder()
                 .append("Chunk(")
                 .append(Integer.toHexString(System.identityHashCode(this)))
@@ -629,6 +681,14 @@ final class PoolChunk<T> implements PoolChunkMetric {
                 .toString();
     }
 
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
     void destroy() {
         arena.destroyChunk(this);
     }
@@ -106,9 +106,15 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
 
         for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
             if (cur.allocate(buf, reqCapacity, sizeIdx, threadCache)) {
-                if (cur.freeBytes <= freeMinThreshold) {
-                    remove(cur);
-                    nextList.add(cur);
+                // Runs of the chunk may be freed concurrently, so only inspect its usage while holding its lock.
+                cur.lock();
+                try {
+                    if (cur.freeBytes <= freeMinThreshold) {
+                        remove(cur);
+                        nextList.add(cur);
+                    }
+                } finally {
+                    cur.unlock();
                 }
                 return true;
             }
@@ -116,14 +122,26 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         return false;
     }
 
-    boolean free(PoolChunk<T> chunk, long handle, int normCapacity, ByteBuffer nioBuffer) {
-        chunk.free(handle, normCapacity, nioBuffer);
-        if (chunk.freeBytes > freeMaxThreshold) {
-            remove(chunk);
-            // Move the PoolChunk down the PoolChunkList linked-list.
-            return move0(chunk);
-        }
-        return true;
+    /**
+     * Returns {@code true} if the usage of the given {@link PoolChunk} dropped below the minimum usage of this
+     * {@link PoolChunkList}. Must be called while holding the lock of the chunk.
+     */
+    boolean needsMove(PoolChunk<T> chunk) {
+        return chunk.freeBytes > freeMaxThreshold;
+    }
+
+    /**
+     * Moves the {@link PoolChunk} down the {@link PoolChunkList} linked-list after one of its runs was freed via
+     * {@link PoolChunk#freeRun(long, ByteBuffer)} and {@link #needsMove(PoolChunk)} returned {@code true}. Must be
+     * called while holding the arena lock and the lock of the chunk.
+     *
+     * @return {@code false} if the chunk was removed from all lists and must be destroyed.
+     */
+    boolean free(PoolChunk<T> chunk) {
+        assert chunk.parent == this;
+        remove(chunk);
+        // Move the PoolChunk down the PoolChunkList linked-list.
+        return move0(chunk);
     }
 
     private boolean move(PoolChunk<T> chunk) {
@@ -147,7 +165,8 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         if (prevList == null) {
             // There is no previous PoolChunkList so return false which result in having the PoolChunk destroyed and
             // all memory associated with the PoolChunk will be released.
-            assert chunk.usage() == 0;
+            assert chunk.freeBytes == chunk.chunkSize();
+            chunk.parent = null;
             return false;
         }
         return prevList.move(chunk);
@@ -162,7 +181,8 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
     }
 
     /**
-     * Adds the {@link PoolChunk} to this {@link PoolChunkList}.
+     * Adds the {@link PoolChunk} to this {@link PoolChunkList}. Must be called while holding the arena lock and the
+     * lock of the chunk.
      */
     void add0(PoolChunk<T> chunk) {
         chunk.parent = this;
@@ -178,6 +198,28 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         }
     }
 
+    /**
+     * Removes the {@link PoolChunk}s of which no memory was used for at least {@code idleNanos} from this
+     * {@link PoolChunkList} and adds them to {@code idleChunks}.
+     */
+    void removeIdleChunks(long nowNanos, long idleNanos, List<PoolChunk<T>> idleChunks) {
+        PoolChunk<T> cur = head;
+        while (cur != null) {
+            PoolChunk<T> next = cur.next;
+            cur.lock();
+            try {
+                if (cur.freeBytes == cur.chunkSize() && nowNanos - cur.idleSinceNanos >= idleNanos) {
+                    remove(cur);
+                    cur.parent = null;
+                    idleChunks.add(cur);
+                }
+            } finally {
+                cur.unlock();
+            }
+            cur = next;
+        }
+    }
+
     private void remove(PoolChunk<T> cur) {
         if (cur == head) {
             head = cur.next;
@@ -209,7 +251,8 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
 
     @Override
     public Iterator<PoolChunkMetric> iterator() {
-        synchronized (arena) {
+        arena.lock();
+        try {
             if (head == null) {
                 return EMPTY_METRICS;
             }
@@ -222,13 +265,16 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
                 }
             }
             return metrics.iterator();
+        } finally {
+            arena.unlock();
         }
     }
 
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
-        synchronized (arena) {
+        arena.lock();
+        try {
             if (head == null) {
                 return "none";
             }
@@ -241,6 +287,8 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
                 }
                 buf.append(StringUtil.NEWLINE);
             }
+        } finally {
+            arena.unlock();
         }
         return buf.toString();
     }
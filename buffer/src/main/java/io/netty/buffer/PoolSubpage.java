@@ -22,6 +22,8 @@ import static io.netty.buffer.PoolChunk.IS_USED_SHIFT;
 import static io.netty.buffer.PoolChunk.IS_SUBPAGE_SHIFT;
 import static io.netty.buffer.SizeClasses.LOG2_QUANTUM;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 final class PoolSubpage<T> implements PoolSubpageMetric {
 
     final PoolChunk<T> chunk;
@@ -40,6 +42,9 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     private int nextAvail;
     private int numAvail;
 
+    // Only the head of a subpage pool has a lock. It guards all the subpages of the pool.
+    private final ReentrantLock lock;
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
@@ -51,6 +56,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         elemSize = -1;
         runSize = -1;
         bitmap = null;
+        lock = new ReentrantLock();
     }
 
     PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int pageShifts, int runOffset, int runSize, int elemSize) {
@@ -60,6 +66,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         this.runSize = runSize;
         this.elemSize = elemSize;
         bitmap = new long[runSize >>> 6 + LOG2_QUANTUM]; // runSize / 64 / QUANTUM
+        lock = null;
 
         doNotDestroy = true;
         if (elemSize != 0) {
@@ -221,7 +228,9 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
             numAvail = 0;
             elemSize = -1;
         } else {
-            synchronized (chunk.arena) {
+            final PoolSubpage<T> head = head();
+            head.lock();
+            try {
                 if (!this.doNotDestroy) {
                     doNotDestroy = false;
                     // Not used for creating the String.
@@ -232,6 +241,8 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
                     numAvail = this.numAvail;
                     elemSize = this.elemSize;
                 }
+            } finally {
+                head.unlock();
             }
         }
 
@@ -250,8 +261,12 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
             return 0;
         }
 
-        synchronized (chunk.arena) {
+        final PoolSubpage<T> head = head();
+        head.lock();
+        try {
             return maxNumElems;
+        } finally {
+            head.unlock();
         }
     }
 
@@ -262,8 +277,12 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
             return 0;
         }
 
-        synchronized (chunk.arena) {
+        final PoolSubpage<T> head = head();
+        head.lock();
+        try {
             return numAvail;
+        } finally {
+            head.unlock();
         }
     }
 
@@ -274,9 +293,8 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
             return -1;
         }
 
-        synchronized (chunk.arena) {
-            return elemSize;
-        }
+        // The element size never changes.
+        return elemSize;
     }
 
     @Override
@@ -284,6 +302,18 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         return 1 << pageShifts;
     }
 
+    private PoolSubpage<T> head() {
+        return chunk.arena.findSubpagePoolHead(chunk.arena.size2SizeIdx(elemSize));
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
     void destroy() {
         if (chunk != null) {
             chunk.destroy();
@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Acts a Thread cache for allocations. This implementation is moduled after
@@ -40,11 +41,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * technics of
  * <a href="https://www.facebook.com/notes/facebook-engineering/scalable-memory-allocation-using-jemalloc/480222803919">
  * Scalable memory allocation using jemalloc</a>.
+ * <p>
+ * The number of buffers that are cached per size is adjusted every time the cache is trimmed: sizes that are barely
+ * used cache less (down to 1/{@value #MAX_CACHE_SIZE_SHRINK} of the configured size), while sizes for which the cache
+ * overflowed while allocations missed it cache more again. The configured size is never exceeded.
  */
 final class PoolThreadCache {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(PoolThreadCache.class);
     private static final int INTEGER_SIZE_MINUS_ONE = Integer.SIZE - 1;
+    // How much the number of cached buffers per size may shrink compared to the configured cache size.
+    private static final int MAX_CACHE_SIZE_SHRINK = 16;
+    // The smallest capacity of the chunked MPSC queue that is used by the caches.
+    private static final int MIN_QUEUE_CAPACITY = 4;
 
     final PoolArena<byte[]> heapArena;
     final PoolArena<ByteBuffer> directArena;
@@ -215,10 +224,10 @@ final class PoolThreadCache {
         // As free() may be called either by the finalizer or by FastThreadLocal.onRemoval(...) we need to ensure
         // we only call this one time.
         if (freed.compareAndSet(false, true)) {
-            int numFreed = free(smallSubPageDirectCaches, finalizer) +
-                    free(normalDirectCaches, finalizer) +
-                    free(smallSubPageHeapCaches, finalizer) +
-                    free(normalHeapCaches, finalizer);
+            int numFreed = free(smallSubPageDirectCaches, directArena, finalizer) +
+                    free(normalDirectCaches, directArena, finalizer) +
+                    free(smallSubPageHeapCaches, heapArena, finalizer) +
+                    free(normalHeapCaches, heapArena, finalizer);
 
             if (numFreed > 0 && logger.isDebugEnabled()) {
                 logger.debug("Freed {} thread-local buffer(s) from thread: {}", numFreed,
@@ -235,46 +244,55 @@ final class PoolThreadCache {
         }
     }
 
-    private static int free(MemoryRegionCache<?>[] caches, boolean finalizer) {
+    private static int free(MemoryRegionCache<?>[] caches, PoolArena<?> arena, boolean finalizer) {
         if (caches == null) {
             return 0;
         }
 
         int numFreed = 0;
         for (MemoryRegionCache<?> c: caches) {
-            numFreed += free(c, finalizer);
+            numFreed += free(c, arena, finalizer);
         }
         return numFreed;
     }
 
-    private static int free(MemoryRegionCache<?> cache, boolean finalizer) {
+    private static int free(MemoryRegionCache<?> cache, PoolArena<?> arena, boolean finalizer) {
         if (cache == null) {
             return 0;
         }
-        return cache.free(finalizer);
+        return cache.free(arena.threadCacheMetric, finalizer);
     }
 
     void trim() {
-        trim(smallSubPageDirectCaches);
-        trim(normalDirectCaches);
-        trim(smallSubPageHeapCaches);
-        trim(normalHeapCaches);
+        trim(smallSubPageDirectCaches, directArena);
+        trim(normalDirectCaches, directArena);
+        trim(smallSubPageHeapCaches, heapArena);
+        trim(normalHeapCaches, heapArena);
     }
 
-    private static void trim(MemoryRegionCache<?>[] caches) {
+    private static void trim(MemoryRegionCache<?>[] caches, PoolArena<?> arena) {
         if (caches == null) {
             return;
         }
         for (MemoryRegionCache<?> c: caches) {
-            trim(c);
+            trim(c, arena);
         }
     }
 
-    private static void trim(MemoryRegionCache<?> cache) {
+    private static void trim(MemoryRegionCache<?> cache, PoolArena<?> arena) {
         if (cache == null) {
             return;
         }
-        cache.trim();
+        cache.trim(arena.threadCacheMetric);
+    }
+
+    /**
+     * Returns the number of buffers the cache for the given size may currently hold, or {@code 0} if the size is
+     * not cached at all.
+     */
+    int cacheSize(PoolArena<?> area, int sizeIdx, SizeClass sizeClass) {
+        MemoryRegionCache<?> cache = cache(area, sizeIdx, sizeClass);
+        return cache == null ? 0 : cache.size;
     }
 
     private MemoryRegionCache<?> cacheForSmall(PoolArena<?> area, int sizeIdx) {
@@ -333,14 +351,30 @@ final class PoolThreadCache {
     }
 
     private abstract static class MemoryRegionCache<T> {
-        private final int size;
+        private final int minSize;
+        private final int maxSize;
+        // The capacity of the queue is the configured size, which is never exceeded.
         private final Queue<Entry<T>> queue;
+        // The queue holds at least 4 entries, so caches that are smaller count their entries to stay within their
+        // size. null if the capacity of the queue is the size of the cache.
+        private final AtomicInteger smallCacheEntries;
         private final SizeClass sizeClass;
+        // The number of buffers this cache may hold after a trim(). Only accessed by the owning thread, buffers that
+        // are released into this cache are only limited by the capacity of the queue in between two trims.
+        private int size;
+        // The counters below are reset on every trim(). Only rejected is updated from other threads, lost updates
+        // are fine as it is only used as a heuristic.
         private int allocations;
+        private int misses;
+        private int rejected;
 
         MemoryRegionCache(int size, SizeClass sizeClass) {
-            this.size = MathUtil.safeFindNextPositivePowerOfTwo(size);
-            queue = PlatformDependent.newFixedMpscQueue(this.size);
+            maxSize = MathUtil.safeFindNextPositivePowerOfTwo(size);
+            minSize = Math.max(1, maxSize / MAX_CACHE_SIZE_SHRINK);
+            this.size = maxSize;
+            // Use a chunked queue so the memory needed by the queue itself follows the number of cached buffers.
+            queue = PlatformDependent.newMpscQueue(Math.max(2, maxSize >>> 1), Math.max(MIN_QUEUE_CAPACITY, maxSize));
+            smallCacheEntries = maxSize < MIN_QUEUE_CAPACITY ? new AtomicInteger() : null;
             this.sizeClass = sizeClass;
         }
 
@@ -355,22 +389,58 @@ final class PoolThreadCache {
          */
         @SuppressWarnings("unchecked")
         public final boolean add(PoolChunk<T> chunk, ByteBuffer nioBuffer, long handle, int normCapacity) {
+            if (!reserveEntry()) {
+                ++ rejected;
+                return false;
+            }
             Entry<T> entry = newEntry(chunk, nioBuffer, handle, normCapacity);
             boolean queued = queue.offer(entry);
             if (!queued) {
                 // If it was not possible to cache the chunk, immediately recycle the entry
                 entry.recycle();
+                releaseEntry();
+                ++ rejected;
             }
 
             return queued;
         }
 
+        private boolean reserveEntry() {
+            if (smallCacheEntries == null) {
+                return true;
+            }
+            for (;;) {
+                int entries = smallCacheEntries.get();
+                if (entries >= maxSize) {
+                    return false;
+                }
+                if (smallCacheEntries.compareAndSet(entries, entries + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void releaseEntry() {
+            if (smallCacheEntries != null) {
+                smallCacheEntries.decrementAndGet();
+            }
+        }
+
+        private Entry<T> poll() {
+            Entry<T> entry = queue.poll();
+            if (entry != null) {
+                releaseEntry();
+            }
+            return entry;
+        }
+
         /**
          * Allocate something out of the cache if possible and remove the entry from the cache.
          */
         public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity, PoolThreadCache threadCache) {
-            Entry<T> entry = queue.poll();
+            Entry<T> entry = poll();
             if (entry == null) {
+                ++ misses;
                 return false;
             }
             initBuf(entry.chunk, entry.nioBuffer, entry.handle, buf, reqCapacity, threadCache);
@@ -384,14 +454,18 @@ final class PoolThreadCache {
         /**
          * Clear out this cache and free up all previous cached {@link PoolChunk}s and {@code handle}s.
          */
-        public final int free(boolean finalizer) {
+        public final int free(PoolArena.ThreadCacheMetric metric, boolean finalizer) {
+            metric.record(allocations, misses, rejected, 0);
+            allocations = 0;
+            misses = 0;
+            rejected = 0;
             return free(Integer.MAX_VALUE, finalizer);
         }
 
         private int free(int max, boolean finalizer) {
             int numFreed = 0;
             for (; numFreed < max; numFreed++) {
-                Entry<T> entry = queue.poll();
+                Entry<T> entry = poll();
                 if (entry != null) {
                     freeEntry(entry, finalizer);
                 } else {
@@ -403,16 +477,32 @@ final class PoolThreadCache {
         }
 
         /**
-         * Free up cached {@link PoolChunk}s if not allocated frequently enough.
+         * Adjust the size of the cache to the observed usage and free up cached {@link PoolChunk}s if not allocated
+         * frequently enough.
          */
-        public final void trim() {
-            int free = size - allocations;
+        public final void trim(PoolArena.ThreadCacheMetric metric) {
+            int hits = allocations;
+            int misses = this.misses;
+            int rejected = this.rejected;
             allocations = 0;
-
-            // We not even allocated all the number that are
-            if (free > 0) {
-                free(free, false);
+            this.misses = 0;
+            this.rejected = 0;
+
+            int size = this.size;
+            int cached = queue.size();
+            if (misses > 0 && (cached > size || rejected > 0)) {
+                // More buffers were released than we may keep while allocations missed the cache, so cache more.
+                size = Math.min(size << 1, maxSize);
+            } else if ((hits + misses) << 2 < size) {
+                // The cache is much bigger than what is needed, so cache less to not pin memory.
+                size = Math.max(size >>> 1, minSize);
             }
+            this.size = size;
+
+            // We not even allocated all the number that are, or the cache holds more than it may after shrinking.
+            int free = Math.max(size - hits, cached - size);
+            int trimmed = free > 0 ? free(free, false) : 0;
+            metric.record(hits, misses, rejected, trimmed);
         }
 
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * Expose metrics for the thread caches that are backed by an arena.
+ * <p>
+ * The numbers are aggregated over all thread caches of the arena. Each thread cache publishes its numbers
+ * periodically, so they may lag behind the actual state.
+ */
+public interface PoolThreadCacheMetric {
+
+    /**
+     * Return the number of allocations that were served out of a thread cache.
+     */
+    long numHits();
+
+    /**
+     * Return the number of allocations that could have been served out of a thread cache, but had to be
+     * allocated from the arena because the cache for their size was empty.
+     */
+    long numMisses();
+
+    /**
+     * Return the number of released buffers that could not be added to a thread cache because the cache for their
+     * size was full.
+     */
+    long numRejected();
+
+    /**
+     * Return the number of cached buffers that were released back to the arena because they were not used.
+     */
+    long numTrimmed();
+}
@@ -35,6 +35,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * A {@link ByteBufAllocator} that pools the memory of its buffers in arenas of chunks, with a cache per thread.
+ * <p>
+ * The memory of the direct chunks can be aligned to the huge page size via
+ * {@code -Dio.netty.allocator.directChunkAlignment} or the {@code directChunkAlignment} constructor argument. Every
+ * chunk is then over-allocated by the alignment, which may be at most 1/8 of the chunk size. This only helps if
+ * transparent huge pages are enabled in {@code always} mode.
+ */
 public class PooledByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(PooledByteBufAllocator.class);
@@ -48,8 +56,11 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     static final int DEFAULT_MAX_CACHED_BUFFER_CAPACITY;
     private static final int DEFAULT_CACHE_TRIM_INTERVAL;
     private static final long DEFAULT_CACHE_TRIM_INTERVAL_MILLIS;
+    private static final long DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS;
     private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     private static final int DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT;
+    private static final int DEFAULT_DIRECT_CHUNK_ALIGNMENT;
+    private static final boolean DEFAULT_NUMA_AWARE;
     static final int DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK;
 
     private static final int MIN_PAGE_SIZE = 4096;
@@ -89,6 +100,18 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         }
         DEFAULT_MAX_ORDER = defaultMaxOrder;
 
+        // Aligning the memory of the direct chunks to the huge page size (usually 2 MiB) allows the kernel to back
+        // them by transparent huge pages, which reduces TLB misses when accessing them.
+        int defaultChunkAlignment = SystemPropertyUtil.getInt("io.netty.allocator.directChunkAlignment", 0);
+        Throwable chunkAlignmentFallbackCause = null;
+        try {
+            validateDirectChunkAlignment(defaultChunkAlignment, DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER);
+        } catch (Throwable t) {
+            chunkAlignmentFallbackCause = t;
+            defaultChunkAlignment = 0;
+        }
+        DEFAULT_DIRECT_CHUNK_ALIGNMENT = defaultChunkAlignment;
+
         // Determine reasonable default for nHeapArena and nDirectArena.
         // Assuming each arena has 3 chunks, the pool should not consume more than 50% of max memory.
         final Runtime runtime = Runtime.getRuntime();
@@ -96,7 +119,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         /*
          * We use 2 * available processors by default to reduce contention as we use 2 * available processors for the
          * number of EventLoops in NIO and EPOLL as well. If we choose a smaller number we will run into hot spots as
-         * allocation and de-allocation needs to be synchronized on the PoolArena.
+         * allocation and de-allocation needs to be guarded by the lock of the PoolArena.
          *
          * See https://github.com/netty/netty/issues/3888.
          */
@@ -145,9 +168,15 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     "io.netty.allocator.cacheTrimIntervalMillis", 0);
         }
 
+        // the time after which chunks that are not used at all are released, 0 to never release them
+        DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.chunkIdleTimeoutMillis", 0));
+
         DEFAULT_USE_CACHE_FOR_ALL_THREADS = SystemPropertyUtil.getBoolean(
                 "io.netty.allocator.useCacheForAllThreads", false);
 
+        DEFAULT_NUMA_AWARE = SystemPropertyUtil.getBoolean("io.netty.allocator.numaAware", false);
+
         // Use 1023 by default as we use an ArrayDeque as backing storage which will then allocate an internal array
         // of 1024 elements. Otherwise we would allocate 2048 and only use 1024 which is wasteful.
         DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK = SystemPropertyUtil.getInt(
@@ -167,12 +196,20 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                 logger.debug("-Dio.netty.allocator.maxOrder: {}", DEFAULT_MAX_ORDER, maxOrderFallbackCause);
             }
             logger.debug("-Dio.netty.allocator.chunkSize: {}", DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER);
+            if (chunkAlignmentFallbackCause == null) {
+                logger.debug("-Dio.netty.allocator.directChunkAlignment: {}", DEFAULT_DIRECT_CHUNK_ALIGNMENT);
+            } else {
+                logger.debug("-Dio.netty.allocator.directChunkAlignment: {}", DEFAULT_DIRECT_CHUNK_ALIGNMENT,
+                        chunkAlignmentFallbackCause);
+            }
             logger.debug("-Dio.netty.allocator.smallCacheSize: {}", DEFAULT_SMALL_CACHE_SIZE);
             logger.debug("-Dio.netty.allocator.normalCacheSize: {}", DEFAULT_NORMAL_CACHE_SIZE);
             logger.debug("-Dio.netty.allocator.maxCachedBufferCapacity: {}", DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
             logger.debug("-Dio.netty.allocator.cacheTrimInterval: {}", DEFAULT_CACHE_TRIM_INTERVAL);
             logger.debug("-Dio.netty.allocator.cacheTrimIntervalMillis: {}", DEFAULT_CACHE_TRIM_INTERVAL_MILLIS);
+            logger.debug("-Dio.netty.allocator.chunkIdleTimeoutMillis: {}", DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS);
             logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
+            logger.debug("-Dio.netty.allocator.numaAware: {}", DEFAULT_NUMA_AWARE);
             logger.debug("-Dio.netty.allocator.maxCachedByteBuffersPerChunk: {}",
                     DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK);
         }
@@ -187,7 +224,10 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private final int normalCacheSize;
     private final List<PoolArenaMetric> heapArenaMetrics;
     private final List<PoolArenaMetric> directArenaMetrics;
+    private final List<PoolThreadCacheMetric> heapThreadCacheMetrics;
+    private final List<PoolThreadCacheMetric> directThreadCacheMetrics;
     private final PoolThreadLocalCache threadCache;
+    private final NumaTopology numaTopology;
     private final int chunkSize;
     private final PooledByteBufAllocatorMetric metric;
 
@@ -265,8 +305,38 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
                                   int smallCacheSize, int normalCacheSize,
                                   boolean useCacheForAllThreads, int directMemoryCacheAlignment) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, smallCacheSize, normalCacheSize,
+             useCacheForAllThreads, directMemoryCacheAlignment, DEFAULT_DIRECT_CHUNK_ALIGNMENT);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param directChunkAlignment the alignment of the memory of the chunks of the direct arenas, or {@code 0} if
+     *                             it should not be aligned. Aligning it to the huge page size of the system (usually
+     *                             2 MiB) allows the kernel to back the chunks by transparent huge pages, but only if
+     *                             these are enabled in {@code always} mode, as the JDK has no way to {@code madvise}
+     *                             the memory. Every chunk is over-allocated by {@code directChunkAlignment} bytes to
+     *                             align it, so the alignment may not exceed 1/8 of the chunk size. With 2 MiB huge
+     *                             pages use a {@code maxOrder} of at least {@code 11} (16 MiB chunks), which costs
+     *                             12.5% more direct memory per chunk.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  int directChunkAlignment) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, smallCacheSize, normalCacheSize,
+             useCacheForAllThreads, directMemoryCacheAlignment, directChunkAlignment,
+             DEFAULT_NUMA_AWARE ? NumaTopologyHolder.TOPOLOGY : NumaTopology.SINGLE_NODE);
+    }
+
+    PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                           int smallCacheSize, int normalCacheSize,
+                           boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                           int directChunkAlignment, NumaTopology numaTopology) {
         super(preferDirect);
         threadCache = new PoolThreadLocalCache(useCacheForAllThreads);
+        this.numaTopology = numaTopology;
         this.smallCacheSize = smallCacheSize;
         this.normalCacheSize = normalCacheSize;
 
@@ -295,36 +365,46 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     + directMemoryCacheAlignment + " (expected: power of two)");
         }
 
+        validateDirectChunkAlignment(directChunkAlignment, chunkSize);
+
         int pageShifts = validateAndCalculatePageShifts(pageSize, directMemoryCacheAlignment);
 
         if (nHeapArena > 0) {
             heapArenas = newArenaArray(nHeapArena);
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(heapArenas.length);
+            List<PoolThreadCacheMetric> cacheMetrics = new ArrayList<PoolThreadCacheMetric>(heapArenas.length);
             for (int i = 0; i < heapArenas.length; i ++) {
                 PoolArena.HeapArena arena = new PoolArena.HeapArena(this,
                         pageSize, pageShifts, chunkSize);
                 heapArenas[i] = arena;
                 metrics.add(arena);
+                cacheMetrics.add(arena.threadCacheMetric);
             }
             heapArenaMetrics = Collections.unmodifiableList(metrics);
+            heapThreadCacheMetrics = Collections.unmodifiableList(cacheMetrics);
         } else {
             heapArenas = null;
             heapArenaMetrics = Collections.emptyList();
+            heapThreadCacheMetrics = Collections.emptyList();
         }
 
         if (nDirectArena > 0) {
             directArenas = newArenaArray(nDirectArena);
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(directArenas.length);
+            List<PoolThreadCacheMetric> cacheMetrics = new ArrayList<PoolThreadCacheMetric>(directArenas.length);
             for (int i = 0; i < directArenas.length; i ++) {
                 PoolArena.DirectArena arena = new PoolArena.DirectArena(
-                        this, pageSize, pageShifts, chunkSize, directMemoryCacheAlignment);
+                        this, pageSize, pageShifts, chunkSize, directMemoryCacheAlignment, directChunkAlignment);
                 directArenas[i] = arena;
                 metrics.add(arena);
+                cacheMetrics.add(arena.threadCacheMetric);
             }
             directArenaMetrics = Collections.unmodifiableList(metrics);
+            directThreadCacheMetrics = Collections.unmodifiableList(cacheMetrics);
         } else {
             directArenas = null;
             directArenaMetrics = Collections.emptyList();
+            directThreadCacheMetrics = Collections.emptyList();
         }
         metric = new PooledByteBufAllocatorMetric(this);
     }
@@ -352,6 +432,25 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(pageSize);
     }
 
+    private static void validateDirectChunkAlignment(int alignment, int chunkSize) {
+        checkPositiveOrZero(alignment, "directChunkAlignment");
+        if (alignment == 0) {
+            return;
+        }
+        if ((alignment & alignment - 1) != 0) {
+            throw new IllegalArgumentException("directChunkAlignment: " + alignment + " (expected: power of 2)");
+        }
+        // Every chunk is over-allocated by the alignment, so limit the memory that is wasted per chunk.
+        if (alignment > chunkSize >>> 3) {
+            throw new IllegalArgumentException("directChunkAlignment: " + alignment +
+                    " (expected: <= chunkSize / 8 = " + (chunkSize >>> 3) + ')');
+        }
+        if (!PlatformDependent.hasAlignDirectByteBuffer()) {
+            throw new UnsupportedOperationException("Buffer alignment is not supported. " +
+                    "Either Unsafe or ByteBuffer.alignSlice() must be available.");
+        }
+    }
+
     private static int validateAndCalculateChunkSize(int pageSize, int maxOrder) {
         if (maxOrder > 14) {
             throw new IllegalArgumentException("maxOrder: " + maxOrder + " (expected: 0-14)");
@@ -431,6 +530,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return DEFAULT_MAX_ORDER;
     }
 
+    /**
+     * Default alignment of the memory of direct chunks - System Property: io.netty.allocator.directChunkAlignment
+     * - default 0
+     */
+    public static int defaultDirectChunkAlignment() {
+        return DEFAULT_DIRECT_CHUNK_ALIGNMENT;
+    }
+
     /**
      * Default thread caching behavior - System Property: io.netty.allocator.useCacheForAllThreads - default false
      */
@@ -500,6 +607,32 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         threadCache.remove();
     }
 
+    // Only detect the topology if the NUMA-aware mode is used.
+    private static final class NumaTopologyHolder {
+        static final NumaTopology TOPOLOGY = NumaTopology.detect();
+    }
+
+    private static final class ChunkTrimTask implements Runnable {
+        private final PoolArena<?> heapArena;
+        private final PoolArena<?> directArena;
+
+        ChunkTrimTask(PoolArena<?> heapArena, PoolArena<?> directArena) {
+            this.heapArena = heapArena;
+            this.directArena = directArena;
+        }
+
+        @Override
+        public void run() {
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS);
+            if (heapArena != null) {
+                heapArena.trimIdleChunks(idleNanos);
+            }
+            if (directArena != null) {
+                directArena.trimIdleChunks(idleNanos);
+            }
+        }
+    }
+
     private final class PoolThreadLocalCache extends FastThreadLocal<PoolThreadCache> {
         private final boolean useCacheForAllThreads;
 
@@ -510,7 +643,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         @Override
         protected synchronized PoolThreadCache initialValue() {
             final PoolArena<byte[]> heapArena = leastUsedArena(heapArenas);
-            final PoolArena<ByteBuffer> directArena = leastUsedArena(directArenas);
+            final PoolArena<ByteBuffer> directArena = leastUsedArena(directArenas, numaTopology.currentNode());
 
             final Thread current = Thread.currentThread();
             final EventExecutor executor = ThreadExecutorMap.currentExecutor();
@@ -531,6 +664,15 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                                 DEFAULT_CACHE_TRIM_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
                     }
                 }
+                if (DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS > 0) {
+                    if (executor != null) {
+                        // Every event loop trims the arenas it uses, so chunks are released at the latest after twice
+                        // the timeout.
+                        executor.scheduleAtFixedRate(new ChunkTrimTask(heapArena, directArena),
+                                DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS, DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS,
+                                TimeUnit.MILLISECONDS);
+                    }
+                }
                 return cache;
             }
             // No caching so just use 0 as sizes.
@@ -542,6 +684,24 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             threadCache.free(false);
         }
 
+        private <T> PoolArena<T> leastUsedArena(PoolArena<T>[] arenas, int node) {
+            int numNodes = numaTopology.numNodes();
+            if (arenas == null || arenas.length <= node || numNodes == 1) {
+                return leastUsedArena(arenas);
+            }
+
+            // The arenas are assigned to the nodes in a round-robin fashion, so the memory of the chunks of an arena
+            // is mostly touched first, and so placed, by the threads of its node.
+            PoolArena<T> minArena = arenas[node];
+            for (int i = node + numNodes; i < arenas.length; i += numNodes) {
+                PoolArena<T> arena = arenas[i];
+                if (arena.numThreadCaches.get() < minArena.numThreadCaches.get()) {
+                    minArena = arena;
+                }
+            }
+            return minArena;
+        }
+
         private <T> PoolArena<T> leastUsedArena(PoolArena<T>[] arenas) {
             if (arenas == null || arenas.length == 0) {
                 return null;
@@ -609,6 +769,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return directArenaMetrics;
     }
 
+    List<PoolThreadCacheMetric> heapThreadCacheMetrics() {
+        return heapThreadCacheMetrics;
+    }
+
+    List<PoolThreadCacheMetric> directThreadCacheMetrics() {
+        return directThreadCacheMetrics;
+    }
+
     /**
      * Return the number of thread local caches used by this {@link PooledByteBufAllocator}.
      *
@@ -677,6 +845,25 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return usedMemory(directArenas);
     }
 
+    final int numNumaNodes() {
+        return numaTopology.numNodes();
+    }
+
+    final long usedDirectMemory(int numaNode) {
+        if (directArenas == null) {
+            return -1;
+        }
+        int numNodes = numaTopology.numNodes();
+        long used = 0;
+        for (int i = numaNode; i < directArenas.length; i += numNodes) {
+            used += directArenas[i].numActiveBytes();
+            if (used < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return used;
+    }
+
     private static long usedMemory(PoolArena<?>[] arenas) {
         if (arenas == null) {
             return -1;
@@ -746,6 +933,57 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return false;
     }
 
+    /**
+     * Trim the thread local cache of the current {@link Thread} and release the chunks of all arenas of which no
+     * memory was used for at least {@code -Dio.netty.allocator.chunkIdleTimeoutMillis}, which is {@code 0} by
+     * default.
+     *
+     * Returns the number of bytes of the released chunks.
+     *
+     * @see #trimIdleChunks(long, TimeUnit)
+     */
+    public long trim() {
+        trimCurrentThreadCache();
+        return trimIdleChunks(DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Release the chunks of all arenas of which no memory was used for at least the given time, so the memory is
+     * given back to the system. Chunks of which any memory is in use are never released, including memory that is
+     * held by thread local caches, see {@link #trimCurrentThreadCache()}.
+     *
+     * Returns the number of bytes of the released chunks.
+     */
+    public long trimIdleChunks(long idleTime, TimeUnit unit) {
+        checkPositiveOrZero(idleTime, "idleTime");
+        long idleNanos = unit.toNanos(idleTime);
+        return trimIdleChunks(heapArenas, idleNanos) + trimIdleChunks(directArenas, idleNanos);
+    }
+
+    private static long trimIdleChunks(PoolArena<?>[] arenas, long idleNanos) {
+        long trimmed = 0;
+        if (arenas != null) {
+            for (PoolArena<?> arena : arenas) {
+                trimmed += arena.trimIdleChunks(idleNanos);
+            }
+        }
+        return trimmed;
+    }
+
+    final long trimmedBytes() {
+        return trimmedBytes(heapArenas) + trimmedBytes(directArenas);
+    }
+
+    private static long trimmedBytes(PoolArena<?>[] arenas) {
+        long trimmed = 0;
+        if (arenas != null) {
+            for (PoolArena<?> arena : arenas) {
+                trimmed += arena.numTrimmedBytes();
+            }
+        }
+        return trimmed;
+    }
+
     /**
      * Returns the status of the allocator (which contains all metrics) as string. Be aware this may be expensive
      * and so should not called too frequently.
@@ -17,6 +17,8 @@ package io.netty.buffer;
 
 import io.netty.util.internal.StringUtil;
 
+import static io.netty.util.internal.ObjectUtil.checkInRange;
+
 import java.util.List;
 
 /**
@@ -59,6 +61,39 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.directArenas();
     }
 
+    /**
+     * Return a {@link List} of the {@link PoolThreadCacheMetric}s of the thread caches that are backed by the heap
+     * arenas, in the same order as {@link #heapArenas()}.
+     */
+    public List<PoolThreadCacheMetric> heapThreadCaches() {
+        return allocator.heapThreadCacheMetrics();
+    }
+
+    /**
+     * Return a {@link List} of the {@link PoolThreadCacheMetric}s of the thread caches that are backed by the direct
+     * arenas, in the same order as {@link #directArenas()}.
+     */
+    public List<PoolThreadCacheMetric> directThreadCaches() {
+        return allocator.directThreadCacheMetrics();
+    }
+
+    /**
+     * Return the number of NUMA nodes the direct arenas are assigned to. This is {@code 1}, unless the NUMA-aware
+     * mode is enabled via {@code -Dio.netty.allocator.numaAware=true} and the system has more than one node. The
+     * direct arena at index {@code i} of {@link #directArenas()} belongs to node {@code i % numNumaNodes()}.
+     */
+    public int numNumaNodes() {
+        return allocator.numNumaNodes();
+    }
+
+    /**
+     * Return the number of bytes of direct memory that is used by the arenas of the given NUMA node.
+     */
+    public long usedDirectMemory(int numaNode) {
+        checkInRange(numaNode, 0, numNumaNodes() - 1, "numaNode");
+        return allocator.usedDirectMemory(numaNode);
+    }
+
     /**
      * Return the number of thread local caches used by this {@link PooledByteBufAllocator}.
      */
@@ -102,6 +137,15 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.usedHeapMemory();
     }
 
+    /**
+     * Return the number of bytes of the chunks that were released because no memory of them was used for some time.
+     *
+     * @see PooledByteBufAllocator#trimIdleChunks(long, java.util.concurrent.TimeUnit)
+     */
+    public long trimmedBytes() {
+        return allocator.trimmedBytes();
+    }
+
     @Override
     public long usedDirectMemory() {
         return allocator.usedDirectMemory();
@@ -0,0 +1,1137 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.EmptyArrays;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * A virtual buffer which shows multiple buffers as a single merged buffer, like {@link CompositeByteBuf}.
+ * <p>
+ * Unlike {@link CompositeByteBuf}, which keeps its components in an array, the components are kept in a balanced
+ * tree (a treap keyed by the position of the component). Adding, inserting or removing a component as well as finding
+ * the component of an index takes {@code O(log n)} time, so this buffer should be preferred when a buffer is composed
+ * of thousands of components or when components are inserted or removed in the middle. For a small number of
+ * components {@link CompositeByteBuf} is faster.
+ * <p>
+ * Like {@link CompositeByteBuf}, this buffer takes the ownership of the components that are added to it and
+ * releases them once they are removed or this buffer is released.
+ */
+public final class RopeByteBuf extends AbstractReferenceCountedByteBuf {
+
+    private static final ByteBuffer EMPTY_NIO_BUFFER = Unpooled.EMPTY_BUFFER.nioBuffer();
+
+    private final ByteBufAllocator alloc;
+    private final boolean direct;
+
+    private Node root;
+    // The number of components which are not direct.
+    private int heapComponents;
+    // The seed for the priorities of the nodes.
+    private int seed;
+
+    // The last accessed component, which makes sequential access O(1).
+    private Node lastAccessed;
+
+    // Results of split(...).
+    private Node splitLeft;
+    private Node splitRight;
+
+    /**
+     * Creates a new instance which has no components.
+     *
+     * @param alloc  the allocator which is used to allocate additional components when the capacity is increased
+     * @param direct {@code true} if the additional components should be direct buffers
+     */
+    public RopeByteBuf(ByteBufAllocator alloc, boolean direct) {
+        super(Integer.MAX_VALUE);
+        this.alloc = checkNotNull(alloc, "alloc");
+        this.direct = direct;
+        seed = PlatformDependent.threadLocalRandom().nextInt() | 1;
+    }
+
+    /**
+     * Add the given {@link ByteBuf} after all other components.
+     * <p>
+     * Be aware that this method does not increase the {@code writerIndex} of the {@link RopeByteBuf}.
+     * If you need to have it increased use {@link #addComponent(boolean, ByteBuf)}.
+     * <p>
+     * {@link ByteBuf#release()} ownership of {@code buffer} is transferred to this {@link RopeByteBuf}.
+     */
+    public RopeByteBuf addComponent(ByteBuf buffer) {
+        return addComponent(false, buffer);
+    }
+
+    /**
+     * Add the given {@link ByteBuf} after all other components and increase the {@code writerIndex} if
+     * {@code increaseWriterIndex} is {@code true}.
+     * <p>
+     * {@link ByteBuf#release()} ownership of {@code buffer} is transferred to this {@link RopeByteBuf}.
+     */
+    public RopeByteBuf addComponent(boolean increaseWriterIndex, ByteBuf buffer) {
+        return addComponent(increaseWriterIndex, numComponents(), buffer);
+    }
+
+    /**
+     * Add the given {@link ByteBuf} at the given component index.
+     * <p>
+     * Be aware that this method does not increase the {@code writerIndex} of the {@link RopeByteBuf}.
+     * If you need to have it increased use {@link #addComponent(boolean, int, ByteBuf)}.
+     * <p>
+     * {@link ByteBuf#release()} ownership of {@code buffer} is transferred to this {@link RopeByteBuf}.
+     */
+    public RopeByteBuf addComponent(int cIndex, ByteBuf buffer) {
+        return addComponent(false, cIndex, buffer);
+    }
+
+    /**
+     * Add the given {@link ByteBuf} at the given component index and increase the {@code writerIndex} if
+     * {@code increaseWriterIndex} is {@code true}.
+     * <p>
+     * {@link ByteBuf#release()} ownership of {@code buffer} is transferred to this {@link RopeByteBuf}.
+     */
+    public RopeByteBuf addComponent(boolean increaseWriterIndex, int cIndex, ByteBuf buffer) {
+        checkNotNull(buffer, "buffer");
+        try {
+            ensureAccessible();
+            checkComponentIndex(cIndex, numComponents());
+            int length = buffer.readableBytes();
+            if (capacity() > Integer.MAX_VALUE - length) {
+                throw new IllegalArgumentException("Can't increase by " + length + " as capacity(" +
+                        capacity() + ") would overflow " + Integer.MAX_VALUE);
+            }
+            Node node = newNode(buffer);
+            buffer = null;
+            split(root, cIndex);
+            root = merge(merge(splitLeft, node), splitRight);
+            clearSplit();
+            lastAccessed = null;
+            if (increaseWriterIndex) {
+                writerIndex(writerIndex() + length);
+            }
+            return this;
+        } finally {
+            if (buffer != null) {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * Remove and release the component at the given index. The reader and writer index are not moved, unless they
+     * exceed the new capacity.
+     */
+    public RopeByteBuf removeComponent(int cIndex) {
+        ensureAccessible();
+        checkComponentIndex(cIndex, numComponents() - 1);
+        split(root, cIndex);
+        Node left = splitLeft;
+        split(splitRight, 1);
+        Node removed = splitLeft;
+        root = merge(left, splitRight);
+        clearSplit();
+        lastAccessed = null;
+        free(removed);
+        if (writerIndex() > capacity()) {
+            trimIndicesToCapacity(capacity());
+        }
+        return this;
+    }
+
+    /**
+     * Return the current number of components.
+     */
+    public int numComponents() {
+        return count(root);
+    }
+
+    /**
+     * Return the readable part of the component at the given index. The returned buffer shares its content with
+     * the component, but its reference count is not increased.
+     */
+    public ByteBuf component(int cIndex) {
+        checkComponentIndex(cIndex, numComponents() - 1);
+        Node node = nodeAt(cIndex);
+        return node.buf.slice(node.offset, node.length);
+    }
+
+    /**
+     * Return the index of the component which contains the byte at the given index.
+     */
+    public int toComponentIndex(int offset) {
+        checkIndex(offset);
+        Node node = root;
+        int base = 0;
+        int componentIndex = 0;
+        while (node != null) {
+            int leftLength = length(node.left);
+            if (offset < base + leftLength) {
+                node = node.left;
+            } else if (offset < base + leftLength + node.length) {
+                return componentIndex + count(node.left);
+            } else {
+                base += leftLength + node.length;
+                componentIndex += count(node.left) + 1;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException("offset not found: " + offset);
+    }
+
+    /**
+     * Return the index of the first byte of the component at the given index.
+     */
+    public int toByteIndex(int cIndex) {
+        checkComponentIndex(cIndex, numComponents() - 1);
+        Node node = root;
+        int offset = 0;
+        while (node != null) {
+            int leftCount = count(node.left);
+            if (cIndex < leftCount) {
+                node = node.left;
+            } else if (cIndex == leftCount) {
+                return offset + length(node.left);
+            } else {
+                offset += length(node.left) + node.length;
+                cIndex -= leftCount + 1;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Discard all components which were completely read.
+     */
+    public RopeByteBuf discardReadComponents() {
+        ensureAccessible();
+        final int readerIndex = readerIndex();
+        if (readerIndex == 0) {
+            return this;
+        }
+        int discarded = 0;
+        int discardedBytes = 0;
+        Node node = root;
+        // Count the components which end before the readerIndex.
+        while (node != null) {
+            int leftLength = length(node.left);
+            if (discardedBytes + leftLength + node.length <= readerIndex) {
+                discarded += count(node.left) + 1;
+                discardedBytes += leftLength + node.length;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        if (discarded == 0) {
+            return this;
+        }
+        removeFirst(discarded);
+        setIndex(readerIndex - discardedBytes, writerIndex() - discardedBytes);
+        adjustMarkers(discardedBytes);
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf discardReadBytes() {
+        ensureAccessible();
+        final int readerIndex = readerIndex();
+        if (readerIndex == 0) {
+            return this;
+        }
+        final int writerIndex = writerIndex();
+        discardReadComponents();
+        int remaining = readerIndex();
+        if (remaining > 0) {
+            // Trim the first component, which was partially read.
+            Node first = nodeAt(0);
+            first.offset += remaining;
+            first.length -= remaining;
+            updatePath(0);
+            lastAccessed = null;
+            setIndex(0, writerIndex() - remaining);
+            adjustMarkers(remaining);
+        }
+        assert writerIndex() == writerIndex - readerIndex;
+        return this;
+    }
+
+    @Override
+    public boolean isDirect() {
+        return heapComponents == 0 && (root != null || direct);
+    }
+
+    @Override
+    public boolean hasArray() {
+        switch (numComponents()) {
+        case 0:
+            return true;
+        case 1:
+            return root.buf.hasArray();
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public byte[] array() {
+        ensureAccessible();
+        switch (numComponents()) {
+        case 0:
+            return EmptyArrays.EMPTY_BYTES;
+        case 1:
+            return root.buf.array();
+        default:
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public int arrayOffset() {
+        ensureAccessible();
+        switch (numComponents()) {
+        case 0:
+            return 0;
+        case 1:
+            return root.buf.arrayOffset() + root.offset;
+        default:
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public boolean hasMemoryAddress() {
+        switch (numComponents()) {
+        case 0:
+            return Unpooled.EMPTY_BUFFER.hasMemoryAddress();
+        case 1:
+            return root.buf.hasMemoryAddress();
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public long memoryAddress() {
+        ensureAccessible();
+        switch (numComponents()) {
+        case 0:
+            return Unpooled.EMPTY_BUFFER.memoryAddress();
+        case 1:
+            return root.buf.memoryAddress() + root.offset;
+        default:
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public boolean isContiguous() {
+        switch (numComponents()) {
+        case 0:
+            return true;
+        case 1:
+            return root.buf.isContiguous();
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return length(root);
+    }
+
+    @Override
+    public RopeByteBuf capacity(int newCapacity) {
+        checkNewCapacity(newCapacity);
+
+        final int oldCapacity = capacity();
+        if (newCapacity > oldCapacity) {
+            final int paddingLength = newCapacity - oldCapacity;
+            ByteBuf padding = direct ? alloc.directBuffer(paddingLength) : alloc.heapBuffer(paddingLength);
+            addComponent(false, padding.setIndex(0, paddingLength));
+        } else if (newCapacity < oldCapacity) {
+            lastAccessed = null;
+            int bytesToTrim = oldCapacity - newCapacity;
+            while (bytesToTrim > 0) {
+                int last = numComponents() - 1;
+                Node node = nodeAt(last);
+                if (node.length <= bytesToTrim) {
+                    bytesToTrim -= node.length;
+                    split(root, last);
+                    root = splitLeft;
+                    clearSplit();
+                    free(node);
+                } else {
+                    node.length -= bytesToTrim;
+                    updatePath(last);
+                    bytesToTrim = 0;
+                }
+            }
+            trimIndicesToCapacity(newCapacity);
+        }
+        return this;
+    }
+
+    @Override
+    public ByteBufAllocator alloc() {
+        return alloc;
+    }
+
+    @Override
+    public ByteOrder order() {
+        return ByteOrder.BIG_ENDIAN;
+    }
+
+    @Override
+    public ByteBuf unwrap() {
+        return null;
+    }
+
+    @Override
+    protected byte _getByte(int index) {
+        Node c = findComponent(index);
+        return c.buf.getByte(c.offset + index - c.start);
+    }
+
+    @Override
+    protected short _getShort(int index) {
+        Node c = findComponent(index);
+        if (index + 2 <= c.start + c.length) {
+            return c.buf.getShort(c.offset + index - c.start);
+        }
+        return (short) ((_getByte(index) & 0xff) << 8 | _getByte(index + 1) & 0xff);
+    }
+
+    @Override
+    protected short _getShortLE(int index) {
+        Node c = findComponent(index);
+        if (index + 2 <= c.start + c.length) {
+            return c.buf.getShortLE(c.offset + index - c.start);
+        }
+        return (short) (_getByte(index) & 0xff | (_getByte(index + 1) & 0xff) << 8);
+    }
+
+    @Override
+    protected int _getUnsignedMedium(int index) {
+        Node c = findComponent(index);
+        if (index + 3 <= c.start + c.length) {
+            return c.buf.getUnsignedMedium(c.offset + index - c.start);
+        }
+        return (_getShort(index) & 0xffff) << 8 | _getByte(index + 2) & 0xff;
+    }
+
+    @Override
+    protected int _getUnsignedMediumLE(int index) {
+        Node c = findComponent(index);
+        if (index + 3 <= c.start + c.length) {
+            return c.buf.getUnsignedMediumLE(c.offset + index - c.start);
+        }
+        return _getShortLE(index) & 0xffff | (_getByte(index + 2) & 0xff) << 16;
+    }
+
+    @Override
+    protected int _getInt(int index) {
+        Node c = findComponent(index);
+        if (index + 4 <= c.start + c.length) {
+            return c.buf.getInt(c.offset + index - c.start);
+        }
+        return (_getShort(index) & 0xffff) << 16 | _getShort(index + 2) & 0xffff;
+    }
+
+    @Override
+    protected int _getIntLE(int index) {
+        Node c = findComponent(index);
+        if (index + 4 <= c.start + c.length) {
+            return c.buf.getIntLE(c.offset + index - c.start);
+        }
+        return _getShortLE(index) & 0xffff | (_getShortLE(index + 2) & 0xffff) << 16;
+    }
+
+    @Override
+    protected long _getLong(int index) {
+        Node c = findComponent(index);
+        if (index + 8 <= c.start + c.length) {
+            return c.buf.getLong(c.offset + index - c.start);
+        }
+        return (_getInt(index) & 0xffffffffL) << 32 | _getInt(index + 4) & 0xffffffffL;
+    }
+
+    @Override
+    protected long _getLongLE(int index) {
+        Node c = findComponent(index);
+        if (index + 8 <= c.start + c.length) {
+            return c.buf.getLongLE(c.offset + index - c.start);
+        }
+        return _getIntLE(index) & 0xffffffffL | (_getIntLE(index + 4) & 0xffffffffL) << 32;
+    }
+
+    @Override
+    protected void _setByte(int index, int value) {
+        Node c = findComponent(index);
+        c.buf.setByte(c.offset + index - c.start, value);
+    }
+
+    @Override
+    protected void _setShort(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 2 <= c.start + c.length) {
+            c.buf.setShort(c.offset + index - c.start, value);
+        } else {
+            _setByte(index, (byte) (value >>> 8));
+            _setByte(index + 1, (byte) value);
+        }
+    }
+
+    @Override
+    protected void _setShortLE(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 2 <= c.start + c.length) {
+            c.buf.setShortLE(c.offset + index - c.start, value);
+        } else {
+            _setByte(index, (byte) value);
+            _setByte(index + 1, (byte) (value >>> 8));
+        }
+    }
+
+    @Override
+    protected void _setMedium(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 3 <= c.start + c.length) {
+            c.buf.setMedium(c.offset + index - c.start, value);
+        } else {
+            _setShort(index, (short) (value >> 8));
+            _setByte(index + 2, (byte) value);
+        }
+    }
+
+    @Override
+    protected void _setMediumLE(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 3 <= c.start + c.length) {
+            c.buf.setMediumLE(c.offset + index - c.start, value);
+        } else {
+            _setShortLE(index, (short) value);
+            _setByte(index + 2, (byte) (value >>> 16));
+        }
+    }
+
+    @Override
+    protected void _setInt(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 4 <= c.start + c.length) {
+            c.buf.setInt(c.offset + index - c.start, value);
+        } else {
+            _setShort(index, (short) (value >>> 16));
+            _setShort(index + 2, (short) value);
+        }
+    }
+
+    @Override
+    protected void _setIntLE(int index, int value) {
+        Node c = findComponent(index);
+        if (index + 4 <= c.start + c.length) {
+            c.buf.setIntLE(c.offset + index - c.start, value);
+        } else {
+            _setShortLE(index, (short) value);
+            _setShortLE(index + 2, (short) (value >>> 16));
+        }
+    }
+
+    @Override
+    protected void _setLong(int index, long value) {
+        Node c = findComponent(index);
+        if (index + 8 <= c.start + c.length) {
+            c.buf.setLong(c.offset + index - c.start, value);
+        } else {
+            _setInt(index, (int) (value >>> 32));
+            _setInt(index + 4, (int) value);
+        }
+    }
+
+    @Override
+    protected void _setLongLE(int index, long value) {
+        Node c = findComponent(index);
+        if (index + 8 <= c.start + c.length) {
+            c.buf.setLongLE(c.offset + index - c.start, value);
+        } else {
+            _setIntLE(index, (int) value);
+            _setIntLE(index + 4, (int) (value >>> 32));
+        }
+    }
+
+    @Override
+    public RopeByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.length);
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            c.buf.getBytes(c.offset + index - c.start, dst, dstIndex, localLength);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf getBytes(int index, ByteBuffer dst) {
+        int limit = dst.limit();
+        int length = dst.remaining();
+
+        checkIndex(index, length);
+        try {
+            while (length > 0) {
+                Node c = findComponent(index);
+                int localLength = Math.min(length, c.start + c.length - index);
+                dst.limit(dst.position() + localLength);
+                c.buf.getBytes(c.offset + index - c.start, dst);
+                index += localLength;
+                length -= localLength;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.capacity());
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            c.buf.getBytes(c.offset + index - c.start, dst, dstIndex, localLength);
+            index += localLength;
+            dstIndex += localLength;
+            length -= localLength;
+        }
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            c.buf.getBytes(c.offset + index - c.start, out, localLength);
+            index += localLength;
+            length -= localLength;
+        }
+        return this;
+    }
+
+    @Override
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        ensureAccessible();
+        int count = nioBufferCount();
+        if (count == 1) {
+            return out.write(internalNioBuffer(index, length));
+        } else {
+            long writtenBytes = out.write(nioBuffers(index, length));
+            if (writtenBytes > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            } else {
+                return (int) writtenBytes;
+            }
+        }
+    }
+
+    @Override
+    public int getBytes(int index, FileChannel out, long position, int length) throws IOException {
+        ensureAccessible();
+        int count = nioBufferCount();
+        if (count == 1) {
+            return out.write(internalNioBuffer(index, length), position);
+        } else {
+            long writtenBytes = 0;
+            for (ByteBuffer buf : nioBuffers(index, length)) {
+                writtenBytes += out.write(buf, position + writtenBytes);
+            }
+            if (writtenBytes > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            return (int) writtenBytes;
+        }
+    }
+
+    @Override
+    public RopeByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.length);
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            c.buf.setBytes(c.offset + index - c.start, src, srcIndex, localLength);
+            index += localLength;
+            srcIndex += localLength;
+            length -= localLength;
+        }
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf setBytes(int index, ByteBuffer src) {
+        int limit = src.limit();
+        int length = src.remaining();
+
+        checkIndex(index, length);
+        try {
+            while (length > 0) {
+                Node c = findComponent(index);
+                int localLength = Math.min(length, c.start + c.length - index);
+                src.limit(src.position() + localLength);
+                c.buf.setBytes(c.offset + index - c.start, src);
+                index += localLength;
+                length -= localLength;
+            }
+        } finally {
+            src.limit(limit);
+        }
+        return this;
+    }
+
+    @Override
+    public RopeByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.capacity());
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            c.buf.setBytes(c.offset + index - c.start, src, srcIndex, localLength);
+            index += localLength;
+            srcIndex += localLength;
+            length -= localLength;
+        }
+        return this;
+    }
+
+    @Override
+    public int setBytes(int index, InputStream in, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return in.read(EmptyArrays.EMPTY_BYTES);
+        }
+
+        int readBytes = 0;
+        do {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            int localReadBytes = c.buf.setBytes(c.offset + index - c.start, in, localLength);
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+
+            index += localReadBytes;
+            length -= localReadBytes;
+            readBytes += localReadBytes;
+        } while (length > 0);
+
+        return readBytes;
+    }
+
+    @Override
+    public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return in.read(EMPTY_NIO_BUFFER);
+        }
+
+        int readBytes = 0;
+        do {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            int localReadBytes = c.buf.setBytes(c.offset + index - c.start, in, localLength);
+
+            if (localReadBytes == 0) {
+                break;
+            }
+
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+
+            index += localReadBytes;
+            length -= localReadBytes;
+            readBytes += localReadBytes;
+        } while (length > 0);
+
+        return readBytes;
+    }
+
+    @Override
+    public int setBytes(int index, FileChannel in, long position, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return in.read(EMPTY_NIO_BUFFER, position);
+        }
+
+        int readBytes = 0;
+        do {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            int localReadBytes = c.buf.setBytes(c.offset + index - c.start, in, position + readBytes,
+                    localLength);
+
+            if (localReadBytes == 0) {
+                break;
+            }
+
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+
+            index += localReadBytes;
+            length -= localReadBytes;
+            readBytes += localReadBytes;
+        } while (length > 0);
+
+        return readBytes;
+    }
+
+    @Override
+    public ByteBuf copy(int index, int length) {
+        checkIndex(index, length);
+        ByteBuf dst = direct ? alloc.directBuffer(length, maxCapacity()) : alloc.heapBuffer(length, maxCapacity());
+        if (length != 0) {
+            getBytes(index, dst, 0, length);
+            dst.writerIndex(length);
+        }
+        return dst;
+    }
+
+    @Override
+    public int nioBufferCount() {
+        switch (numComponents()) {
+        case 0:
+            return 1;
+        case 1:
+            return root.buf.nioBufferCount();
+        default:
+            return nioBufferCount(root);
+        }
+    }
+
+    private static int nioBufferCount(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        return nioBufferCount(node.left) + node.buf.nioBufferCount() + nioBufferCount(node.right);
+    }
+
+    @Override
+    public ByteBuffer internalNioBuffer(int index, int length) {
+        ensureAccessible();
+        switch (numComponents()) {
+        case 0:
+            return EMPTY_NIO_BUFFER;
+        case 1:
+            checkIndex(index, length);
+            return root.buf.internalNioBuffer(root.offset + index, length);
+        default:
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public ByteBuffer nioBuffer(int index, int length) {
+        checkIndex(index, length);
+
+        switch (numComponents()) {
+        case 0:
+            return EMPTY_NIO_BUFFER;
+        case 1:
+            if (root.buf.nioBufferCount() == 1) {
+                return root.buf.nioBuffer(root.offset + index, length);
+            }
+            break;
+        default:
+            break;
+        }
+
+        ByteBuffer[] buffers = nioBuffers(index, length);
+
+        if (buffers.length == 1) {
+            return buffers[0];
+        }
+
+        ByteBuffer merged = ByteBuffer.allocate(length).order(order());
+        for (ByteBuffer buf: buffers) {
+            merged.put(buf);
+        }
+
+        merged.flip();
+        return merged;
+    }
+
+    @Override
+    public ByteBuffer[] nioBuffers(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return new ByteBuffer[] { EMPTY_NIO_BUFFER };
+        }
+
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(4);
+        while (length > 0) {
+            Node c = findComponent(index);
+            int localLength = Math.min(length, c.start + c.length - index);
+            int idx = c.offset + index - c.start;
+            switch (c.buf.nioBufferCount()) {
+            case 0:
+                throw new UnsupportedOperationException();
+            case 1:
+                buffers.add(c.buf.nioBuffer(idx, localLength));
+                break;
+            default:
+                for (ByteBuffer buffer : c.buf.nioBuffers(idx, localLength)) {
+                    buffers.add(buffer);
+                }
+            }
+            index += localLength;
+            length -= localLength;
+        }
+        return buffers.toArray(new ByteBuffer[0]);
+    }
+
+    @Override
+    protected void deallocate() {
+        Node node = root;
+        root = null;
+        lastAccessed = null;
+        freeAll(node);
+    }
+
+    @Override
+    public String toString() {
+        String result = super.toString();
+        result = result.substring(0, result.length() - 1);
+        return result + ", components=" + numComponents() + ')';
+    }
+
+    private Node newNode(ByteBuf buffer) {
+        // Use a xorshift generator for the priorities of the treap.
+        int s = seed;
+        s ^= s << 13;
+        s ^= s >>> 17;
+        s ^= s << 5;
+        seed = s;
+        Node node = new Node(buffer.order(ByteOrder.BIG_ENDIAN), buffer.readerIndex(), buffer.readableBytes(), s);
+        if (!node.buf.isDirect()) {
+            heapComponents++;
+        }
+        return node;
+    }
+
+    private void free(Node node) {
+        if (!node.buf.isDirect()) {
+            heapComponents--;
+        }
+        node.buf.release();
+    }
+
+    private void freeAll(Node node) {
+        if (node == null) {
+            return;
+        }
+        freeAll(node.left);
+        free(node);
+        freeAll(node.right);
+    }
+
+    private void removeFirst(int numComponents) {
+        split(root, numComponents);
+        Node removed = splitLeft;
+        root = splitRight;
+        clearSplit();
+        lastAccessed = null;
+        freeAll(removed);
+    }
+
+    /**
+     * Find the component that contains the given index, and store its offset in {@link Node#start}.
+     */
+    private Node findComponent(int index) {
+        Node la = lastAccessed;
+        if (la != null && index >= la.start && index < la.start + la.length) {
+            return la;
+        }
+        checkIndex(index);
+        Node node = root;
+        int base = 0;
+        while (node != null) {
+            int leftLength = length(node.left);
+            if (index < base + leftLength) {
+                node = node.left;
+            } else if (index < base + leftLength + node.length) {
+                // Concurrent readers will always store the same value, so this is safe as long as the buffer is
+                // not modified concurrently.
+                node.start = base + leftLength;
+                lastAccessed = node;
+                return node;
+            } else {
+                base += leftLength + node.length;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException("index not found: " + index);
+    }
+
+    private Node nodeAt(int cIndex) {
+        Node node = root;
+        while (node != null) {
+            int leftCount = count(node.left);
+            if (cIndex < leftCount) {
+                node = node.left;
+            } else if (cIndex == leftCount) {
+                return node;
+            } else {
+                cIndex -= leftCount + 1;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Update the aggregated values of all nodes on the path to the component at the given index.
+     */
+    private void updatePath(int cIndex) {
+        updatePath(root, cIndex);
+    }
+
+    private static void updatePath(Node node, int cIndex) {
+        int leftCount = count(node.left);
+        if (cIndex < leftCount) {
+            updatePath(node.left, cIndex);
+        } else if (cIndex > leftCount) {
+            updatePath(node.right, cIndex - leftCount - 1);
+        }
+        update(node);
+    }
+
+    /**
+     * Split the tree into the first {@code n} components, stored in {@link #splitLeft}, and the remaining
+     * components, stored in {@link #splitRight}.
+     */
+    private void split(Node node, int n) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        int leftCount = count(node.left);
+        if (leftCount < n) {
+            split(node.right, n - leftCount - 1);
+            node.right = splitLeft;
+            splitLeft = update(node);
+        } else {
+            split(node.left, n);
+            node.left = splitRight;
+            splitRight = update(node);
+        }
+    }
+
+    private void clearSplit() {
+        splitLeft = null;
+        splitRight = null;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node update(Node node) {
+        node.count = count(node.left) + 1 + count(node.right);
+        node.totalLength = length(node.left) + node.length + length(node.right);
+        return node;
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private static int length(Node node) {
+        return node == null ? 0 : node.totalLength;
+    }
+
+    private static void checkComponentIndex(int cIndex, int maxIndex) {
+        if (cIndex < 0 || cIndex > maxIndex) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "cIndex: %d (expected: >= 0 && <= numComponents(%d))", cIndex, maxIndex));
+        }
+    }
+
+    private static final class Node {
+        final ByteBuf buf;
+        final int priority;
+        // The readable part of buf that belongs to this buffer.
+        int offset;
+        int length;
+
+        Node left;
+        Node right;
+        // The offset of this component in the buffer, only valid after it was returned by findComponent(...).
+        int start;
+        // Aggregated values of the subtree of this node.
+        int count;
+        int totalLength;
+
+        Node(ByteBuf buf, int offset, int length, int priority) {
+            this.buf = ObjectUtil.checkNotNull(buf, "buf");
+            this.offset = offset;
+            this.length = length;
+            this.priority = priority;
+            count = 1;
+            totalLength = length;
+        }
+    }
+}
@@ -96,6 +96,15 @@ class WrappedByteBuf extends ByteBuf {
         return buf;
     }
 
+    /**
+     * Returns the wrapped buffer for the fast-paths of {@link ByteBufUtil}, which will make room for
+     * {@code minWritableBytes} bytes and write them into it directly. Sub-classes which must see the wrapped buffer
+     * grow can expand it through this buffer first.
+     */
+    ByteBuf unwrapForWrite(int minWritableBytes) {
+        return buf;
+    }
+
     @Override
     public ByteBuf asReadOnly() {
         return buf.asReadOnly();
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveByteBufAllocatorTest extends AbstractByteBufAllocatorTest<AdaptiveByteBufAllocator> {
+
+    @Override
+    protected AdaptiveByteBufAllocator newAllocator(boolean preferDirect) {
+        return new AdaptiveByteBufAllocator(preferDirect, false);
+    }
+
+    @Override
+    protected AdaptiveByteBufAllocator newUnpooledAllocator() {
+        return newAllocator(false);
+    }
+
+    @Override
+    protected long expectedUsedMemory(AdaptiveByteBufAllocator allocator, int capacity) {
+        return 128 * 1024; // Min chunk size
+    }
+
+    @Override
+    protected long expectedUsedMemoryAfterRelease(AdaptiveByteBufAllocator allocator, int capacity) {
+        return 128 * 1024; // The chunk is still held by the magazine it was allocated from.
+    }
+
+    @Override
+    @Test
+    public void testUnsafeHeapBufferAndUnsafeDirectBuffer() {
+        AdaptiveByteBufAllocator allocator = newUnpooledAllocator();
+        ByteBuf directBuffer = allocator.directBuffer();
+        assertInstanceOf(directBuffer, AdaptivePoolingAllocator.AdaptiveByteBuf.class);
+        assertTrue(directBuffer.isDirect());
+        directBuffer.release();
+
+        ByteBuf heapBuffer = allocator.heapBuffer();
+        assertInstanceOf(heapBuffer, AdaptivePoolingAllocator.AdaptiveByteBuf.class);
+        assertFalse(heapBuffer.isDirect());
+        assertTrue(heapBuffer.hasArray());
+        heapBuffer.release();
+    }
+
+    @Test
+    public void testBuffersOfSameChunkDoNotOverlap() {
+        AdaptiveByteBufAllocator allocator = newAllocator(false);
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        for (int i = 0; i < 64; i++) {
+            ByteBuf buf = allocator.heapBuffer(1000 + i, 4096);
+            for (int j = 0; j < buf.capacity(); j++) {
+                buf.writeByte(i);
+            }
+            buffers.add(buf);
+        }
+        for (int i = 0; i < buffers.size(); i++) {
+            ByteBuf buf = buffers.get(i);
+            assertEquals(1000 + i, buf.readableBytes());
+            while (buf.isReadable()) {
+                assertEquals(i, buf.readByte());
+            }
+            assertTrue(buf.release());
+        }
+    }
+
+    @Test
+    public void testCapacityIncreasePreservesContent() {
+        AdaptiveByteBufAllocator allocator = newAllocator(true);
+        ByteBuf buf = allocator.directBuffer(16);
+        buf.writeLong(42).writeLong(43);
+        buf.writeLong(44);
+        assertEquals(42, buf.readLong());
+        assertEquals(43, buf.readLong());
+        assertEquals(44, buf.readLong());
+        assertTrue(buf.release());
+    }
+
+    @Test
+    public void testLargeBufferIsNotPooled() {
+        AdaptiveByteBufAllocator allocator = newAllocator(true);
+        int size = 4 * 1024 * 1024;
+        ByteBuf buf = allocator.directBuffer(size, size);
+        assertEquals(size, allocator.metric().usedDirectMemory());
+        assertEquals(size, buf.capacity());
+        assertSame(allocator, buf.alloc());
+        assertTrue(buf.release());
+        assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+
+    @Test
+    public void testEventLoopThreadsUseOwnMagazine() throws Exception {
+        final AdaptiveByteBufAllocator allocator = newAllocator(true);
+        EventExecutor executor1 = new DefaultEventExecutor();
+        EventExecutor executor2 = new DefaultEventExecutor();
+        ByteBuf[] loop1Buffers;
+        ByteBuf[] loop2Buffers;
+        try {
+            Callable<ByteBuf[]> allocateTwice = new Callable<ByteBuf[]>() {
+                @Override
+                public ByteBuf[] call() {
+                    return new ByteBuf[] { allocator.directBuffer(256), allocator.directBuffer(256) };
+                }
+            };
+            loop1Buffers = executor1.submit(allocateTwice).sync().getNow();
+            loop2Buffers = executor2.submit(allocateTwice).sync().getNow();
+        } finally {
+            executor1.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+            executor2.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+        ByteBuf sharedBuffer = allocator.directBuffer(256);
+
+        Object loop1Magazine = magazine(loop1Buffers[0]);
+        Object loop2Magazine = magazine(loop2Buffers[0]);
+        assertNotNull(loop1Magazine);
+        assertNotNull(loop2Magazine);
+        // Each event loop keeps allocating from its own magazine ...
+        assertSame(loop1Magazine, magazine(loop1Buffers[1]));
+        assertSame(loop2Magazine, magazine(loop2Buffers[1]));
+        // ... which is neither shared with the other event loop nor with non event loop threads.
+        assertNotSame(loop1Magazine, loop2Magazine);
+        assertNotSame(loop1Magazine, magazine(sharedBuffer));
+        assertNotSame(loop2Magazine, magazine(sharedBuffer));
+
+        for (ByteBuf buf : loop1Buffers) {
+            assertTrue(buf.release());
+        }
+        for (ByteBuf buf : loop2Buffers) {
+            assertTrue(buf.release());
+        }
+        assertTrue(sharedBuffer.release());
+    }
+
+    @Test
+    public void testThreadLocalMagazineIsFreedOnThreadTermination() throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        // With useCacheForNonEventLoopThreads set, every FastThreadLocalThread gets a magazine of its own.
+        final AdaptiveByteBufAllocator cachingAllocator = new AdaptiveByteBufAllocator(true, true);
+        Thread thread = new FastThreadLocalThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 128; i++) {
+                        ByteBuf buf = cachingAllocator.directBuffer(256);
+                        buf.writeInt(i);
+                        assertEquals(i, buf.readInt());
+                        buf.release();
+                    }
+                } catch (Throwable cause) {
+                    error.set(cause);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNull(error.get());
+        // The thread terminated, which releases the chunk of the thread-local magazine.
+        assertEquals(0, cachingAllocator.metric().usedDirectMemory());
+    }
+
+    private static Object magazine(ByteBuf buf) {
+        return ((AdaptivePoolingAllocator.AdaptiveByteBuf) buf).magazine();
+    }
+}
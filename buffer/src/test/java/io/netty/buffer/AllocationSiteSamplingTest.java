@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AllocationSiteSamplingTest {
+
+    @Test
+    public void testSamplingDisabledByDefault() {
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+        assertEquals(0, allocator.liveBufferSamplingInterval());
+        ByteBuf buf = allocator.heapBuffer(16);
+        try {
+            assertTrue(allocator.liveAllocationSites().isEmpty());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testLiveBytesBySite() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        allocator.setLiveBufferSamplingInterval(1);
+        assertEquals(1, allocator.liveBufferSamplingInterval());
+
+        // The site includes the callers, so allocate from the same line.
+        ByteBuf[] buffers = new ByteBuf[2];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = allocateAtFirstSite(allocator, 64 << i);
+        }
+        ByteBuf first = buffers[0];
+        ByteBuf second = buffers[1];
+        ByteBuf third = allocateAtSecondSite(allocator, 1024);
+
+        List<ByteBufAllocationSite> sites = allocator.liveAllocationSites();
+        assertEquals(2, sites.size());
+        // Ordered by live bytes.
+        assertThat(sites.get(0).callSite(), startsWith(AllocationSiteSamplingTest.class.getName() +
+                ".allocateAtSecondSite"));
+        assertEquals(1, sites.get(0).liveBuffers());
+        assertEquals(1024, sites.get(0).liveBytes());
+        assertThat(sites.get(1).callSite(), startsWith(AllocationSiteSamplingTest.class.getName() +
+                ".allocateAtFirstSite"));
+        assertThat(sites.get(1).callSite(), containsString("testLiveBytesBySite"));
+        assertEquals(2, sites.get(1).liveBuffers());
+        assertEquals(192, sites.get(1).liveBytes());
+
+        // Derived buffers share the reference count, so the buffer is only released once.
+        ByteBuf slice = first.retainedSlice();
+        first.release();
+        assertEquals(2, allocator.liveAllocationSites().get(1).liveBuffers());
+        slice.release();
+
+        third.release();
+        sites = allocator.liveAllocationSites();
+        assertEquals(1, sites.size());
+        assertEquals(1, sites.get(0).liveBuffers());
+        assertEquals(128, sites.get(0).liveBytes());
+
+        second.release();
+        assertTrue(allocator.liveAllocationSites().isEmpty());
+
+        allocator.setLiveBufferSamplingInterval(0);
+        assertEquals(0, allocator.liveBufferSamplingInterval());
+        allocateAtFirstSite(allocator, 64).release();
+        assertTrue(allocator.liveAllocationSites().isEmpty());
+    }
+
+    @Test
+    public void testLiveBytesOfGrowingBuffer() {
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+        allocator.setLiveBufferSamplingInterval(1);
+        ByteBuf cumulation = allocateAtFirstSite(allocator, 64);
+        assertEquals(64, allocator.liveAllocationSites().get(0).liveBytes());
+
+        cumulation.writeZero(1000);
+        List<ByteBufAllocationSite> sites = allocator.liveAllocationSites();
+        assertEquals(1, sites.get(0).liveBuffers());
+        assertEquals(cumulation.capacity(), sites.get(0).liveBytes());
+        assertTrue(cumulation.capacity() >= 1000);
+
+        cumulation.release();
+        assertTrue(allocator.liveAllocationSites().isEmpty());
+    }
+
+    private static ByteBuf allocateAtFirstSite(ByteBufAllocator allocator, int capacity) {
+        return allocator.directBuffer(capacity);
+    }
+
+    private static ByteBuf allocateAtSecondSite(ByteBufAllocator allocator, int capacity) {
+        return allocator.heapBuffer(capacity);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BudgetedByteBufAllocatorTest {
+
+    @Test
+    public void testAccountsUntilReleased() {
+        BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 1024);
+        ByteBuf heap = allocator.heapBuffer(128);
+        ByteBuf direct = allocator.directBuffer(256);
+        assertEquals(128, allocator.metric().usedHeapMemory());
+        assertEquals(256, allocator.metric().usedDirectMemory());
+        assertEquals(384, allocator.usedMemory());
+
+        // Derived buffers share the reservation of their parent.
+        ByteBuf slice = heap.retainedSlice();
+        assertFalse(heap.release());
+        assertEquals(384, allocator.usedMemory());
+        assertTrue(slice.release());
+        assertTrue(direct.release());
+        assertEquals(0, allocator.usedMemory());
+        assertEquals(0, allocator.metric().usedHeapMemory());
+        assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+
+    @Test
+    public void testNotifiesListeners() {
+        BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 1024);
+        final AtomicInteger exceeded = new AtomicInteger();
+        final AtomicInteger available = new AtomicInteger();
+        allocator.addListener(new BudgetedByteBufAllocator.Listener() {
+            @Override
+            public void budgetExceeded(BudgetedByteBufAllocator allocator) {
+                exceeded.incrementAndGet();
+            }
+
+            @Override
+            public void budgetAvailable(BudgetedByteBufAllocator allocator) {
+                available.incrementAndGet();
+            }
+        });
+
+        ByteBuf first = allocator.buffer(1024);
+        assertFalse(allocator.isExceeded());
+        ByteBuf second = allocator.buffer(512);
+        ByteBuf third = allocator.buffer(512);
+        assertTrue(allocator.isExceeded());
+        assertEquals(1, exceeded.get());
+
+        assertTrue(second.release());
+        assertEquals(0, available.get());
+        assertTrue(third.release());
+        assertFalse(allocator.isExceeded());
+        assertEquals(1, available.get());
+        assertTrue(first.release());
+        assertEquals(1, exceeded.get());
+        assertEquals(1, available.get());
+    }
+
+    @Test
+    public void testFailAllocations() {
+        final BudgetedByteBufAllocator allocator =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 1024, true);
+        ByteBuf buffer = allocator.buffer(1000);
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                allocator.buffer(100);
+            }
+        });
+        assertEquals(1000, allocator.usedMemory());
+        assertTrue(buffer.release());
+        assertTrue(allocator.buffer(100).release());
+    }
+
+    @Test
+    public void testNestedBudgets() {
+        final BudgetedByteBufAllocator group =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 1024, true);
+        BudgetedByteBufAllocator first = new BudgetedByteBufAllocator(group, 768);
+        final BudgetedByteBufAllocator second = new BudgetedByteBufAllocator(group, 768);
+
+        ByteBuf buffer = first.buffer(768);
+        assertEquals(768, first.usedMemory());
+        assertEquals(0, second.usedMemory());
+        assertEquals(768, group.usedMemory());
+
+        // The budget of the second allocator is not exceeded, but the budget of the group is.
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                second.buffer(512);
+            }
+        });
+        assertEquals(0, second.usedMemory());
+
+        assertTrue(buffer.release());
+        assertEquals(0, first.usedMemory());
+        assertEquals(0, group.usedMemory());
+    }
+
+    @Test
+    public void testAccountsDefaultCapacity() {
+        final BudgetedByteBufAllocator allocator =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 384, true);
+        ByteBuf buffer = allocator.buffer();
+        assertEquals(buffer.capacity(), allocator.usedMemory());
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                allocator.ioBuffer();
+            }
+        });
+        assertEquals(buffer.capacity(), allocator.usedMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, allocator.usedMemory());
+    }
+
+    @Test
+    public void testAccountsGrowth() {
+        final BudgetedByteBufAllocator allocator =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 1024, true);
+        final ByteBuf cumulation = allocator.heapBuffer(64);
+        final ByteBuf in = Unpooled.buffer(256).writeZero(256);
+
+        // Grow the cumulation the same way as ByteToMessageDecoder.MERGE_CUMULATOR does.
+        cumulation.writeBytes(in, in.readerIndex(), in.readableBytes());
+        assertEquals(cumulation.capacity(), allocator.usedMemory());
+        assertEquals(cumulation.capacity(), allocator.metric().usedHeapMemory());
+        for (int i = 0; i < 3; i++) {
+            cumulation.writeBytes(in, in.readerIndex(), in.readableBytes());
+        }
+        assertEquals(1024, cumulation.capacity());
+        assertEquals(1024, allocator.usedMemory());
+
+        // Growing past the budget fails before the buffer is changed.
+        final int capacity = cumulation.capacity();
+        final int writerIndex = cumulation.writerIndex();
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                cumulation.writeBytes(in, in.readerIndex(), in.readableBytes());
+            }
+        });
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                cumulation.duplicate().capacity(2048);
+            }
+        });
+        assertEquals(capacity, cumulation.capacity());
+        assertEquals(writerIndex, cumulation.writerIndex());
+        assertEquals(capacity, allocator.usedMemory());
+
+        // Reducing the capacity gives the bytes back.
+        cumulation.capacity(512);
+        assertEquals(512, allocator.usedMemory());
+        assertTrue(cumulation.release());
+        assertTrue(in.release());
+        assertEquals(0, allocator.usedMemory());
+        assertEquals(0, allocator.metric().usedHeapMemory());
+    }
+
+    @Test
+    public void testAccountsGrowthThroughByteBufUtil() {
+        final BudgetedByteBufAllocator allocator =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 4096, true);
+        final ByteBuf buffer = allocator.directBuffer(16);
+        // The fast-paths of ByteBufUtil grow the wrapped buffer directly, like the HTTP encoders do.
+        ByteBufUtil.writeUtf8(buffer, newString(100));
+        assertEquals(512, buffer.capacity());
+        assertEquals(512, allocator.usedMemory());
+        ByteBufUtil.writeAscii(buffer, newString(500));
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1024, allocator.usedMemory());
+        assertEquals(1024, allocator.metric().usedDirectMemory());
+
+        assertThrows(ByteBufBudgetExceededException.class, new Executable() {
+            @Override
+            public void execute() {
+                ByteBufUtil.writeUtf8(buffer, newString(2000));
+            }
+        });
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1024, allocator.usedMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, allocator.usedMemory());
+    }
+
+    @Test
+    public void testAccountsGrowthOfUnwrappedBufferOnRelease() {
+        BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 4096);
+        ByteBuf buffer = allocator.heapBuffer(16).retain();
+        buffer.unwrap().writeZero(512);
+        assertFalse(buffer.release());
+        assertEquals(buffer.capacity(), allocator.usedMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, allocator.usedMemory());
+        assertEquals(0, allocator.metric().usedHeapMemory());
+    }
+
+    @Test
+    public void testAccountsGrowthOfNestedBudgets() {
+        BudgetedByteBufAllocator group = new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 4096);
+        BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(group, 4096);
+        ByteBuf buffer = allocator.buffer(16);
+        buffer.writeZero(1000);
+        assertEquals(buffer.capacity(), allocator.usedMemory());
+        assertEquals(buffer.capacity(), group.usedMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, allocator.usedMemory());
+        assertEquals(0, group.usedMemory());
+    }
+
+    @Test
+    public void testAccountsCompositeConsolidation() {
+        BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 4096);
+        CompositeByteBuf composite = allocator.compositeHeapBuffer(2);
+        for (int i = 0; i < 3; i++) {
+            composite.addComponent(true, Unpooled.buffer(128).writeZero(128));
+        }
+        // Adding more components than maxNumComponents consolidates them into a buffer of this allocator.
+        assertEquals(1, composite.numComponents());
+        assertEquals(384, allocator.usedMemory());
+
+        composite.writeZero(128);
+        assertEquals(composite.capacity(), allocator.usedMemory());
+        assertTrue(composite.release());
+        assertEquals(0, allocator.usedMemory());
+    }
+
+    @Test
+    public void testReleaseByOtherThreadReturnsBudget() throws Exception {
+        final BudgetedByteBufAllocator allocator = new BudgetedByteBufAllocator(new PooledByteBufAllocator(true), 1024);
+        EventExecutor executor = new DefaultEventExecutor();
+        try {
+            // Allocated by an event loop and released by another thread, like a buffer passed to an offload executor.
+            ByteBuf buffer = executor.submit(new Callable<ByteBuf>() {
+                @Override
+                public ByteBuf call() {
+                    return allocator.directBuffer(1024).retain();
+                }
+            }).sync().getNow();
+            assertEquals(1024, allocator.usedMemory());
+            assertFalse(buffer.release());
+            assertTrue(buffer.release());
+            assertEquals(0, allocator.usedMemory());
+            assertFalse(allocator.isExceeded());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void testConcurrentAllocationsDoNotExceedBudget() throws Exception {
+        final BudgetedByteBufAllocator allocator =
+                new BudgetedByteBufAllocator(UnpooledByteBufAllocator.DEFAULT, 64 * 1024, true);
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicLong maxUsed = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+                    try {
+                        barrier.await();
+                        for (int i = 0; i < 10000; i++) {
+                            try {
+                                buffers.add(allocator.buffer(1024));
+                            } catch (ByteBufBudgetExceededException expected) {
+                                for (ByteBuf buffer : buffers) {
+                                    buffer.release();
+                                }
+                                buffers.clear();
+                            }
+                            long used = allocator.usedMemory();
+                            if (used > maxUsed.get()) {
+                                maxUsed.set(used);
+                            }
+                        }
+                    } catch (Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    } finally {
+                        for (ByteBuf buffer : buffers) {
+                            buffer.release();
+                        }
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(error.get());
+        assertTrue(maxUsed.get() <= allocator.maxBytes());
+        assertEquals(0, allocator.usedMemory());
+    }
+
+    private static String newString(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+}
@@ -153,6 +153,52 @@ public class ByteBufUtilTest {
         needle.release();
     }
 
+    @ParameterizedTest(name = PARAMETERIZED_NAME)
+    @MethodSource("noUnsafe")
+    public void testIndexOfShortNeedle(BufferType bufferType) {
+        Random rand = new Random(42);
+        ByteBuf haystack = buffer(bufferType, 256);
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + rand.nextInt(3));
+        }
+        haystack.writeBytes(bytes);
+        String haystackString = new String(bytes, CharsetUtil.US_ASCII);
+        for (int needleLength = 2; needleLength <= 20; needleLength++) {
+            for (int offset = 0; offset + needleLength <= bytes.length; offset += 7) {
+                ByteBuf needle = Unpooled.wrappedBuffer(bytes, offset, needleLength);
+                assertEquals(haystackString.indexOf(new String(bytes, offset, needleLength, CharsetUtil.US_ASCII)),
+                        ByteBufUtil.indexOf(needle, haystack));
+            }
+        }
+        assertEquals(-1, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abcd", CharsetUtil.US_ASCII),
+                haystack.slice(0, 3)));
+        haystack.release();
+    }
+
+    @ParameterizedTest(name = PARAMETERIZED_NAME)
+    @MethodSource("noUnsafe")
+    public void testLastIndexOf(BufferType bufferType) {
+        ByteBuf buf = buffer(bufferType, 64);
+        buf.writeZero(64);
+        for (int i = 0; i < 64; i++) {
+            buf.setByte(i, 1);
+            for (int fromIndex = i + 1; fromIndex <= 64; fromIndex++) {
+                for (int toIndex = 0; toIndex < fromIndex; toIndex++) {
+                    int expected = toIndex <= i ? i : -1;
+                    assertEquals(expected, buf.indexOf(fromIndex, toIndex, (byte) 1));
+                }
+            }
+            buf.setByte(i, 0);
+        }
+        buf.setByte(3, 1);
+        buf.setByte(60, 1);
+        assertEquals(60, buf.indexOf(64, 0, (byte) 1));
+        assertEquals(3, buf.indexOf(60, 0, (byte) 1));
+        assertEquals(-1, buf.indexOf(60, 4, (byte) 1));
+        buf.release();
+    }
+
     @Test
     public void equalsBufferSubsections() {
         byte[] b1 = new byte[128];
@@ -742,6 +788,12 @@ public class ByteBufUtilTest {
         testDecodeString("Some UTF-8 like äÄ∏ŒŒ", CharsetUtil.UTF_8);
     }
 
+    @Test
+    public void testDecodeUtf8OnlyAscii() {
+        testDecodeString("This is a test which is longer than a word", CharsetUtil.UTF_8);
+        testDecodeString("This is a test which ends with a non ASCII character ä", CharsetUtil.UTF_8);
+    }
+
     private static void testDecodeString(String text, Charset charset) {
         ByteBuf buffer = Unpooled.copiedBuffer(text, charset);
         assertEquals(text, ByteBufUtil.decodeString(buffer, 0, buffer.readableBytes(), charset));
@@ -817,6 +869,29 @@ public class ByteBufUtilTest {
         assertIsText(bufferType, invalidBytes, false, CharsetUtil.US_ASCII);
     }
 
+    @ParameterizedTest(name = PARAMETERIZED_NAME)
+    @MethodSource("noUnsafe")
+    public void testIsTextWithLongAsciiRuns(BufferType bufferType) {
+        byte[] bytes = new byte[37];
+        Arrays.fill(bytes, (byte) 'a');
+        assertIsText(bufferType, bytes, true, CharsetUtil.US_ASCII);
+        assertIsText(bufferType, bytes, true, CharsetUtil.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) 0x80;
+            assertIsText(bufferType, bytes, false, CharsetUtil.US_ASCII);
+            assertIsText(bufferType, bytes, false, CharsetUtil.UTF_8);
+            if (i < bytes.length - 1) {
+                // A valid two byte sequence in between ASCII.
+                bytes[i] = (byte) 0xC2;
+                bytes[i + 1] = (byte) 0xA2;
+                assertIsText(bufferType, bytes, false, CharsetUtil.US_ASCII);
+                assertIsText(bufferType, bytes, true, CharsetUtil.UTF_8);
+                bytes[i + 1] = 'a';
+            }
+            bytes[i] = 'a';
+        }
+    }
+
     @ParameterizedTest(name = PARAMETERIZED_NAME)
     @MethodSource("noUnsafe")
     public void testIsTextWithInvalidIndexAndLength(BufferType bufferType) {
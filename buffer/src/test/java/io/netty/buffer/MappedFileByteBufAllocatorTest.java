@@ -0,0 +1,174 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedFileByteBufAllocatorTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    File directory;
+
+    private MappedFileByteBufAllocator allocator;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        allocator = new MappedFileByteBufAllocator(directory, SEGMENT_SIZE, 4);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        allocator.close();
+    }
+
+    @Test
+    public void testSegmentsAreReused() {
+        ByteBuf buffer = allocator.directBuffer(1024);
+        assertTrue(buffer.isDirect());
+        assertEquals(SEGMENT_SIZE, allocator.usedMappedMemory());
+        buffer.writeLong(42);
+        long length = directory.listFiles()[0].length();
+        buffer.release();
+        assertEquals(0, allocator.usedMappedMemory());
+
+        buffer = allocator.directBuffer(SEGMENT_SIZE);
+        assertEquals(SEGMENT_SIZE, allocator.usedMappedMemory());
+        // The pooled segment was reused, so the file did not grow.
+        assertEquals(length, directory.listFiles()[0].length());
+        buffer.release();
+    }
+
+    @Test
+    public void testSinglePooledSegment() throws IOException {
+        File singleDirectory = new File(directory, "single");
+        assertTrue(singleDirectory.mkdir());
+        MappedFileByteBufAllocator allocator = new MappedFileByteBufAllocator(singleDirectory, SEGMENT_SIZE, 1);
+        try {
+            File file = singleDirectory.listFiles()[0];
+            ByteBuf first = allocator.directBuffer(1024);
+            ByteBuf second = allocator.directBuffer(1024);
+            first.release();
+            // Only one segment is kept mapped, so the range of the second buffer is returned and the file truncated.
+            second.release();
+            assertEquals(0, allocator.usedMappedMemory());
+            assertEquals(SEGMENT_SIZE, file.length());
+        } finally {
+            allocator.close();
+        }
+    }
+
+    @Test
+    public void testLargeBuffer() {
+        ByteBuf buffer = allocator.directBuffer(SEGMENT_SIZE * 3 + 1);
+        assertEquals(SEGMENT_SIZE * 4, allocator.usedMappedMemory());
+        buffer.setByte(SEGMENT_SIZE * 3, 1);
+        assertEquals(1, buffer.getByte(SEGMENT_SIZE * 3));
+        buffer.release();
+        assertEquals(0, allocator.usedMappedMemory());
+    }
+
+    @Test
+    public void testFreeRangesAreSplitCoalescedAndTruncated() {
+        File file = directory.listFiles()[0];
+        ByteBuf first = allocator.directBuffer(SEGMENT_SIZE * 3);
+        ByteBuf second = allocator.directBuffer(SEGMENT_SIZE * 2);
+        assertEquals(SEGMENT_SIZE * 5, file.length());
+
+        // The range of the first buffer is split to serve a smaller buffer, so the file does not grow.
+        first.release();
+        ByteBuf third = allocator.directBuffer(SEGMENT_SIZE * 2);
+        assertEquals(SEGMENT_SIZE * 5, file.length());
+        assertEquals(SEGMENT_SIZE * 4, allocator.usedMappedMemory());
+
+        // The end of the file is still used by the second buffer.
+        third.release();
+        assertEquals(SEGMENT_SIZE * 5, file.length());
+
+        // All free ranges are coalesced, so the whole file is unused and can be truncated.
+        second.release();
+        assertEquals(0, file.length());
+        assertEquals(0, allocator.usedMappedMemory());
+
+        ByteBuf fourth = allocator.directBuffer(SEGMENT_SIZE * 4);
+        assertEquals(SEGMENT_SIZE * 4, file.length());
+        fourth.release();
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void testCapacityIncrease() {
+        ByteBuf buffer = allocator.directBuffer(16);
+        for (int i = 0; i < SEGMENT_SIZE; i++) {
+            buffer.writeShort(i);
+        }
+        assertEquals(SEGMENT_SIZE * 2, buffer.readableBytes());
+        assertTrue(allocator.usedMappedMemory() >= SEGMENT_SIZE * 2);
+        for (int i = 0; i < SEGMENT_SIZE; i++) {
+            assertEquals((short) i, buffer.readShort());
+        }
+        buffer.release();
+        assertEquals(0, allocator.usedMappedMemory());
+    }
+
+    @Test
+    public void testNioBuffersAndComposite() {
+        ByteBuf first = allocator.directBuffer(8).writeLong(1);
+        ByteBuf second = allocator.directBuffer(8).writeLong(2);
+        CompositeByteBuf composite = allocator.compositeDirectBuffer().addComponents(true, first, second);
+        ByteBuffer[] nioBuffers = composite.nioBuffers();
+        assertEquals(2, nioBuffers.length);
+        assertTrue(nioBuffers[0].isDirect());
+        assertEquals(2, nioBuffers[1].getLong(nioBuffers[1].position()));
+        composite.release();
+        assertEquals(0, allocator.usedMappedMemory());
+    }
+
+    @Test
+    public void testHeapBuffersAreNotMapped() {
+        ByteBuf buffer = allocator.heapBuffer(1024);
+        assertFalse(buffer.isDirect());
+        assertEquals(0, allocator.usedMappedMemory());
+        buffer.release();
+    }
+
+    @Test
+    public void testCloseDeletesFile() throws IOException {
+        allocator.directBuffer(1024).release();
+        assertEquals(1, directory.listFiles().length);
+        allocator.close();
+        assertEquals(0, directory.listFiles().length);
+        assertThrows(IllegalStateException.class, new Executable() {
+            @Override
+            public void execute() {
+                allocator.directBuffer(1024);
+            }
+        });
+    }
+}
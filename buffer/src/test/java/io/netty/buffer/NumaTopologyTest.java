@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NumaTopologyTest {
+
+    @Test
+    public void testAssignCpus() {
+        int[] cpuToNode = NumaTopology.assignCpus(new int[0], "0-1,4", 0);
+        cpuToNode = NumaTopology.assignCpus(cpuToNode, "2-3,5-6\n", 1);
+        assertArrayEquals(new int[] { 0, 0, 1, 1, 0, 1, 1 }, cpuToNode);
+
+        NumaTopology topology = new NumaTopology(2, cpuToNode);
+        assertEquals(1, topology.node(5));
+        assertEquals(0, topology.node(4));
+        // Unknown CPUs belong to the first node.
+        assertEquals(0, topology.node(100));
+        assertEquals(0, topology.node(-1));
+    }
+
+    @Test
+    public void testParseProcessor() {
+        StringBuilder stat = new StringBuilder("1234 (event loop (1)) R");
+        for (int i = 1; i < 36; i++) {
+            stat.append(' ').append(i);
+        }
+        stat.append(" 7 0 0");
+        assertEquals(7, NumaTopology.parseProcessor(stat.toString()));
+        assertEquals(-1, NumaTopology.parseProcessor("1234 (cat) R 1 2 3"));
+        assertEquals(-1, NumaTopology.parseProcessor("garbage"));
+    }
+
+    @Test
+    public void testArenasAreSelectedByNode() {
+        final int[] currentNode = new int[1];
+        NumaTopology topology = new NumaTopology(2, new int[0]) {
+            @Override
+            int currentNode() {
+                return currentNode[0];
+            }
+        };
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 4, 8192, 9, 0, 0, true, 0, 0, topology);
+        assertEquals(2, allocator.metric().numNumaNodes());
+
+        currentNode[0] = 1;
+        ByteBuf buffer = allocator.directBuffer(1024);
+        try {
+            PoolArena<ByteBuffer> arena = allocator.threadCache().directArena;
+            // Arenas 1 and 3 belong to node 1.
+            assertSame(allocator.metric().directArenas().get(1), arena);
+            assertEquals(0, allocator.metric().usedDirectMemory(0));
+            assertEquals(allocator.metric().chunkSize(), allocator.metric().usedDirectMemory(1));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testSingleNode() {
+        assertEquals(1, NumaTopology.SINGLE_NODE.numNodes());
+        assertEquals(0, NumaTopology.SINGLE_NODE.currentNode());
+        assertEquals(1, new PooledByteBufAllocator(true).metric().numNumaNodes());
+    }
+}
@@ -19,9 +19,17 @@ package io.netty.buffer;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PoolArenaTest {
@@ -141,6 +149,143 @@ public class PoolArenaTest {
         assertEquals(1, metric.numNormalAllocations());
     }
 
+    @Test
+    public void testSmallDeallocationDoesNotNeedArenaLock() throws Exception {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true,   // preferDirect
+                0,      // nHeapArena
+                1,      // nDirectArena
+                8192,   // pageSize
+                11,     // maxOrder
+                0,      // tinyCacheSize
+                0,      // smallCacheSize
+                0,      // normalCacheSize
+                true    // useCacheForAllThreads
+        );
+
+        // Both buffers are served by the same subpage.
+        final ByteBuf b1 = allocator.directBuffer(64);
+        final ByteBuf b2 = allocator.directBuffer(64);
+        final PoolArena<ByteBuffer> arena = unwrapIfNeeded(b1).chunk.arena;
+
+        final CountDownLatch released = new CountDownLatch(1);
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // The subpage is still in use after this, so the arena lock must not be needed.
+                b1.release();
+                released.countDown();
+            }
+        });
+        arena.lock();
+        try {
+            releaser.start();
+            assertTrue(released.await(10, TimeUnit.SECONDS));
+        } finally {
+            arena.unlock();
+        }
+        releaser.join();
+        assertTrue(b2.release());
+        assertEquals(2, arena.numSmallDeallocations());
+    }
+
+    @Test
+    public void testNormalDeallocationDoesNotNeedArenaLock() throws Exception {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true,   // preferDirect
+                0,      // nHeapArena
+                1,      // nDirectArena
+                8192,   // pageSize
+                11,     // maxOrder
+                0,      // tinyCacheSize
+                0,      // smallCacheSize
+                0,      // normalCacheSize
+                true    // useCacheForAllThreads
+        );
+
+        // Both buffers are served by the same chunk, which stays in the same PoolChunkList when one is released.
+        final ByteBuf b1 = allocator.directBuffer(65536);
+        final ByteBuf b2 = allocator.directBuffer(65536);
+        final PoolArena<ByteBuffer> arena = unwrapIfNeeded(b1).chunk.arena;
+
+        final CountDownLatch released = new CountDownLatch(1);
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                b1.release();
+                released.countDown();
+            }
+        });
+        arena.lock();
+        try {
+            releaser.start();
+            assertTrue(released.await(10, TimeUnit.SECONDS));
+        } finally {
+            arena.unlock();
+        }
+        releaser.join();
+        assertTrue(b2.release());
+        assertEquals(2, arena.numNormalDeallocations());
+    }
+
+    @Test
+    public void testChunksAreMovedAndDestroyedWhenFreedConcurrently() throws Exception {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true,   // preferDirect
+                0,      // nHeapArena
+                1,      // nDirectArena
+                8192,   // pageSize
+                11,     // maxOrder
+                0,      // tinyCacheSize
+                0,      // smallCacheSize
+                0,      // normalCacheSize
+                true    // useCacheForAllThreads
+        );
+        // Only normal sizes, as the last subpage of each small size is kept even if it is unused.
+        final int[] sizes = { 32768, 65536, 1024 * 1024, 4 * 1024 * 1024 };
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random();
+                        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+                        for (int j = 0; j < 10000; j++) {
+                            if (buffers.size() < 16 && random.nextBoolean()) {
+                                buffers.add(allocator.directBuffer(sizes[random.nextInt(sizes.length)]));
+                            } else if (!buffers.isEmpty()) {
+                                assertTrue(buffers.remove(random.nextInt(buffers.size())).release());
+                            }
+                        }
+                        for (ByteBuf buffer : buffers) {
+                            assertTrue(buffer.release());
+                        }
+                    } catch (Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        assertEquals(0, arena.numActiveAllocations());
+        List<PoolChunkListMetric> chunkLists = arena.chunkLists();
+        // Unused chunks may only remain in qInit, they are destroyed once they become unused in all other lists.
+        for (int i = 1; i < chunkLists.size(); i++) {
+            assertFalse(chunkLists.get(i).iterator().hasNext());
+        }
+        for (PoolChunkMetric chunk : chunkLists.get(0)) {
+            assertEquals(chunk.chunkSize(), chunk.freeBytes());
+        }
+    }
+
     @Test
     public void testDirectArenaMemoryCopy() {
         ByteBuf src = PooledByteBufAllocator.DEFAULT.directBuffer(512);
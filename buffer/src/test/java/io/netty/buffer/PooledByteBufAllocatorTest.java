@@ -16,22 +16,29 @@
 
 package io.netty.buffer;
 
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
@@ -44,6 +51,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<PooledByteBufAllocator> {
@@ -91,6 +100,139 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         assertTrue(allocator.trimCurrentThreadCache());
     }
 
+    @Test
+    public void testTrimIdleChunks() {
+        // Disable the caches so the chunk is not in use anymore once the buffer is released.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 9, 0, 0, false);
+        int chunkSize = allocator.metric().chunkSize();
+
+        ByteBuf buffer = allocator.directBuffer(64 * 1024);
+        // A chunk which is in use is never released.
+        assertEquals(0, allocator.trimIdleChunks(0, MILLISECONDS));
+        assertTrue(buffer.release());
+
+        // The chunk is kept in the arena after it became unused.
+        assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+        assertEquals(0, allocator.trimIdleChunks(1, TimeUnit.HOURS));
+
+        assertEquals(chunkSize, allocator.trimIdleChunks(0, MILLISECONDS));
+        assertEquals(0, allocator.metric().usedDirectMemory());
+        assertEquals(chunkSize, allocator.metric().trimmedBytes());
+
+        // The arena is still usable.
+        buffer = allocator.directBuffer(64 * 1024);
+        assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+        assertTrue(buffer.release());
+    }
+
+    @Test
+    public void testThreadCacheAdaptsToUsage() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 9, 16, 0, true);
+        PoolThreadCacheMetric metric = allocator.metric().directThreadCaches().get(0);
+        int size = 1024;
+
+        // Every allocation misses the cache, all the released buffers are cached.
+        allocateAndRelease(allocator, size, 16);
+
+        PoolThreadCache cache = allocator.threadCache();
+        PoolArena<ByteBuffer> arena = cache.directArena;
+        int sizeIdx = arena.size2SizeIdx(size);
+        assertEquals(16, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(16, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+        assertEquals(0, metric.numHits());
+        assertEquals(16, metric.numMisses());
+        assertEquals(16, metric.numTrimmed());
+
+        // The size is not used anymore, so the cache should shrink down to its minimum.
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(8, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(1, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+
+        // The size is used again and more buffers are released than the cache may keep, so it grows again ...
+        allocateAndRelease(allocator, size, 16);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(2, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+        for (int i = 0; i < 8; i++) {
+            allocateAndRelease(allocator, size, 16);
+            assertTrue(allocator.trimCurrentThreadCache());
+        }
+        // ... but never beyond the configured size.
+        assertEquals(16, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+
+        // The configured size is also the most buffers the cache holds in between two trims.
+        allocateAndRelease(allocator, size, 20);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(16, cache.cacheSize(arena, sizeIdx, PoolArena.SizeClass.Small));
+        assertEquals(4, metric.numRejected());
+    }
+
+    @Test
+    public void testThreadCacheOfSizeOne() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 9, 1, 0, true);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+
+        // The queue of the cache is larger than a single entry, but only one buffer is cached.
+        allocateAndRelease(allocator, 1024, 4);
+        assertEquals(1, arena.numActiveSmallAllocations());
+
+        // The cached buffer is reused and the cache can take a buffer again.
+        allocateAndRelease(allocator, 1024, 2);
+        assertEquals(1, arena.numActiveSmallAllocations());
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(4, allocator.metric().directThreadCaches().get(0).numRejected());
+    }
+
+    private static void allocateAndRelease(ByteBufAllocator allocator, int size, int count) {
+        ByteBuf[] buffers = new ByteBuf[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = allocator.directBuffer(size);
+        }
+        for (ByteBuf buffer : buffers) {
+            assertTrue(buffer.release());
+        }
+    }
+
+    @Test
+    public void testDirectChunkAlignment() {
+        Assumptions.assumeTrue(PlatformDependent.hasUnsafe());
+        int alignment = 2 * 1024 * 1024;
+        // 16 MiB chunks, as the alignment may be at most 1/8 of the chunk size.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, false, 0, alignment);
+        ByteBuf buffer = allocator.directBuffer(1024);
+        try {
+            @SuppressWarnings("unchecked")
+            PooledByteBuf<ByteBuffer> pooled = (PooledByteBuf<ByteBuffer>) buffer;
+            assertEquals(0, PlatformDependent.directBufferAddress(pooled.memory) & alignment - 1);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testDirectChunkAlignmentMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            @Override
+            public void execute() {
+                new PooledByteBufAllocator(true, 0, 1, 8192, 9, 0, 0, false, 0, 3);
+            }
+        });
+    }
+
+    @Test
+    public void testDirectChunkAlignmentMustNotExceedEighthOfChunkSize() {
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            @Override
+            public void execute() {
+                // 4 MiB chunks, so 2 MiB would waste 50% of the direct memory.
+                new PooledByteBufAllocator(true, 0, 1, 8192, 9, 0, 0, false, 0, 2 * 1024 * 1024);
+            }
+        });
+    }
+
     @Test
     public void testPooledUnsafeHeapBufferAndUnsafeDirectBuffer() {
         PooledByteBufAllocator allocator = newAllocator(true);
@@ -895,6 +1037,76 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         }
     }
 
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void testConcurrentRetainReleaseFromEventLoopAndOtherThreads() throws Exception {
+        final int threads = 4;
+        final int iterations = 100000;
+        final PooledByteBufAllocator allocator = newAllocator(true);
+        final EventExecutor executor = new DefaultEventExecutor();
+        try {
+            // The buffer is allocated by an event loop, which hands one reference over to each thread.
+            final ByteBuf buffer = executor.submit(new Callable<ByteBuf>() {
+                @Override
+                public ByteBuf call() {
+                    return allocator.directBuffer(1024).retain(threads);
+                }
+            }).sync().getNow();
+
+            final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+            final AtomicInteger deallocations = new AtomicInteger();
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            Thread[] workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            for (int i = 0; i < iterations; i++) {
+                                buffer.retain(2);
+                                assertFalse(buffer.release());
+                                assertFalse(buffer.release());
+                            }
+                            if (buffer.release()) {
+                                deallocations.incrementAndGet();
+                            }
+                        } catch (Throwable cause) {
+                            error.compareAndSet(null, cause);
+                        }
+                    }
+                });
+                workers[i].start();
+            }
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int i = 0; i < iterations; i++) {
+                        buffer.retain();
+                        assertFalse(buffer.release());
+                    }
+                    if (buffer.release()) {
+                        deallocations.incrementAndGet();
+                    }
+                }
+            }).sync();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertNull(error.get());
+            // Exactly one thread released the last reference, and was told so by release().
+            assertEquals(1, deallocations.get());
+            assertEquals(0, buffer.refCnt());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
     /**
      * Returns an estimate of bytes used by currently in-use buffers
      */
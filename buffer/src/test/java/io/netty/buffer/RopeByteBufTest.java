@@ -0,0 +1,197 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.netty.buffer.Unpooled.EMPTY_BUFFER;
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RopeByteBufTest extends AbstractByteBufTest {
+
+    private static final ByteBufAllocator ALLOC = UnpooledByteBufAllocator.DEFAULT;
+
+    @Override
+    protected ByteBuf newBuffer(int length, int maxCapacity) {
+        Assumptions.assumeTrue(maxCapacity == Integer.MAX_VALUE);
+
+        RopeByteBuf buffer = new RopeByteBuf(ALLOC, false);
+        for (int i = 0; i < length + 45; i += 45) {
+            for (int j = 1; j <= 9; j++) {
+                buffer.addComponent(EMPTY_BUFFER);
+                buffer.addComponent(wrappedBuffer(new byte[j]));
+            }
+            buffer.addComponent(EMPTY_BUFFER);
+        }
+
+        // Truncate to the requested capacity.
+        buffer.capacity(length);
+
+        assertEquals(length, buffer.capacity());
+        assertEquals(0, buffer.readableBytes());
+        buffer.writerIndex(0);
+        return buffer;
+    }
+
+    // Like CompositeByteBuf, RopeByteBuf does not waste bandwidth on discardReadBytes.
+    @Override
+    protected boolean discardReadBytesDoesNotMoveWritableBytes() {
+        return false;
+    }
+
+    @Test
+    @Override
+    public void testInternalNioBuffer() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        try {
+            assertEquals(0, buf.internalNioBuffer(0, 0).remaining());
+
+            buf.addComponent(true, ALLOC.directBuffer().writeByte(1));
+            assertEquals(1, buf.internalNioBuffer(0, 1).remaining());
+
+            buf.addComponent(true, ALLOC.directBuffer().writeByte(2));
+            final RopeByteBuf multiple = buf;
+            assertThrows(UnsupportedOperationException.class, new Executable() {
+                @Override
+                public void execute() {
+                    multiple.internalNioBuffer(0, 2);
+                }
+            });
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testManyComponents() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                buf.addComponent(true, wrappedBuffer(new byte[] { (byte) i, (byte) (i >>> 8) }));
+            }
+            assertEquals(10000, buf.numComponents());
+            assertEquals(20000, buf.readableBytes());
+            for (int i = 0; i < 10000; i++) {
+                assertEquals((short) ((i & 0xff) << 8 | i >>> 8 & 0xff), buf.getShort(i * 2));
+                assertEquals(i * 2, buf.toByteIndex(i));
+                assertEquals(i, buf.toComponentIndex(i * 2 + 1));
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testInsertAndRemoveComponentInTheMiddle() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        try {
+            buf.addComponent(true, wrappedBuffer(new byte[] { 1, 2 }));
+            buf.addComponent(true, wrappedBuffer(new byte[] { 5, 6 }));
+            buf.addComponent(true, 1, wrappedBuffer(new byte[] { 3, 4 }));
+            assertEquals(3, buf.numComponents());
+            assertEquals(0x01020304, buf.getInt(0));
+            assertEquals(0x03040506, buf.getInt(2));
+            assertEquals(wrappedBuffer(new byte[] { 3, 4 }), buf.component(1));
+
+            ByteBuf removed = wrappedBuffer(new byte[] { 7 });
+            buf.addComponent(true, 1, removed);
+            buf.removeComponent(1);
+            assertEquals(0, removed.refCnt());
+            assertEquals(3, buf.numComponents());
+            assertEquals(6, buf.capacity());
+            assertEquals(0x01020304, buf.getInt(0));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testRemoveComponentTrimsIndices() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        try {
+            buf.addComponent(true, wrappedBuffer(new byte[] { 1, 2 }));
+            buf.addComponent(true, wrappedBuffer(new byte[] { 3, 4 }));
+            buf.readerIndex(3);
+            buf.removeComponent(1);
+            assertEquals(2, buf.readerIndex());
+            assertEquals(2, buf.writerIndex());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testDiscardReadComponents() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        try {
+            List<ByteBuf> components = new ArrayList<ByteBuf>();
+            for (int i = 0; i < 4; i++) {
+                ByteBuf component = wrappedBuffer(new byte[] { (byte) i, (byte) i });
+                components.add(component);
+                buf.addComponent(true, component);
+            }
+            buf.readerIndex(5);
+            buf.discardReadComponents();
+            assertEquals(2, buf.numComponents());
+            assertEquals(1, buf.readerIndex());
+            assertEquals(4, buf.writerIndex());
+            assertEquals(0, components.get(0).refCnt());
+            assertEquals(0, components.get(1).refCnt());
+            assertEquals(1, components.get(2).refCnt());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testAddComponentOwnership() {
+        final RopeByteBuf buf = new RopeByteBuf(ALLOC, false);
+        final ByteBuf component = wrappedBuffer(new byte[4]);
+        assertThrows(IndexOutOfBoundsException.class, new Executable() {
+            @Override
+            public void execute() {
+                buf.addComponent(2, component);
+            }
+        });
+        assertEquals(0, component.refCnt());
+        buf.release();
+    }
+
+    @Test
+    public void testIsDirect() {
+        RopeByteBuf buf = new RopeByteBuf(ALLOC, true);
+        try {
+            assertTrue(buf.isDirect());
+            buf.addComponent(ALLOC.directBuffer(4));
+            assertTrue(buf.isDirect());
+            buf.addComponent(ALLOC.heapBuffer(4));
+            assertFalse(buf.isDirect());
+            buf.removeComponent(1);
+            assertTrue(buf.isDirect());
+        } finally {
+            buf.release();
+        }
+    }
+}
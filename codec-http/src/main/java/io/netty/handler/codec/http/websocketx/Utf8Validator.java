@@ -36,7 +36,9 @@
 package io.netty.handler.codec.http.websocketx;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.ByteProcessor;
+import io.netty.util.CharsetUtil;
 
 /**
  * Checks UTF8 bytes for validity
@@ -69,12 +71,16 @@ final class Utf8Validator implements ByteProcessor {
     private boolean checking;
 
     public void check(ByteBuf buffer) {
-        checking = true;
-        buffer.forEachByte(this);
+        check(buffer, buffer.readerIndex(), buffer.readableBytes());
     }
 
     void check(ByteBuf buffer, int index, int length) {
         checking = true;
+        // Text is mostly ASCII, which ByteBufUtil checks a word at a time. This is only possible if no sequence
+        // of a previous buffer is incomplete.
+        if (state == UTF8_ACCEPT && ByteBufUtil.isText(buffer, index, length, CharsetUtil.US_ASCII)) {
+            return;
+        }
         buffer.forEachByte(index, length, this);
     }
 
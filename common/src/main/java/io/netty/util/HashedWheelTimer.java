@@ -118,6 +118,8 @@ public class HashedWheelTimer implements Timer {
     private final Executor taskExecutor;
 
     private volatile long startTime;
+    private volatile int expiredTimeoutsPerTick;
+    private volatile long tickLagNanos;
 
     /**
      * Creates a new timer with the default thread factory
@@ -466,6 +468,21 @@ public class HashedWheelTimer implements Timer {
         return pendingTimeouts.get();
     }
 
+    /**
+     * Returns the number of timeouts which expired in the last tick.
+     */
+    public int expiredTimeoutsPerTick() {
+        return expiredTimeoutsPerTick;
+    }
+
+    /**
+     * Returns the number of nanoseconds by which the last tick was processed after its deadline. A lag of more than a
+     * few milliseconds means that the worker thread is overloaded, or the {@link TimerTask}s block it.
+     */
+    public long tickLagNanos() {
+        return tickLagNanos;
+    }
+
     private static void reportTooManyInstances() {
         if (logger.isErrorEnabled()) {
             String resourceType = simpleClassName(HashedWheelTimer.class);
@@ -495,12 +512,13 @@ public class HashedWheelTimer implements Timer {
             do {
                 final long deadline = waitForNextTick();
                 if (deadline > 0) {
+                    tickLagNanos = deadline - tickDuration * (tick + 1);
                     int idx = (int) (tick & mask);
                     processCancelledTasks();
                     HashedWheelBucket bucket =
                             wheel[idx];
                     transferTimeoutsToBuckets();
-                    bucket.expireTimeouts(deadline);
+                    expiredTimeoutsPerTick = bucket.expireTimeouts(deadline);
                     tick++;
                 }
             } while (WORKER_STATE_UPDATER.get(HashedWheelTimer.this) == WORKER_STATE_STARTED);
@@ -694,9 +712,9 @@ public class HashedWheelTimer implements Timer {
             return state() == ST_EXPIRED;
         }
 
-        public void expire() {
+        public boolean expire() {
             if (!compareAndSetState(ST_INIT, ST_EXPIRED)) {
-                return;
+                return false;
             }
 
             try {
@@ -707,6 +725,7 @@ public class HashedWheelTimer implements Timer {
                             + " for execution.", t);
                 }
             }
+            return true;
         }
 
         @Override
@@ -777,8 +796,11 @@ public class HashedWheelTimer implements Timer {
 
         /**
          * Expire all {@link HashedWheelTimeout}s for the given {@code deadline}.
+         *
+         * @return the number of expired {@link HashedWheelTimeout}s
          */
-        public void expireTimeouts(long deadline) {
+        public int expireTimeouts(long deadline) {
+            int expired = 0;
             HashedWheelTimeout timeout = head;
 
             // process all timeouts
@@ -787,7 +809,9 @@ public class HashedWheelTimer implements Timer {
                 if (timeout.remainingRounds <= 0) {
                     next = remove(timeout);
                     if (timeout.deadline <= deadline) {
-                        timeout.expire();
+                        if (timeout.expire()) {
+                            expired++;
+                        }
                     } else {
                         // The timeout was placed into a wrong slot. This should never happen.
                         throw new IllegalStateException(String.format(
@@ -800,6 +824,7 @@ public class HashedWheelTimer implements Timer {
                 }
                 timeout = next;
             }
+            return expired;
         }
 
         public HashedWheelTimeout remove(HashedWheelTimeout timeout) {
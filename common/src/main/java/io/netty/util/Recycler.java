@@ -16,6 +16,7 @@
 package io.netty.util;
 
 import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.LongCounter;
 import io.netty.util.internal.ObjectPool;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
@@ -23,7 +24,10 @@ import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import org.jctools.queues.MessagePassingQueue;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -33,6 +37,12 @@ import static java.lang.Math.min;
 
 /**
  * Light-weight object pool based on a thread-local stack.
+ * <p>
+ * Objects which are recycled by the thread that owns the pool are kept in a small thread-local magazine. Objects
+ * which are recycled by other threads are handed over through a queue, which the owning thread drains in batches of
+ * {@code chunkSize} objects. If magazines are enabled, the other threads also collect the objects they recycle in
+ * magazines of {@code chunkSize} objects, and hand over a magazine at once when it is full. This is worth it if most
+ * objects are recycled by other threads, as each handover then only touches the queue once.
  *
  * @param <T> the type of the pooled object
  */
@@ -54,6 +64,12 @@ public abstract class Recycler<T> {
     private static final int RATIO;
     private static final int DEFAULT_QUEUE_CHUNK_SIZE_PER_THREAD;
     private static final boolean BLOCKING_POOL;
+    private static final boolean USE_MAGAZINES;
+    // The number of pools a thread keeps a magazine for, the magazine of the least recently used pool is handed over
+    // if the thread recycles objects of more pools.
+    private static final int MAX_MAGAZINES_PER_THREAD = 16;
+    // The number of hits after which a thread adds its hits to the counter of the Recycler.
+    private static final int HITS_PUBLISH_INTERVAL = 64;
 
     static {
         // In the future, we might have different maxCapacity for different object types.
@@ -74,6 +90,7 @@ public abstract class Recycler<T> {
         RATIO = max(0, SystemPropertyUtil.getInt("io.netty.recycler.ratio", 8));
 
         BLOCKING_POOL = SystemPropertyUtil.getBoolean("io.netty.recycler.blocking", false);
+        USE_MAGAZINES = SystemPropertyUtil.getBoolean("io.netty.recycler.magazines", false);
 
         if (logger.isDebugEnabled()) {
             if (DEFAULT_MAX_CAPACITY_PER_THREAD == 0) {
@@ -81,30 +98,47 @@ public abstract class Recycler<T> {
                 logger.debug("-Dio.netty.recycler.ratio: disabled");
                 logger.debug("-Dio.netty.recycler.chunkSize: disabled");
                 logger.debug("-Dio.netty.recycler.blocking: disabled");
+                logger.debug("-Dio.netty.recycler.magazines: disabled");
             } else {
                 logger.debug("-Dio.netty.recycler.maxCapacityPerThread: {}", DEFAULT_MAX_CAPACITY_PER_THREAD);
                 logger.debug("-Dio.netty.recycler.ratio: {}", RATIO);
                 logger.debug("-Dio.netty.recycler.chunkSize: {}", DEFAULT_QUEUE_CHUNK_SIZE_PER_THREAD);
                 logger.debug("-Dio.netty.recycler.blocking: {}", BLOCKING_POOL);
+                logger.debug("-Dio.netty.recycler.magazines: {}", USE_MAGAZINES);
             }
         }
     }
 
+    private static final FastThreadLocal<MagazineCache> MAGAZINES_CACHE = new FastThreadLocal<MagazineCache>() {
+        @Override
+        protected MagazineCache initialValue() {
+            return new MagazineCache();
+        }
+
+        @Override
+        protected void onRemoval(MagazineCache value) throws Exception {
+            super.onRemoval(value);
+            value.handOverAll();
+        }
+    };
+
     private final int maxCapacityPerThread;
     private final int interval;
     private final int chunkSize;
+    private final boolean magazines;
+    private final LongCounter hits = PlatformDependent.newLongCounter();
+    private final LongCounter misses = PlatformDependent.newLongCounter();
+    private final LongCounter drops = PlatformDependent.newLongCounter();
     private final FastThreadLocal<LocalPool<T>> threadLocal = new FastThreadLocal<LocalPool<T>>() {
         @Override
         protected LocalPool<T> initialValue() {
-            return new LocalPool<T>(maxCapacityPerThread, interval, chunkSize);
+            return new LocalPool<T>(Recycler.this, maxCapacityPerThread, interval, chunkSize);
         }
 
         @Override
         protected void onRemoval(LocalPool<T> value) throws Exception {
             super.onRemoval(value);
-            MessagePassingQueue<DefaultHandle<T>> handles = value.pooledHandles;
-            value.pooledHandles = null;
-            handles.clear();
+            value.remove();
         }
     };
 
@@ -149,7 +183,20 @@ public abstract class Recycler<T> {
     }
 
     protected Recycler(int maxCapacityPerThread, int ratio, int chunkSize) {
+        this(maxCapacityPerThread, ratio, chunkSize, USE_MAGAZINES);
+    }
+
+    /**
+     * @param maxCapacityPerThread the maximum number of objects that are pooled per thread
+     * @param ratio                the interval at which objects that were not pooled before are pooled
+     * @param chunkSize            the number of objects that are handed over between threads at once
+     * @param magazines            {@code true} if other threads should hand over the objects they recycle in
+     *                             magazines of {@code chunkSize} objects instead of one by one. Objects stay in the
+     *                             magazine of the other thread until it is full.
+     */
+    protected Recycler(int maxCapacityPerThread, int ratio, int chunkSize, boolean magazines) {
         interval = max(0, ratio);
+        this.magazines = magazines;
         if (maxCapacityPerThread <= 0) {
             this.maxCapacityPerThread = 0;
             this.chunkSize = 0;
@@ -195,8 +242,31 @@ public abstract class Recycler<T> {
         return true;
     }
 
+    /**
+     * Returns the number of times {@link #get()} returned a pooled object. Each thread adds its hits in batches, so
+     * the most recent hits may not be included yet.
+     */
+    public long numHits() {
+        return hits.value();
+    }
+
+    /**
+     * Returns the number of times {@link #get()} created a new object because no pooled object was available.
+     */
+    public long numMisses() {
+        return misses.value();
+    }
+
+    /**
+     * Returns the number of recycled objects which were dropped because the pool was full or its thread was gone.
+     */
+    public long numDrops() {
+        return drops.value();
+    }
+
     final int threadLocalSize() {
-        return threadLocal.get().pooledHandles.size();
+        LocalPool<T> localPool = threadLocal.get();
+        return localPool.batch.size() + localPool.pooledHandles.size();
     }
 
     protected abstract T newObject(Handle<T> handle);
@@ -254,14 +324,25 @@ public abstract class Recycler<T> {
         }
     }
 
-    private static final class LocalPool<T> {
+    private static final class LocalPool<T> implements MessagePassingQueue.Consumer<DefaultHandle<T>> {
+        private final Recycler<T> recycler;
         private final int ratioInterval;
+        private final int chunkSize;
+        // Only accessed by the owner thread.
+        private final ArrayDeque<DefaultHandle<T>> batch;
+        // Weak so the thread can be collected while objects of the pool are still referenced.
+        private volatile WeakReference<Thread> owner;
         private volatile MessagePassingQueue<DefaultHandle<T>> pooledHandles;
         private int ratioCounter;
+        private int pendingHits;
 
         @SuppressWarnings("unchecked")
-        LocalPool(int maxCapacity, int ratioInterval, int chunkSize) {
+        LocalPool(Recycler<T> recycler, int maxCapacity, int ratioInterval, int chunkSize) {
+            this.recycler = recycler;
             this.ratioInterval = ratioInterval;
+            this.chunkSize = chunkSize;
+            batch = new ArrayDeque<DefaultHandle<T>>(chunkSize);
+            owner = new WeakReference<Thread>(Thread.currentThread());
             if (BLOCKING_POOL) {
                 pooledHandles = new BlockingMessageQueue<DefaultHandle<T>>(maxCapacity);
             } else {
@@ -277,33 +358,177 @@ public abstract class Recycler<T> {
             }
             DefaultHandle<T> handle;
             do {
-                handle = handles.relaxedPoll();
-            } while (handle != null && !handle.availableToClaim());
+                handle = batch.pollLast();
+                if (handle == null) {
+                    // Take over the objects that were recycled by other threads in one go.
+                    if (handles.drain(this, chunkSize) == 0) {
+                        return null;
+                    }
+                    handle = batch.pollLast();
+                }
+            } while (!handle.availableToClaim());
+            if (++pendingHits == HITS_PUBLISH_INTERVAL) {
+                publishHits();
+            }
             return handle;
         }
 
+        @Override
+        public void accept(DefaultHandle<T> handle) {
+            batch.addLast(handle);
+        }
+
         void release(DefaultHandle<T> handle) {
-            MessagePassingQueue<DefaultHandle<T>> handles = pooledHandles;
             handle.toAvailable();
-            if (handles != null) {
-                handles.relaxedOffer(handle);
+            WeakReference<Thread> owner = this.owner;
+            if (owner != null && owner.get() == Thread.currentThread()) {
+                if (batch.size() < chunkSize) {
+                    batch.addLast(handle);
+                    return;
+                }
+            } else if (recycler.magazines) {
+                MAGAZINES_CACHE.get().magazine(this).add(handle);
+                return;
+            }
+            MessagePassingQueue<DefaultHandle<T>> handles = pooledHandles;
+            if (handles == null || !handles.relaxedOffer(handle)) {
+                recycler.drops.increment();
             }
         }
 
         DefaultHandle<T> newHandle() {
+            publishHits();
+            recycler.misses.increment();
             if (++ratioCounter >= ratioInterval) {
                 ratioCounter = 0;
                 return new DefaultHandle<T>(this);
             }
             return null;
         }
+
+        private void publishHits() {
+            if (pendingHits != 0) {
+                recycler.hits.add(pendingHits);
+                pendingHits = 0;
+            }
+        }
+
+        void remove() {
+            publishHits();
+            owner = null;
+            MessagePassingQueue<DefaultHandle<T>> handles = pooledHandles;
+            pooledHandles = null;
+            handles.clear();
+            batch.clear();
+        }
+    }
+
+    /**
+     * The magazines of a thread for the pools of other threads.
+     */
+    @SuppressWarnings("serial")
+    private static final class MagazineCache extends LinkedHashMap<LocalPool<?>, Magazine<?>> {
+        private LocalPool<?> lastPool;
+        private Magazine<?> lastMagazine;
+
+        MagazineCache() {
+            super(MAX_MAGAZINES_PER_THREAD, 0.75f, true);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> Magazine<T> magazine(LocalPool<T> pool) {
+            if (lastPool == pool) {
+                return (Magazine<T>) lastMagazine;
+            }
+            Magazine<T> magazine = (Magazine<T>) get(pool);
+            if (magazine == null) {
+                magazine = new Magazine<T>(pool);
+                put(pool, magazine);
+            }
+            lastPool = pool;
+            lastMagazine = magazine;
+            return magazine;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalPool<?>, Magazine<?>> eldest) {
+            if (size() <= MAX_MAGAZINES_PER_THREAD) {
+                return false;
+            }
+            eldest.getValue().handOver();
+            if (lastPool == eldest.getKey()) {
+                lastPool = null;
+                lastMagazine = null;
+            }
+            return true;
+        }
+
+        void handOverAll() {
+            for (Magazine<?> magazine : values()) {
+                magazine.handOver();
+            }
+            clear();
+            lastPool = null;
+            lastMagazine = null;
+        }
+    }
+
+    /**
+     * Collects the objects that a thread recycles for the pool of another thread, and hands them over to the pool
+     * with a single {@link MessagePassingQueue#fill(MessagePassingQueue.Supplier, int)} once it is full.
+     */
+    private static final class Magazine<T> implements MessagePassingQueue.Supplier<DefaultHandle<T>> {
+        private final LocalPool<T> pool;
+        private final DefaultHandle<T>[] handles;
+        private int size;
+        private int index;
+
+        @SuppressWarnings("unchecked")
+        Magazine(LocalPool<T> pool) {
+            this.pool = pool;
+            handles = new DefaultHandle[pool.chunkSize];
+        }
+
+        void add(DefaultHandle<T> handle) {
+            handles[size++] = handle;
+            if (size == handles.length) {
+                handOver();
+            }
+        }
+
+        void handOver() {
+            if (size == 0) {
+                return;
+            }
+            MessagePassingQueue<DefaultHandle<T>> queue = pool.pooledHandles;
+            if (queue != null) {
+                // A fill may stop early at the end of a chunk of the queue.
+                int filled;
+                do {
+                    filled = queue.fill(this, size - index);
+                } while (filled > 0 && index < size);
+            }
+            if (index < size) {
+                pool.recycler.drops.add(size - index);
+            }
+            for (int i = 0; i < size; i++) {
+                handles[i] = null;
+            }
+            size = 0;
+            index = 0;
+        }
+
+        @Override
+        public DefaultHandle<T> get() {
+            return handles[index++];
+        }
     }
 
     /**
      * This is an implementation of {@link MessagePassingQueue}, similar to what might be returned from
      * {@link PlatformDependent#newMpscQueue(int)}, but intended to be used for debugging purpose.
      * The implementation relies on synchronised monitor locks for thread-safety.
-     * The {@code drain} and {@code fill} bulk operations are not supported by this implementation.
+     * Only the bounded {@code drain} and {@code fill} bulk operations are supported by this implementation.
      */
     private static final class BlockingMessageQueue<T> implements MessagePassingQueue<T> {
         private final Queue<T> deque;
@@ -377,13 +602,25 @@ public abstract class Recycler<T> {
         }
 
         @Override
-        public int drain(Consumer<T> c, int limit) {
-            throw new UnsupportedOperationException();
+        public synchronized int drain(Consumer<T> c, int limit) {
+            int i = 0;
+            for (; i < limit; i++) {
+                T e = deque.poll();
+                if (e == null) {
+                    break;
+                }
+                c.accept(e);
+            }
+            return i;
         }
 
         @Override
-        public int fill(Supplier<T> s, int limit) {
-            throw new UnsupportedOperationException();
+        public synchronized int fill(Supplier<T> s, int limit) {
+            int n = min(limit, maxCapacity - deque.size());
+            for (int i = 0; i < n; i++) {
+                deque.offer(s.get());
+            }
+            return n;
         }
 
         @Override
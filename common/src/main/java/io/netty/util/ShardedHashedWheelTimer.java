@@ -0,0 +1,117 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * A {@link Timer} which spreads its timeouts over several {@link HashedWheelTimer}s, each with its own worker thread
+ * and queues. Use it instead of a single {@link HashedWheelTimer} if so many timeouts are created or cancelled that
+ * its worker thread falls behind, which shows in its {@link HashedWheelTimer#tickLagNanos()}.
+ * <p>
+ * All timeouts that a thread creates go to the same shard, so the threads that create timeouts do not contend on the
+ * same queues. {@link Timeout#timer()} returns the {@link HashedWheelTimer} of the shard. Like a
+ * {@link HashedWheelTimer}, a single instance should be shared across the application.
+ */
+public final class ShardedHashedWheelTimer implements Timer {
+
+    private final HashedWheelTimer[] shards;
+    private final List<HashedWheelTimer> shardList;
+
+    /**
+     * Creates a new timer with the default thread factory ({@link Executors#defaultThreadFactory()}), default tick
+     * duration, default number of ticks per wheel, and one shard per available processor, but at most 8.
+     */
+    public ShardedHashedWheelTimer() {
+        this(Math.min(NettyRuntime.availableProcessors(), 8));
+    }
+
+    /**
+     * Creates a new timer with the default thread factory ({@link Executors#defaultThreadFactory()}), default tick
+     * duration and default number of ticks per wheel.
+     *
+     * @param shards the number of {@link HashedWheelTimer}s
+     */
+    public ShardedHashedWheelTimer(int shards) {
+        this(Executors.defaultThreadFactory(), 100, TimeUnit.MILLISECONDS, 512, shards);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory a {@link ThreadFactory} that creates the worker threads of the shards
+     * @param tickDuration  the duration between tick
+     * @param unit          the time unit of the {@code tickDuration}
+     * @param ticksPerWheel the size of the wheel of each shard
+     * @param shards        the number of {@link HashedWheelTimer}s
+     */
+    public ShardedHashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel,
+                                   int shards) {
+        checkNotNull(threadFactory, "threadFactory");
+        checkPositive(shards, "shards");
+        this.shards = new HashedWheelTimer[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new HashedWheelTimer(threadFactory, tickDuration, unit, ticksPerWheel);
+        }
+        shardList = Collections.unmodifiableList(Arrays.asList(this.shards));
+    }
+
+    @Override
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        return shard().newTimeout(task, delay, unit);
+    }
+
+    private HashedWheelTimer shard() {
+        return shards[(int) (Thread.currentThread().getId() % shards.length)];
+    }
+
+    @Override
+    public Set<Timeout> stop() {
+        Set<Timeout> unprocessed = new HashSet<Timeout>();
+        for (HashedWheelTimer shard : shards) {
+            unprocessed.addAll(shard.stop());
+        }
+        return Collections.unmodifiableSet(unprocessed);
+    }
+
+    /**
+     * Returns the number of pending timeouts of all shards.
+     */
+    public long pendingTimeouts() {
+        long pending = 0;
+        for (HashedWheelTimer shard : shards) {
+            pending += shard.pendingTimeouts();
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the {@link HashedWheelTimer}s of the shards, which provide the metrics per shard.
+     */
+    public List<HashedWheelTimer> shards() {
+        return shardList;
+    }
+}
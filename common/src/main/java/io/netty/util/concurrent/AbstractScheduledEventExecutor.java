@@ -18,6 +18,7 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.DefaultPriorityQueue;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PriorityQueue;
+import io.netty.util.internal.SystemPropertyUtil;
 
 import java.util.Comparator;
 import java.util.Queue;
@@ -28,7 +29,7 @@ import java.util.concurrent.TimeUnit;
  * Abstract base class for {@link EventExecutor}s that want to support scheduling.
  */
 public abstract class AbstractScheduledEventExecutor extends AbstractEventExecutor {
-    private static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
+    static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
             new Comparator<ScheduledFutureTask<?>>() {
                 @Override
                 public int compare(ScheduledFutureTask<?> o1, ScheduledFutureTask<?> o2) {
@@ -38,6 +39,9 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
 
     private static final long START_TIME = System.nanoTime();
 
+    private static final boolean DEFAULT_TIMING_WHEEL =
+            SystemPropertyUtil.getBoolean("io.netty.eventexecutor.timingWheel", false);
+
     static final Runnable WAKEUP_TASK = new Runnable() {
        @Override
        public void run() { } // Do nothing
@@ -47,6 +51,8 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
 
     long nextTaskId;
 
+    private volatile boolean timingWheel = DEFAULT_TIMING_WHEEL;
+
     protected AbstractScheduledEventExecutor() {
     }
 
@@ -104,12 +110,47 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
         return START_TIME;
     }
 
+    /**
+     * Sets if the scheduled tasks are kept in a hierarchical timing wheel instead of a binary heap. The timing wheel
+     * adds and removes tasks in constant time, which pays off with many outstanding timeouts, for example if every
+     * channel has an idle or read timeout. The default is {@code false}, unless the
+     * {@code io.netty.eventexecutor.timingWheel} system property is set.
+     * <p>
+     * The scheduled tasks are moved to the new queue the next time a task is scheduled or cancelled.
+     */
+    public void setTimingWheelEnabled(boolean timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Returns {@code true} if the scheduled tasks are kept in a hierarchical timing wheel.
+     *
+     * @see #setTimingWheelEnabled(boolean)
+     */
+    public boolean isTimingWheelEnabled() {
+        return timingWheel;
+    }
+
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue() {
-        if (scheduledTaskQueue == null) {
-            scheduledTaskQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
-                    SCHEDULED_FUTURE_TASK_COMPARATOR,
-                    // Use same initial capacity as java.util.PriorityQueue
-                    11);
+        PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
+        if (scheduledTaskQueue == null || scheduledTaskQueue instanceof ScheduledTaskTimingWheel != timingWheel) {
+            PriorityQueue<ScheduledFutureTask<?>> newQueue;
+            if (timingWheel) {
+                newQueue = new ScheduledTaskTimingWheel(this);
+            } else {
+                newQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                        SCHEDULED_FUTURE_TASK_COMPARATOR,
+                        // Use same initial capacity as java.util.PriorityQueue
+                        11);
+            }
+            if (scheduledTaskQueue != null) {
+                ScheduledFutureTask<?>[] scheduledTasks = scheduledTaskQueue.toArray(new ScheduledFutureTask<?>[0]);
+                scheduledTaskQueue.clear();
+                for (ScheduledFutureTask<?> task : scheduledTasks) {
+                    newQueue.add(task);
+                }
+            }
+            this.scheduledTaskQueue = scheduledTaskQueue = newQueue;
         }
         return scheduledTaskQueue;
     }
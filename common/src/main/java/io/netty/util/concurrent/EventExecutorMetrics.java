@@ -0,0 +1,261 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link EventExecutorMetricsListener} which collects the timings in histograms, whose {@link #snapshot()} can be
+ * queried by any thread. Recording a timing does not allocate, so it can stay enabled in production:
+ * <pre>
+ * EventExecutorMetrics metrics = new EventExecutorMetrics();
+ * ((SingleThreadEventExecutor) eventLoop).setMetricsListener(metrics);
+ * ...
+ * long p99 = metrics.snapshot().taskQueueDelay().valueAtPercentile(99);
+ * </pre>
+ * The same instance may be used by several executors to collect their timings together.
+ */
+@UnstableApi
+public final class EventExecutorMetrics implements EventExecutorMetricsListener {
+
+    private final AtomicHistogram ioTime = new AtomicHistogram();
+    private final AtomicHistogram taskTime = new AtomicHistogram();
+    private final AtomicHistogram taskQueueDelay = new AtomicHistogram();
+    private final AtomicHistogram scheduledTaskLateness = new AtomicHistogram();
+    private final AtomicHistogram idleTime = new AtomicHistogram();
+
+    @Override
+    public void taskExecuted(SingleThreadEventExecutor executor, long taskNanos) {
+        taskTime.record(taskNanos);
+    }
+
+    @Override
+    public void scheduledTaskLateness(SingleThreadEventExecutor executor, long latenessNanos) {
+        scheduledTaskLateness.record(latenessNanos);
+    }
+
+    @Override
+    public void taskQueueDelay(SingleThreadEventExecutor executor, long delayNanos) {
+        taskQueueDelay.record(delayNanos);
+    }
+
+    @Override
+    public void ioProcessed(SingleThreadEventExecutor executor, long ioNanos) {
+        ioTime.record(ioNanos);
+    }
+
+    @Override
+    public void wokenUp(SingleThreadEventExecutor executor, long idleNanos) {
+        idleTime.record(idleNanos);
+    }
+
+    /**
+     * Returns a copy of the timings collected so far.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(ioTime.snapshot(), taskTime.snapshot(), taskQueueDelay.snapshot(),
+                scheduledTaskLateness.snapshot(), idleTime.snapshot());
+    }
+
+    /**
+     * The timings of an {@link EventExecutorMetrics} at some point in time.
+     */
+    public static final class Snapshot {
+        private final Histogram ioTime;
+        private final Histogram taskTime;
+        private final Histogram taskQueueDelay;
+        private final Histogram scheduledTaskLateness;
+        private final Histogram idleTime;
+
+        Snapshot(Histogram ioTime, Histogram taskTime, Histogram taskQueueDelay, Histogram scheduledTaskLateness,
+                 Histogram idleTime) {
+            this.ioTime = ioTime;
+            this.taskTime = taskTime;
+            this.taskQueueDelay = taskQueueDelay;
+            this.scheduledTaskLateness = scheduledTaskLateness;
+            this.idleTime = idleTime;
+        }
+
+        /**
+         * Returns the times it took to process the ready I/O events.
+         */
+        public Histogram ioTime() {
+            return ioTime;
+        }
+
+        /**
+         * Returns the times it took to run the tasks.
+         */
+        public Histogram taskTime() {
+            return taskTime;
+        }
+
+        /**
+         * Returns the sampled times the tasks waited in the task queue.
+         */
+        public Histogram taskQueueDelay() {
+            return taskQueueDelay;
+        }
+
+        /**
+         * Returns how late the scheduled tasks were run.
+         */
+        public Histogram scheduledTaskLateness() {
+            return scheduledTaskLateness;
+        }
+
+        /**
+         * Returns the times the event loop waited for I/O or tasks, whose {@link Histogram#count()} is the number of
+         * wakeups.
+         */
+        public Histogram idleTime() {
+            return idleTime;
+        }
+
+        /**
+         * Returns the number of times the event loop was woken up after waiting for I/O or tasks.
+         */
+        public long wakeups() {
+            return idleTime.count();
+        }
+
+        @Override
+        public String toString() {
+            return "EventExecutorMetrics.Snapshot(ioTime: " + ioTime +
+                    ", taskTime: " + taskTime +
+                    ", taskQueueDelay: " + taskQueueDelay +
+                    ", scheduledTaskLateness: " + scheduledTaskLateness +
+                    ", idleTime: " + idleTime + ')';
+        }
+    }
+
+    /**
+     * A histogram of nanoseconds with a bucket per power of two, so a value is known within a factor of two.
+     */
+    public static final class Histogram {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Histogram(long[] buckets, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of the recorded values.
+         */
+        public long totalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Returns the mean of the recorded values, or {@code 0} if none was recorded.
+         */
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Returns the largest recorded value.
+         */
+        public long maxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns an upper bound of the value below which the given percentage of the recorded values are, which is
+         * at most twice the actual value.
+         *
+         * @param percentile a percentage between {@code 0} and {@code 100}
+         */
+        public long valueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile: " + percentile + " (expected: 0-100)");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(AtomicHistogram.upperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "(count: " + count + ", mean: " + meanNanos() + "ns, p50: " + valueAtPercentile(50) +
+                    "ns, p99: " + valueAtPercentile(99) + "ns, max: " + maxNanos + "ns)";
+        }
+    }
+
+    private static final class AtomicHistogram {
+        // Bucket i contains the values with i significant bits, so bucket 0 only contains 0.
+        private static final int BUCKETS = Long.SIZE;
+        private static final int TOTAL = BUCKETS;
+        private static final int MAX = BUCKETS + 1;
+
+        private final AtomicLongArray values = new AtomicLongArray(BUCKETS + 2);
+
+        static long upperBound(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                // Only possible if the clock is not monotonic.
+                nanos = 0;
+            }
+            values.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+            values.addAndGet(TOTAL, nanos);
+            long max;
+            while (nanos > (max = values.get(MAX))) {
+                if (values.compareAndSet(MAX, max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        Histogram snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = values.get(i);
+            }
+            return new Histogram(buckets, values.get(TOTAL), values.get(MAX));
+        }
+    }
+}
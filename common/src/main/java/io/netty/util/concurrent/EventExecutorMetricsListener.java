@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Receives the timings of a {@link SingleThreadEventExecutor}, see
+ * {@link SingleThreadEventExecutor#setMetricsListener(EventExecutorMetricsListener)}.
+ * <p>
+ * The methods are called by the thread of the executor, so they must be cheap and must not block.
+ * {@link EventExecutorMetrics} collects the timings in histograms.
+ */
+@UnstableApi
+public interface EventExecutorMetricsListener {
+
+    /**
+     * Called after a task was run by {@link SingleThreadEventExecutor#runAllTasks()} or one of its variants.
+     *
+     * @param taskNanos the time it took to run the task
+     */
+    void taskExecuted(SingleThreadEventExecutor executor, long taskNanos);
+
+    /**
+     * Called before a {@link ScheduledFuture} is run, which is late by {@code latenessNanos} because the executor was
+     * busy.
+     */
+    void scheduledTaskLateness(SingleThreadEventExecutor executor, long latenessNanos);
+
+    /**
+     * Called with the time a task waited in the task queue before it was run. The delay is sampled about once per
+     * millisecond rather than measured for each task.
+     */
+    void taskQueueDelay(SingleThreadEventExecutor executor, long delayNanos);
+
+    /**
+     * Called by event loops which process I/O after they processed the ready I/O events.
+     *
+     * @param ioNanos the time it took to process the I/O events
+     */
+    void ioProcessed(SingleThreadEventExecutor executor, long ioNanos);
+
+    /**
+     * Called by event loops which wait for I/O or tasks once they were woken up.
+     *
+     * @param idleNanos the time the event loop was waiting
+     */
+    void wokenUp(SingleThreadEventExecutor executor, long idleNanos);
+}
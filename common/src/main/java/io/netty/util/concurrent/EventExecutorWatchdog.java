@@ -0,0 +1,312 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detects {@link SingleThreadEventExecutor}s which are blocked, for example by a handler which calls blocking code,
+ * and reports the stack trace of their thread to a {@link Listener}, which logs it by default.
+ * <p>
+ * The watchdog thread adds a small task to each watched executor about twice per {@code blockedThreshold}. If the
+ * task did not run within {@code blockedThreshold}, because the executor is still running an earlier task or I/O
+ * event, the stack trace of the executor's thread is captured once and reported, together with the class of the
+ * task it is running. At most one stack trace is captured per {@code minReportInterval} for all executors, so the
+ * watchdog stays cheap even if all of them are blocked. Nothing is added to the code path of the executors.
+ * <p>
+ * Watching an executor starts its thread, if it was not started yet.
+ */
+@UnstableApi
+public final class EventExecutorWatchdog {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(EventExecutorWatchdog.class);
+
+    private static final String RUN_TASK_CLASS = AbstractEventExecutor.class.getName();
+    // Wrap the tasks of submit() and schedule(), so the task is run by one of their frames.
+    private static final String PROMISE_TASK_CLASS = PromiseTask.class.getName();
+    private static final String SCHEDULED_FUTURE_TASK_CLASS = ScheduledFutureTask.class.getName();
+
+    /**
+     * Receives the reports of an {@link EventExecutorWatchdog}.
+     */
+    public interface Listener {
+        /**
+         * Called by the watchdog thread when the {@code executor} is blocked.
+         *
+         * @param executor      the blocked executor
+         * @param blockedNanos  the time since the executor was asked to run a task of the watchdog
+         * @param taskClassName the name of the class of the task which the executor is running, or {@code null} if
+         *                      it is not running a task, for example because it is processing I/O events
+         * @param stackTrace    the stack trace of the thread of the executor
+         */
+        void blocked(SingleThreadEventExecutor executor, long blockedNanos, String taskClassName,
+                     StackTraceElement[] stackTrace);
+    }
+
+    private static final Listener LOGGING_LISTENER = new Listener() {
+        @Override
+        public void blocked(SingleThreadEventExecutor executor, long blockedNanos, String taskClassName,
+                            StackTraceElement[] stackTrace) {
+            if (logger.isWarnEnabled()) {
+                BlockedEventExecutorStackTrace trace = new BlockedEventExecutorStackTrace();
+                trace.setStackTrace(stackTrace);
+                logger.warn("{} is blocked for {} ms while running the task {}", executor,
+                        TimeUnit.NANOSECONDS.toMillis(blockedNanos), taskClassName, trace);
+            }
+        }
+    };
+
+    private final List<Heartbeat> heartbeats = new CopyOnWriteArrayList<Heartbeat>();
+    private final ThreadFactory threadFactory;
+    private final long blockedThresholdNanos;
+    private final long minReportIntervalNanos;
+    private final Listener listener;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean stopped;
+    private long lastReportNanos;
+
+    /**
+     * Creates a new instance which logs the stack traces of the blocked executors, at most once per second.
+     *
+     * @param blockedThreshold the time after which an executor which did not run a task of the watchdog is blocked
+     * @param unit             the unit of {@code blockedThreshold}
+     */
+    public EventExecutorWatchdog(long blockedThreshold, TimeUnit unit) {
+        this(blockedThreshold, unit.convert(1, TimeUnit.SECONDS), unit, LOGGING_LISTENER);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param blockedThreshold  the time after which an executor which did not run a task of the watchdog is blocked
+     * @param minReportInterval the minimal time between two stack traces which are captured and reported
+     * @param unit              the unit of {@code blockedThreshold} and {@code minReportInterval}
+     * @param listener          the {@link Listener} which receives the reports
+     */
+    public EventExecutorWatchdog(long blockedThreshold, long minReportInterval, TimeUnit unit, Listener listener) {
+        this(new DefaultThreadFactory("eventExecutorWatchdog", true, Thread.MIN_PRIORITY, null),
+                blockedThreshold, minReportInterval, unit, listener);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threadFactory     the {@link ThreadFactory} which creates the watchdog thread
+     * @param blockedThreshold  the time after which an executor which did not run a task of the watchdog is blocked
+     * @param minReportInterval the minimal time between two stack traces which are captured and reported
+     * @param unit              the unit of {@code blockedThreshold} and {@code minReportInterval}
+     * @param listener          the {@link Listener} which receives the reports
+     */
+    public EventExecutorWatchdog(ThreadFactory threadFactory, long blockedThreshold, long minReportInterval,
+                                 TimeUnit unit, Listener listener) {
+        this.threadFactory = ObjectUtil.checkNotNull(threadFactory, "threadFactory");
+        ObjectUtil.checkNotNull(unit, "unit");
+        blockedThresholdNanos = Math.max(unit.toNanos(ObjectUtil.checkPositive(blockedThreshold, "blockedThreshold")),
+                TimeUnit.MILLISECONDS.toNanos(2));
+        minReportIntervalNanos = unit.toNanos(ObjectUtil.checkPositiveOrZero(minReportInterval, "minReportInterval"));
+        this.listener = ObjectUtil.checkNotNull(listener, "listener");
+    }
+
+    /**
+     * Watches the {@link SingleThreadEventExecutor}s of the given {@link EventExecutorGroup}.
+     */
+    public void watch(EventExecutorGroup group) {
+        for (EventExecutor executor : ObjectUtil.checkNotNull(group, "group")) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                watch((SingleThreadEventExecutor) executor);
+            }
+        }
+    }
+
+    /**
+     * Watches the given {@link SingleThreadEventExecutor} until it is terminated or {@link #unwatch} is called.
+     */
+    public void watch(SingleThreadEventExecutor executor) {
+        ObjectUtil.checkNotNull(executor, "executor");
+        if (stopped) {
+            throw new IllegalStateException("watchdog stopped");
+        }
+        synchronized (heartbeats) {
+            if (find(executor) == null) {
+                heartbeats.add(new Heartbeat(executor));
+            }
+        }
+        if (started.compareAndSet(false, true)) {
+            threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    watchLoop();
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Stops watching the {@link SingleThreadEventExecutor}s of the given {@link EventExecutorGroup}.
+     */
+    public void unwatch(EventExecutorGroup group) {
+        for (EventExecutor executor : ObjectUtil.checkNotNull(group, "group")) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                unwatch((SingleThreadEventExecutor) executor);
+            }
+        }
+    }
+
+    /**
+     * Stops watching the given {@link SingleThreadEventExecutor}.
+     */
+    public void unwatch(SingleThreadEventExecutor executor) {
+        Heartbeat heartbeat = find(ObjectUtil.checkNotNull(executor, "executor"));
+        if (heartbeat != null) {
+            heartbeats.remove(heartbeat);
+        }
+    }
+
+    /**
+     * Stops watching all executors and stops the watchdog thread.
+     */
+    public void stop() {
+        stopped = true;
+        heartbeats.clear();
+    }
+
+    private Heartbeat find(SingleThreadEventExecutor executor) {
+        for (Heartbeat heartbeat : heartbeats) {
+            if (heartbeat.executor == executor) {
+                return heartbeat;
+            }
+        }
+        return null;
+    }
+
+    private void watchLoop() {
+        long intervalMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(blockedThresholdNanos / 2));
+        while (!stopped) {
+            for (Heartbeat heartbeat : heartbeats) {
+                try {
+                    heartbeat.check();
+                } catch (Throwable t) {
+                    logger.warn("Unexpected exception while watching {}", heartbeat.executor, t);
+                }
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException ignore) {
+                // Ignore
+            }
+        }
+    }
+
+    private boolean tryReport(long nanoTime) {
+        if (lastReportNanos != 0 && nanoTime - lastReportNanos < minReportIntervalNanos) {
+            return false;
+        }
+        // Never 0, so the first report is always allowed.
+        lastReportNanos = nanoTime == 0 ? 1 : nanoTime;
+        return true;
+    }
+
+    /**
+     * Returns the name of the class of the task which the thread is running, which is the first frame above the
+     * frame of {@link AbstractEventExecutor#runTask(Runnable)} that is not part of a {@link PromiseTask}.
+     */
+    static String taskClassName(StackTraceElement[] stackTrace) {
+        for (int i = stackTrace.length - 1; i > 0; i--) {
+            StackTraceElement element = stackTrace[i];
+            if (RUN_TASK_CLASS.equals(element.getClassName()) && "runTask".equals(element.getMethodName())) {
+                String className = null;
+                for (int j = i - 1; j >= 0; j--) {
+                    className = stackTrace[j].getClassName();
+                    if (!className.startsWith(PROMISE_TASK_CLASS) && !className.equals(SCHEDULED_FUTURE_TASK_CLASS)) {
+                        break;
+                    }
+                }
+                return className;
+            }
+        }
+        return null;
+    }
+
+    private final class Heartbeat implements Runnable {
+        final SingleThreadEventExecutor executor;
+        // Only accessed by the watchdog thread.
+        private long submittedNanos;
+        private boolean reported;
+        private volatile boolean pending;
+        private volatile Thread thread;
+
+        Heartbeat(SingleThreadEventExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            pending = false;
+        }
+
+        void check() {
+            long nanoTime = System.nanoTime();
+            if (!pending) {
+                if (executor.isShutdown()) {
+                    heartbeats.remove(this);
+                    return;
+                }
+                submittedNanos = nanoTime;
+                reported = false;
+                pending = true;
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    heartbeats.remove(this);
+                }
+                return;
+            }
+            long blockedNanos = nanoTime - submittedNanos;
+            Thread thread = this.thread;
+            if (reported || blockedNanos < blockedThresholdNanos || thread == null || !tryReport(nanoTime)) {
+                return;
+            }
+            reported = true;
+            StackTraceElement[] stackTrace = thread.getStackTrace();
+            listener.blocked(executor, blockedNanos, taskClassName(stackTrace), stackTrace);
+        }
+    }
+
+    private static final class BlockedEventExecutorStackTrace extends Throwable {
+        private static final long serialVersionUID = 5376505475627519553L;
+
+        BlockedEventExecutorStackTrace() {
+            super("Stack trace of the blocked thread");
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            // The stack trace is the one of the blocked thread.
+            return this;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link EventExecutorGroup} which runs the tasks of the same key in order, for example all tasks of a user which
+ * may be connected by several channels, while the tasks of different keys run in parallel on the threads of a
+ * shared {@link EventExecutorGroup}.
+ * <p>
+ * Each key is hashed to one of a fixed number of lanes. A lane is an {@link OrderedEventExecutor} which queues its
+ * tasks and is run as a task of the shared group while it has tasks, like {@link NonStickyEventExecutorGroup}. Unlike
+ * the latter, a lane is not bound to one executor of the shared group, but runs on whichever executor
+ * {@link EventExecutorGroup#next()} returns each time, so busy lanes are spread over all threads. A lane gives up its
+ * thread after {@code maxTaskExecutePerRun} tasks, so a busy key cannot starve the others. Keys which are hashed to
+ * the same lane are run in order with each other, so there should be many more lanes than threads. Lanes are created
+ * when they are used first, so thousands of keys are cheap and no thread is dedicated to a key.
+ * <pre>
+ * KeyedOrderedEventExecutorGroup group = new KeyedOrderedEventExecutorGroup(new DefaultEventExecutorGroup(16));
+ * ...
+ * group.execute(userId, task);
+ * </pre>
+ * The methods of {@link EventExecutorGroup} which do not take a key use the lanes in turn, except the schedule
+ * methods which are run by the shared group without ordering guarantees.
+ */
+@UnstableApi
+public final class KeyedOrderedEventExecutorGroup extends AbstractEventExecutorGroup {
+
+    // Lanes are rarely busy, so use small chunks.
+    private static final int LANE_QUEUE_CHUNK_SIZE = 64;
+    private static final int LANE_QUEUE_CAPACITY = 1 << 30;
+
+    private final EventExecutorGroup group;
+    private final AtomicReferenceArray<Lane> lanes;
+    private final int laneMask;
+    private final int maxTaskExecutePerRun;
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final AtomicInteger activeLanes = new AtomicInteger();
+    private final LongCounter executedTasks = PlatformDependent.newLongCounter();
+    private final LongCounter yieldedRuns = PlatformDependent.newLongCounter();
+
+    /**
+     * Creates a new instance with {@code 1024} lanes, which give up their thread after {@code 1024} tasks.
+     *
+     * @param group the {@link EventExecutorGroup} which runs the lanes
+     */
+    public KeyedOrderedEventExecutorGroup(EventExecutorGroup group) {
+        this(group, 1024, 1024);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param group                the {@link EventExecutorGroup} which runs the lanes
+     * @param lanes                the number of lanes, which is rounded up to a power of two
+     * @param maxTaskExecutePerRun the maximum number of tasks a lane runs before it gives up its thread
+     */
+    public KeyedOrderedEventExecutorGroup(EventExecutorGroup group, int lanes, int maxTaskExecutePerRun) {
+        this.group = ObjectUtil.checkNotNull(group, "group");
+        this.lanes = new AtomicReferenceArray<Lane>(
+                MathUtil.safeFindNextPositivePowerOfTwo(ObjectUtil.checkPositive(lanes, "lanes")));
+        laneMask = this.lanes.length() - 1;
+        this.maxTaskExecutePerRun = ObjectUtil.checkPositive(maxTaskExecutePerRun, "maxTaskExecutePerRun");
+    }
+
+    /**
+     * Returns the {@link OrderedEventExecutor} which runs the tasks of the given key.
+     */
+    public EventExecutor executor(Object key) {
+        return lane(index(ObjectUtil.checkNotNull(key, "key")));
+    }
+
+    /**
+     * Runs the given task after the tasks which were added for the same key before.
+     */
+    public void execute(Object key, Runnable task) {
+        executor(key).execute(task);
+    }
+
+    /**
+     * Runs the given task after the tasks which were added for the same key before.
+     */
+    public <T> Future<T> submit(Object key, Callable<T> task) {
+        return executor(key).submit(task);
+    }
+
+    /**
+     * Returns the number of tasks which were run so far.
+     */
+    public long executedTasks() {
+        return executedTasks.value();
+    }
+
+    /**
+     * Returns the number of tasks which wait to be run.
+     */
+    public int pendingTasks() {
+        int pendingTasks = 0;
+        for (int i = 0; i < lanes.length(); i++) {
+            Lane lane = lanes.get(i);
+            if (lane != null) {
+                pendingTasks += lane.tasks.size();
+            }
+        }
+        return pendingTasks;
+    }
+
+    /**
+     * Returns the number of tasks which wait to be run in the lane of the given key, including the tasks of other
+     * keys which are hashed to the same lane.
+     */
+    public int pendingTasks(Object key) {
+        Lane lane = lanes.get(index(ObjectUtil.checkNotNull(key, "key")));
+        return lane == null ? 0 : lane.tasks.size();
+    }
+
+    /**
+     * Returns the number of lanes which have tasks to run, or are running them.
+     */
+    public int activeLanes() {
+        return activeLanes.get();
+    }
+
+    /**
+     * Returns the number of times a lane gave up its thread after running {@code maxTaskExecutePerRun} tasks, which
+     * indicates keys with more tasks than one thread can run.
+     */
+    public long yieldedRuns() {
+        return yieldedRuns.value();
+    }
+
+    private int index(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ hash >>> 16) & laneMask;
+    }
+
+    private Lane lane(int index) {
+        Lane lane = lanes.get(index);
+        if (lane == null) {
+            Lane newLane = new Lane();
+            if (lanes.compareAndSet(index, null, newLane)) {
+                lane = newLane;
+            } else {
+                lane = lanes.get(index);
+            }
+        }
+        return lane;
+    }
+
+    @Override
+    public EventExecutor next() {
+        return lane(nextLane.getAndIncrement() & laneMask);
+    }
+
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        List<EventExecutor> executors = new ArrayList<EventExecutor>(lanes.length());
+        for (int i = 0; i < lanes.length(); i++) {
+            executors.add(lane(i));
+        }
+        return Collections.unmodifiableList(executors).iterator();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return group.schedule(command, delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return group.schedule(callable, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return group.scheduleAtFixedRate(command, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return group.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return group.isShuttingDown();
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        return group.shutdownGracefully(quietPeriod, timeout, unit);
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return group.terminationFuture();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void shutdown() {
+        group.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return group.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return group.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return group.awaitTermination(timeout, unit);
+    }
+
+    private final class Lane extends AbstractEventExecutor implements Runnable, OrderedEventExecutor {
+        private static final int NONE = 0;
+        private static final int SUBMITTED = 1;
+        private static final int RUNNING = 2;
+
+        final Queue<Runnable> tasks = PlatformDependent.newMpscQueue(LANE_QUEUE_CHUNK_SIZE, LANE_QUEUE_CAPACITY);
+        private final AtomicInteger state = new AtomicInteger();
+
+        Lane() {
+            super(KeyedOrderedEventExecutorGroup.this);
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(SUBMITTED, RUNNING)) {
+                return;
+            }
+            for (;;) {
+                int i = 0;
+                try {
+                    for (; i < maxTaskExecutePerRun; i++) {
+                        Runnable task = tasks.poll();
+                        if (task == null) {
+                            break;
+                        }
+                        safeExecute(task);
+                    }
+                } finally {
+                    executedTasks.add(i);
+                    if (i == maxTaskExecutePerRun) {
+                        yieldedRuns.increment();
+                        try {
+                            state.set(SUBMITTED);
+                            group.next().execute(this);
+                            return; // done
+                        } catch (Throwable ignore) {
+                            // Keep on running the tasks, most likely the task queue of the executor is full.
+                            state.set(RUNNING);
+                        }
+                    } else {
+                        state.set(NONE);
+                        activeLanes.decrementAndGet();
+                        // A task may have been added between tasks.poll() and state.set(NONE) by a producer which
+                        // did not see NONE, so it did not submit the lane. See NonStickyEventExecutorGroup.
+                        if (tasks.isEmpty() || !state.compareAndSet(NONE, RUNNING)) {
+                            return; // done
+                        }
+                        activeLanes.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!tasks.offer(ObjectUtil.checkNotNull(command, "command"))) {
+                throw new RejectedExecutionException();
+            }
+            if (state.compareAndSet(NONE, SUBMITTED)) {
+                activeLanes.incrementAndGet();
+                try {
+                    group.next().execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The next execute(...) will try again.
+                    state.set(NONE);
+                    activeLanes.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public boolean inEventLoop(Thread thread) {
+            return false;
+        }
+
+        @Override
+        public boolean inEventLoop() {
+            return false;
+        }
+
+        @Override
+        public boolean isShuttingDown() {
+            return group.isShuttingDown();
+        }
+
+        @Override
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            return group.shutdownGracefully(quietPeriod, timeout, unit);
+        }
+
+        @Override
+        public Future<?> terminationFuture() {
+            return group.terminationFuture();
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void shutdown() {
+            group.shutdown();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return group.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return group.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return group.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -150,6 +150,19 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
         return children.length;
     }
 
+    /**
+     * Sets if the child executors keep their scheduled tasks in a hierarchical timing wheel instead of a binary heap.
+     *
+     * @see AbstractScheduledEventExecutor#setTimingWheelEnabled(boolean)
+     */
+    public void setTimingWheelEnabled(boolean timingWheel) {
+        for (EventExecutor e: children) {
+            if (e instanceof AbstractScheduledEventExecutor) {
+                ((AbstractScheduledEventExecutor) e).setTimingWheelEnabled(timingWheel);
+            }
+        }
+    }
+
     /**
      * Create a new EventExecutor which will later then accessible via the {@link #next()}  method. This method will be
      * called for each thread that will serve this {@link MultithreadEventExecutorGroup}.
@@ -34,6 +34,13 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
 
     private int queueIndex = INDEX_NOT_IN_QUEUE;
 
+    static final int WHEEL_BUCKET_NONE = -1;
+
+    // Only used by ScheduledTaskTimingWheel.
+    ScheduledFutureTask<?> wheelPrev;
+    ScheduledFutureTask<?> wheelNext;
+    int wheelBucket = WHEEL_BUCKET_NONE;
+
     ScheduledFutureTask(AbstractScheduledEventExecutor executor,
             Runnable runnable, long nanoTime) {
 
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.DefaultPriorityQueue;
+import io.netty.util.internal.PriorityQueue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link PriorityQueue} for the {@link ScheduledFutureTask}s of an {@link AbstractScheduledEventExecutor}, which
+ * keeps the tasks in a hierarchical timing wheel so they can be added and removed in constant time.
+ * <p>
+ * The deadlines are grouped into ticks of about a millisecond. The wheel has {@link #LEVELS} levels of
+ * {@link #SLOTS} buckets, and a task is linked into the bucket of the highest group of 6 bits of its tick that differs
+ * from the current tick. Buckets are moved to the lower levels as the current tick follows the time of the executor,
+ * until the tasks of the current tick end up in a small binary heap which orders them exactly. If the heap is empty,
+ * the earliest task of the first non-empty bucket is returned, which is cached per bucket.
+ * <p>
+ * This class is not thread-safe and must only be used by the thread of the executor.
+ */
+final class ScheduledTaskTimingWheel extends AbstractQueue<ScheduledFutureTask<?>>
+        implements PriorityQueue<ScheduledFutureTask<?>> {
+
+    // A tick is 2^20 nanoseconds, which is about a millisecond.
+    private static final int TICK_SHIFT = 20;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    // Enough levels for the ticks of all non-negative deadlines.
+    private static final int LEVELS = (Long.SIZE - 1 - TICK_SHIFT + SLOT_BITS - 1) / SLOT_BITS;
+
+    private final AbstractScheduledEventExecutor executor;
+    // The tasks of the current tick and before, ordered exactly.
+    private final DefaultPriorityQueue<ScheduledFutureTask<?>> heap =
+            new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                    AbstractScheduledEventExecutor.SCHEDULED_FUTURE_TASK_COMPARATOR, 11);
+    private final ScheduledFutureTask<?>[] buckets = new ScheduledFutureTask<?>[LEVELS * SLOTS];
+    // The earliest task of each bucket, or null if it is not known.
+    private final ScheduledFutureTask<?>[] earliest = new ScheduledFutureTask<?>[LEVELS * SLOTS];
+    // A bit for each non-empty bucket per level.
+    private final long[] occupied = new long[LEVELS];
+    private long currentTick;
+    private int wheelSize;
+
+    ScheduledTaskTimingWheel(AbstractScheduledEventExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean offer(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket != ScheduledFutureTask.WHEEL_BUCKET_NONE) {
+            throw new IllegalArgumentException("task already in the timing wheel");
+        }
+        if (isEmpty()) {
+            // Nothing depends on the current tick, so it can be moved freely.
+            currentTick = executor.getCurrentTimeNanos() >> TICK_SHIFT;
+        }
+        insert(task);
+        return true;
+    }
+
+    @Override
+    public ScheduledFutureTask<?> peek() {
+        if (wheelSize == 0) {
+            return heap.peek();
+        }
+        advance(executor.getCurrentTimeNanos() >> TICK_SHIFT);
+        ScheduledFutureTask<?> task = heap.peek();
+        if (task != null) {
+            return task;
+        }
+        return earliest(firstBucket());
+    }
+
+    @Override
+    public ScheduledFutureTask<?> poll() {
+        ScheduledFutureTask<?> task = peek();
+        if (task == null) {
+            return null;
+        }
+        if (task.wheelBucket == ScheduledFutureTask.WHEEL_BUCKET_NONE) {
+            heap.poll();
+        } else {
+            unlink(task);
+        }
+        return task;
+    }
+
+    @Override
+    public int size() {
+        return heap.size() + wheelSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return wheelSize == 0 && heap.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof ScheduledFutureTask && containsTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean containsTyped(ScheduledFutureTask<?> task) {
+        return task.wheelBucket != ScheduledFutureTask.WHEEL_BUCKET_NONE || heap.containsTyped(task);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof ScheduledFutureTask && removeTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean removeTyped(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket != ScheduledFutureTask.WHEEL_BUCKET_NONE) {
+            unlink(task);
+            return true;
+        }
+        return heap.removeTyped(task);
+    }
+
+    @Override
+    public void priorityChanged(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket != ScheduledFutureTask.WHEEL_BUCKET_NONE) {
+            unlink(task);
+            insert(task);
+        } else {
+            heap.priorityChanged(task);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            ScheduledFutureTask<?> task = buckets[bucket];
+            while (task != null) {
+                ScheduledFutureTask<?> next = task.wheelNext;
+                task.wheelPrev = null;
+                task.wheelNext = null;
+                task.wheelBucket = ScheduledFutureTask.WHEEL_BUCKET_NONE;
+                task = next;
+            }
+        }
+        heap.clear();
+        clearIgnoringIndexes();
+    }
+
+    @Override
+    public void clearIgnoringIndexes() {
+        Arrays.fill(buckets, null);
+        Arrays.fill(earliest, null);
+        Arrays.fill(occupied, 0);
+        wheelSize = 0;
+        heap.clearIgnoringIndexes();
+    }
+
+    @Override
+    public Iterator<ScheduledFutureTask<?>> iterator() {
+        List<ScheduledFutureTask<?>> tasks = new ArrayList<ScheduledFutureTask<?>>(size());
+        tasks.addAll(heap);
+        for (ScheduledFutureTask<?> head : buckets) {
+            for (ScheduledFutureTask<?> task = head; task != null; task = task.wheelNext) {
+                tasks.add(task);
+            }
+        }
+        return tasks.iterator();
+    }
+
+    private static long tick(ScheduledFutureTask<?> task) {
+        return task.deadlineNanos() >> TICK_SHIFT;
+    }
+
+    private void insert(ScheduledFutureTask<?> task) {
+        long tick = tick(task);
+        if (tick <= currentTick) {
+            heap.add(task);
+            return;
+        }
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(tick ^ currentTick)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            // Only possible for a clock with negative values.
+            heap.add(task);
+            return;
+        }
+        int slot = (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+        int bucket = level * SLOTS + slot;
+        ScheduledFutureTask<?> head = buckets[bucket];
+        if (head == null) {
+            occupied[level] |= 1L << slot;
+            earliest[bucket] = task;
+        } else {
+            head.wheelPrev = task;
+            ScheduledFutureTask<?> first = earliest[bucket];
+            if (first != null && task.compareTo(first) < 0) {
+                earliest[bucket] = task;
+            }
+        }
+        task.wheelNext = head;
+        task.wheelBucket = bucket;
+        buckets[bucket] = task;
+        wheelSize++;
+    }
+
+    private void unlink(ScheduledFutureTask<?> task) {
+        int bucket = task.wheelBucket;
+        ScheduledFutureTask<?> prev = task.wheelPrev;
+        ScheduledFutureTask<?> next = task.wheelNext;
+        if (prev == null) {
+            buckets[bucket] = next;
+            if (next == null) {
+                occupied[bucket >>> SLOT_BITS] &= ~(1L << (bucket & SLOT_MASK));
+            }
+        } else {
+            prev.wheelNext = next;
+        }
+        if (next != null) {
+            next.wheelPrev = prev;
+        }
+        if (earliest[bucket] == task) {
+            // Found again when it is needed.
+            earliest[bucket] = null;
+        }
+        task.wheelPrev = null;
+        task.wheelNext = null;
+        task.wheelBucket = ScheduledFutureTask.WHEEL_BUCKET_NONE;
+        wheelSize--;
+    }
+
+    /**
+     * Returns the first non-empty bucket, which contains the earliest task of the wheel.
+     */
+    private int firstBucket() {
+        for (int level = 0; level < LEVELS; level++) {
+            long bits = occupied[level];
+            if (bits != 0) {
+                return level * SLOTS + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    private ScheduledFutureTask<?> earliest(int bucket) {
+        ScheduledFutureTask<?> first = earliest[bucket];
+        if (first == null) {
+            first = buckets[bucket];
+            for (ScheduledFutureTask<?> task = first.wheelNext; task != null; task = task.wheelNext) {
+                if (task.compareTo(first) < 0) {
+                    first = task;
+                }
+            }
+            earliest[bucket] = first;
+        }
+        return first;
+    }
+
+    /**
+     * Moves the current tick forward to {@code tick}, and moves the buckets that start until then to the lower levels
+     * or the heap.
+     */
+    private void advance(long tick) {
+        while (wheelSize != 0) {
+            int bucket = firstBucket();
+            int shift = (bucket >>> SLOT_BITS) * SLOT_BITS;
+            long start = (currentTick & -(1L << (shift + SLOT_BITS))) | ((long) (bucket & SLOT_MASK) << shift);
+            if (start > tick) {
+                break;
+            }
+            currentTick = start;
+            ScheduledFutureTask<?> task = buckets[bucket];
+            buckets[bucket] = null;
+            earliest[bucket] = null;
+            occupied[bucket >>> SLOT_BITS] &= ~(1L << (bucket & SLOT_MASK));
+            while (task != null) {
+                ScheduledFutureTask<?> next = task.wheelNext;
+                task.wheelPrev = null;
+                task.wheelNext = null;
+                task.wheelBucket = ScheduledFutureTask.WHEEL_BUCKET_NONE;
+                wheelSize--;
+                insert(task);
+                task = next;
+            }
+        }
+        if (tick > currentTick) {
+            currentTick = tick;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
@@ -69,6 +70,13 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         }
     };
 
+    private static final long QUEUE_DELAY_SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // The number of priority tasks that are run in a row while other tasks are pending.
+    private static final int MAX_CONSECUTIVE_PRIORITY_TASKS = Math.max(1,
+            SystemPropertyUtil.getInt("io.netty.eventexecutor.maxConsecutivePriorityTasks", 16));
+    private static final int PRIORITY_TASK_QUEUE_CHUNK_SIZE = 16;
+
     private static final AtomicIntegerFieldUpdater<SingleThreadEventExecutor> STATE_UPDATER =
             AtomicIntegerFieldUpdater.newUpdater(SingleThreadEventExecutor.class, "state");
     private static final AtomicReferenceFieldUpdater<SingleThreadEventExecutor, ThreadProperties> PROPERTIES_UPDATER =
@@ -76,6 +84,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                     SingleThreadEventExecutor.class, ThreadProperties.class, "threadProperties");
 
     private final Queue<Runnable> taskQueue;
+    private final Queue<Runnable> priorityTaskQueue;
+    private int consecutivePriorityTasks;
 
     private volatile Thread thread;
     @SuppressWarnings("unused")
@@ -100,6 +110,9 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
     private final Promise<?> terminationFuture = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE);
 
+    private volatile EventExecutorMetricsListener metricsListener;
+    private final QueueDelayProbe queueDelayProbe = new QueueDelayProbe();
+
     /**
      * Create a new instance
      *
@@ -159,6 +172,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         this.maxPendingTasks = Math.max(16, maxPendingTasks);
         this.executor = ThreadExecutorMap.apply(executor, this);
         taskQueue = newTaskQueue(this.maxPendingTasks);
+        priorityTaskQueue = newPriorityTaskQueue(this.maxPendingTasks);
         rejectedExecutionHandler = ObjectUtil.checkNotNull(rejectedHandler, "rejectedHandler");
     }
 
@@ -170,6 +184,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         this.maxPendingTasks = DEFAULT_MAX_PENDING_EXECUTOR_TASKS;
         this.executor = ThreadExecutorMap.apply(executor, this);
         this.taskQueue = ObjectUtil.checkNotNull(taskQueue, "taskQueue");
+        priorityTaskQueue = newPriorityTaskQueue(maxPendingTasks);
         this.rejectedExecutionHandler = ObjectUtil.checkNotNull(rejectedHandler, "rejectedHandler");
     }
 
@@ -191,6 +206,12 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         return new LinkedBlockingQueue<Runnable>(maxPendingTasks);
     }
 
+    private static Queue<Runnable> newPriorityTaskQueue(int maxPendingTasks) {
+        // Priority tasks are rare, so use small chunks. The capacity must be a power of two which fits an int.
+        return PlatformDependent.newMpscQueue(PRIORITY_TASK_QUEUE_CHUNK_SIZE,
+                Math.max(2 * PRIORITY_TASK_QUEUE_CHUNK_SIZE, Math.min(maxPendingTasks, 1 << 30)));
+    }
+
     /**
      * Interrupt the current running {@link Thread}.
      */
@@ -208,7 +229,38 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      */
     protected Runnable pollTask() {
         assert inEventLoop();
-        return pollTaskFrom(taskQueue);
+        return pollTaskWithPriority();
+    }
+
+    private Runnable pollTaskWithPriority() {
+        Runnable task = pollPriorityTask();
+        if (task == null) {
+            task = pollTaskFrom(taskQueue);
+            if (task == null) {
+                // Only priority tasks are left, if any.
+                return priorityTaskQueue.poll();
+            }
+            consecutivePriorityTasks = 0;
+        }
+        return task;
+    }
+
+    /**
+     * Polls a task added by {@link #executePriority(Runnable)}, unless {@link #MAX_CONSECUTIVE_PRIORITY_TASKS} of
+     * them were run in a row and other tasks are pending.
+     */
+    private Runnable pollPriorityTask() {
+        if (consecutivePriorityTasks >= MAX_CONSECUTIVE_PRIORITY_TASKS) {
+            if (!taskQueue.isEmpty()) {
+                return null;
+            }
+            consecutivePriorityTasks = 0;
+        }
+        Runnable task = priorityTaskQueue.poll();
+        if (task != null) {
+            consecutivePriorityTasks++;
+        }
+        return task;
     }
 
     protected static Runnable pollTaskFrom(Queue<Runnable> taskQueue) {
@@ -237,13 +289,20 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
         BlockingQueue<Runnable> taskQueue = (BlockingQueue<Runnable>) this.taskQueue;
         for (;;) {
+            Runnable priorityTask = pollPriorityTask();
+            if (priorityTask != null) {
+                return priorityTask;
+            }
             ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
             if (scheduledTask == null) {
                 Runnable task = null;
                 try {
                     task = taskQueue.take();
                     if (task == WAKEUP_TASK) {
-                        task = null;
+                        // executePriority(...) wakes up the thread via the task queue.
+                        task = priorityTaskQueue.poll();
+                    } else {
+                        consecutivePriorityTasks = 0;
                     }
                 } catch (InterruptedException e) {
                     // Ignore
@@ -270,6 +329,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 }
 
                 if (task != null) {
+                    consecutivePriorityTasks = 0;
                     return task;
                 }
             }
@@ -306,8 +366,9 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         if (scheduledTask == null) {
             return false;
         }
+        EventExecutorMetricsListener metricsListener = this.metricsListener;
         do {
-            safeExecute(scheduledTask);
+            safeExecute(scheduledTask, metricsListener);
         } while ((scheduledTask = pollScheduledTask(nanoTime)) != null);
         return true;
     }
@@ -325,14 +386,14 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      */
     protected boolean hasTasks() {
         assert inEventLoop();
-        return !taskQueue.isEmpty();
+        return !taskQueue.isEmpty() || !priorityTaskQueue.isEmpty();
     }
 
     /**
      * Return the number of tasks that are pending for processing.
      */
     public int pendingTasks() {
-        return taskQueue.size();
+        return taskQueue.size() + priorityTaskQueue.size();
     }
 
     /**
@@ -372,7 +433,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
         do {
             fetchedAll = fetchFromScheduledTaskQueue();
-            if (runAllTasksFrom(taskQueue)) {
+            if (runAllTasksWithPriority()) {
                 ranAtLeastOne = true;
             }
         } while (!fetchedAll); // keep on processing until we fetched all scheduled tasks.
@@ -399,7 +460,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         do {
             // We must run the taskQueue tasks first, because the scheduled tasks from outside the EventLoop are queued
             // here because the taskQueue is thread safe and the scheduledTaskQueue is not thread safe.
-            ranAtLeastOneTask = runExistingTasksFrom(taskQueue) | executeExpiredScheduledTasks();
+            ranAtLeastOneTask = runExistingTasksFrom(priorityTaskQueue) | runExistingTasksFrom(taskQueue) |
+                    executeExpiredScheduledTasks();
         } while (ranAtLeastOneTask && ++drainAttempt < maxDrainAttempts);
 
         if (drainAttempt > 0) {
@@ -422,8 +484,9 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         if (task == null) {
             return false;
         }
+        EventExecutorMetricsListener metricsListener = this.metricsListener;
         for (;;) {
-            safeExecute(task);
+            safeExecute(task, metricsListener);
             task = pollTaskFrom(taskQueue);
             if (task == null) {
                 return true;
@@ -431,6 +494,21 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         }
     }
 
+    /**
+     * Runs all tasks from the task queue, and the tasks added by {@link #executePriority(Runnable)} before them.
+     */
+    private boolean runAllTasksWithPriority() {
+        Runnable task = pollTaskWithPriority();
+        if (task == null) {
+            return false;
+        }
+        EventExecutorMetricsListener metricsListener = this.metricsListener;
+        do {
+            safeExecute(task, metricsListener);
+        } while ((task = pollTaskWithPriority()) != null);
+        return true;
+    }
+
     /**
      * What ever tasks are present in {@code taskQueue} when this method is invoked will be {@link Runnable#run()}.
      * @param taskQueue the task queue to drain.
@@ -442,11 +520,12 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             return false;
         }
         int remaining = Math.min(maxPendingTasks, taskQueue.size());
-        safeExecute(task);
+        EventExecutorMetricsListener metricsListener = this.metricsListener;
+        safeExecute(task, metricsListener);
         // Use taskQueue.poll() directly rather than pollTaskFrom() since the latter may
         // silently consume more than one item from the queue (skips over WAKEUP_TASK instances)
         while (remaining-- > 0 && (task = taskQueue.poll()) != null) {
-            safeExecute(task);
+            safeExecute(task, metricsListener);
         }
         return true;
     }
@@ -464,10 +543,11 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         }
 
         final long deadline = timeoutNanos > 0 ? getCurrentTimeNanos() + timeoutNanos : 0;
+        final EventExecutorMetricsListener metricsListener = this.metricsListener;
         long runTasks = 0;
         long lastExecutionTime;
         for (;;) {
-            safeExecute(task);
+            safeExecute(task, metricsListener);
 
             runTasks ++;
 
@@ -492,6 +572,45 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         return true;
     }
 
+    /**
+     * Runs the task like {@link #safeExecute(Runnable)}, and reports its timings if {@code metricsListener} is not
+     * {@code null}.
+     */
+    private void safeExecute(Runnable task, EventExecutorMetricsListener metricsListener) {
+        if (metricsListener == null || task == queueDelayProbe) {
+            safeExecute(task);
+            return;
+        }
+        long startNanos = getCurrentTimeNanos();
+        if (task instanceof ScheduledFutureTask) {
+            // Not late if it was submitted from outside the executor, and only added to the scheduled tasks now.
+            long latenessNanos = startNanos - ((ScheduledFutureTask<?>) task).deadlineNanos();
+            if (latenessNanos >= 0) {
+                metricsListener.scheduledTaskLateness(this, latenessNanos);
+            }
+        }
+        safeExecute(task);
+        metricsListener.taskExecuted(this, getCurrentTimeNanos() - startNanos);
+    }
+
+    /**
+     * Sets the {@link EventExecutorMetricsListener} which receives the timings of this executor, or {@code null} to
+     * stop measuring them, which is the default. The timings are measured by {@link #runAllTasks()} and its variants,
+     * and by the event loops which process I/O.
+     */
+    @UnstableApi
+    public void setMetricsListener(EventExecutorMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Returns the {@link EventExecutorMetricsListener} of this executor, or {@code null} if none is set.
+     */
+    @UnstableApi
+    public EventExecutorMetricsListener metricsListener() {
+        return metricsListener;
+    }
+
     /**
      * Invoked before returning from {@link #runAllTasks()} and {@link #runAllTasks(long)}.
      */
@@ -831,15 +950,42 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         execute(ObjectUtil.checkNotNull(task, "task"), false);
     }
 
+    /**
+     * Executes the given task before the tasks added by {@link #execute(Runnable)}, for example to run latency
+     * sensitive control work while the executor is busy with a burst of other tasks. The priority tasks are run in
+     * the order they were added, but not in order with the other tasks.
+     * <p>
+     * To not starve the other tasks, at most {@code io.netty.eventexecutor.maxConsecutivePriorityTasks} (16 by
+     * default) priority tasks are run in a row while other tasks are pending.
+     */
+    @UnstableApi
+    public void executePriority(Runnable task) {
+        ObjectUtil.checkNotNull(task, "task");
+        if (isShutdown()) {
+            reject();
+        }
+        if (!priorityTaskQueue.offer(task)) {
+            reject(task);
+        }
+        execute(task, true, true);
+    }
+
     private void execute(Runnable task, boolean immediate) {
-        boolean inEventLoop = inEventLoop();
         addTask(task);
+        if (metricsListener != null) {
+            queueDelayProbe.offerIfDue();
+        }
+        execute(task, immediate, false);
+    }
+
+    private void execute(Runnable task, boolean immediate, boolean priority) {
+        boolean inEventLoop = inEventLoop();
         if (!inEventLoop) {
             startThread();
             if (isShutdown()) {
                 boolean reject = false;
                 try {
-                    if (removeTask(task)) {
+                    if (priority ? priorityTaskQueue.remove(task) : removeTask(task)) {
                         reject = true;
                     }
                 } catch (UnsupportedOperationException e) {
@@ -853,7 +999,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             }
         }
 
-        if (!addTaskWakesUp && immediate) {
+        // Adding a priority task does not wake up executors which block on the task queue.
+        if ((!addTaskWakesUp || priority) && immediate) {
             wakeup(inEventLoop);
         }
     }
@@ -1067,7 +1214,10 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     final int drainTasks() {
         int numTasks = 0;
         for (;;) {
-            Runnable runnable = taskQueue.poll();
+            Runnable runnable = priorityTaskQueue.poll();
+            if (runnable == null) {
+                runnable = taskQueue.poll();
+            }
             if (runnable == null) {
                 break;
             }
@@ -1127,4 +1277,34 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             return t.isAlive();
         }
     }
+
+    /**
+     * Added to the task queue right after a task about once per millisecond, to measure how long the task waits.
+     */
+    private final class QueueDelayProbe extends AtomicBoolean implements Runnable {
+        private static final long serialVersionUID = -3906011418399926011L;
+
+        private volatile long lastSampleNanos;
+        private long offerNanos;
+
+        void offerIfDue() {
+            long nanoTime = getCurrentTimeNanos();
+            if (nanoTime - lastSampleNanos >= QUEUE_DELAY_SAMPLE_INTERVAL_NANOS && compareAndSet(false, true)) {
+                lastSampleNanos = nanoTime;
+                offerNanos = nanoTime;
+                if (!taskQueue.offer(this)) {
+                    set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            EventExecutorMetricsListener metricsListener = SingleThreadEventExecutor.this.metricsListener;
+            if (metricsListener != null) {
+                metricsListener.taskQueueDelay(SingleThreadEventExecutor.this, getCurrentTimeNanos() - offerNanos);
+            }
+            set(false);
+        }
+    }
 }
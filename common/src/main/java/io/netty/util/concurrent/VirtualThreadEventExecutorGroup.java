@@ -0,0 +1,354 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EventExecutorGroup} which runs the tasks on virtual threads, so handlers which block, for example on a JDBC
+ * call, can be used with {@code ChannelPipeline.addLast(group, handler)} without sizing a thread pool.
+ * <p>
+ * Each call of {@link #next()} returns a new {@link OrderedEventExecutor}, so the tasks of a channel are still run one
+ * after another, in order. An executor does not own a thread: whenever it has tasks, it runs them on a new virtual
+ * thread, which ends once the tasks are done or {@code maxTaskExecutePerRun} tasks were run. Scheduled tasks are run
+ * by the executor as well, the {@link GlobalEventExecutor} only wakes it up.
+ * <p>
+ * Virtual threads require Java 21 or later, see {@link #isVirtualThreadSupported()}. Another {@link ThreadFactory}
+ * can be given, which should create a new, cheap thread per call.
+ */
+@UnstableApi
+public final class VirtualThreadEventExecutorGroup extends AbstractEventExecutorGroup {
+    private static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(VirtualThreadEventExecutorGroup.class);
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = newVirtualThreadFactory();
+
+    private final ThreadFactory threadFactory;
+    private final int maxTaskExecutePerRun;
+    // The number of threads that currently run the tasks of an executor.
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private final Promise<?> terminationFuture = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE);
+    private volatile boolean shutdown;
+
+    private static ThreadFactory newVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "virtualThreadEventExecutor-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            logger.debug("Virtual threads: available");
+            return factory;
+        } catch (Throwable cause) {
+            // Not available before Java 21, or a preview feature that is not enabled.
+            logger.debug("Virtual threads: unavailable", cause);
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the JVM supports virtual threads, which is required by
+     * {@link #VirtualThreadEventExecutorGroup()} and {@link #VirtualThreadEventExecutorGroup(int)}.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates a new instance which runs up to {@code 1024} tasks on a virtual thread.
+     *
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads
+     */
+    public VirtualThreadEventExecutorGroup() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxTaskExecutePerRun the maximum number of tasks an executor runs on the same virtual thread
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads
+     */
+    public VirtualThreadEventExecutorGroup(int maxTaskExecutePerRun) {
+        this(virtualThreadFactory(), maxTaskExecutePerRun);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threadFactory        the {@link ThreadFactory} which creates a new thread whenever an executor has tasks
+     * @param maxTaskExecutePerRun the maximum number of tasks an executor runs on the same thread
+     */
+    public VirtualThreadEventExecutorGroup(ThreadFactory threadFactory, int maxTaskExecutePerRun) {
+        this.threadFactory = ObjectUtil.checkNotNull(threadFactory, "threadFactory");
+        this.maxTaskExecutePerRun = ObjectUtil.checkPositive(maxTaskExecutePerRun, "maxTaskExecutePerRun");
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        if (VIRTUAL_THREAD_FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+        }
+        return VIRTUAL_THREAD_FACTORY;
+    }
+
+    @Override
+    public EventExecutor next() {
+        return new VirtualThreadOrderedEventExecutor(this);
+    }
+
+    /**
+     * Returns an empty {@link Iterator}, as the executors are not kept by this group.
+     */
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        return Collections.<EventExecutor>emptyList().iterator();
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return shutdown;
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        shutdown = true;
+        tryTerminate();
+        return terminationFuture;
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return terminationFuture;
+    }
+
+    @Override
+    @Deprecated
+    public void shutdown() {
+        shutdownGracefully();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminationFuture.isDone();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationFuture.await(timeout, unit);
+    }
+
+    private void startThread(Runnable task) {
+        activeThreads.incrementAndGet();
+        try {
+            threadFactory.newThread(task).start();
+        } catch (Throwable cause) {
+            threadStopped();
+            PlatformDependent.throwException(cause);
+        }
+    }
+
+    private void threadStopped() {
+        if (activeThreads.decrementAndGet() == 0) {
+            tryTerminate();
+        }
+    }
+
+    private void tryTerminate() {
+        if (shutdown && activeThreads.get() == 0) {
+            terminationFuture.trySuccess(null);
+        }
+    }
+
+    private static final class VirtualThreadOrderedEventExecutor extends AbstractScheduledEventExecutor
+            implements Runnable, OrderedEventExecutor {
+        private static final int NONE = 0;
+        private static final int SUBMITTED = 1;
+        private static final int RUNNING = 2;
+
+        private final VirtualThreadEventExecutorGroup group;
+        private final Queue<Runnable> tasks = PlatformDependent.newMpscQueue();
+        private final AtomicInteger state = new AtomicInteger();
+        private final Runnable wakeupTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute(WAKEUP_TASK);
+                } catch (RejectedExecutionException ignore) {
+                    // The group was shut down.
+                }
+            }
+        };
+        // The thread that currently runs the tasks.
+        private volatile Thread thread;
+        // Only accessed while running the tasks.
+        private ScheduledFuture<?> wakeupFuture;
+        private long wakeupDeadlineNanos;
+
+        VirtualThreadOrderedEventExecutor(VirtualThreadEventExecutorGroup group) {
+            super(group);
+            this.group = group;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!state.compareAndSet(SUBMITTED, RUNNING)) {
+                    return;
+                }
+                thread = Thread.currentThread();
+                for (;;) {
+                    if (runTasks()) {
+                        // Let other executors run before running more tasks on a new thread.
+                        thread = null;
+                        state.set(SUBMITTED);
+                        startThread();
+                        return;
+                    }
+                    scheduleWakeup();
+                    thread = null;
+                    state.set(NONE);
+                    // Another thread may have added a task and seen the state RUNNING, see
+                    // NonStickyEventExecutorGroup.
+                    if (tasks.isEmpty() || !state.compareAndSet(NONE, RUNNING)) {
+                        return;
+                    }
+                    thread = Thread.currentThread();
+                }
+            } finally {
+                group.threadStopped();
+            }
+        }
+
+        /**
+         * Runs up to {@code maxTaskExecutePerRun} tasks, and returns {@code true} if this limit was reached. Exceptions
+         * of the tasks are caught by {@link #safeExecute(Runnable)}.
+         */
+        private boolean runTasks() {
+            for (int i = 0; i < group.maxTaskExecutePerRun; i++) {
+                Runnable task = pollScheduledTask();
+                if (task == null) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        return false;
+                    }
+                }
+                safeExecute(task);
+            }
+            return true;
+        }
+
+        /**
+         * Starts a new thread to run the tasks after the state was set to {@code SUBMITTED}.
+         */
+        private void startThread() {
+            try {
+                group.startThread(this);
+            } catch (Throwable cause) {
+                // Let the next call of execute(Runnable) start a thread, instead of leaving the tasks behind forever.
+                state.set(NONE);
+                PlatformDependent.throwException(cause);
+            }
+        }
+
+        private void scheduleWakeup() {
+            long deadlineNanos = nextScheduledTaskDeadlineNanos();
+            if (deadlineNanos == -1) {
+                return;
+            }
+            ScheduledFuture<?> wakeupFuture = this.wakeupFuture;
+            if (wakeupFuture != null && !wakeupFuture.isDone()) {
+                if (wakeupDeadlineNanos <= deadlineNanos) {
+                    return;
+                }
+                wakeupFuture.cancel(false);
+            }
+            wakeupDeadlineNanos = deadlineNanos;
+            this.wakeupFuture = GlobalEventExecutor.INSTANCE.schedule(
+                    wakeupTask, deadlineToDelayNanos(deadlineNanos), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean inEventLoop(Thread thread) {
+            return thread == this.thread;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            ObjectUtil.checkNotNull(task, "task");
+            if (group.isShutdown()) {
+                throw new RejectedExecutionException("event executor terminated");
+            }
+            tasks.offer(task);
+            if (state.compareAndSet(NONE, SUBMITTED)) {
+                startThread();
+            }
+        }
+
+        @Override
+        public boolean isShuttingDown() {
+            return group.isShuttingDown();
+        }
+
+        @Override
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            return group.shutdownGracefully(quietPeriod, timeout, unit);
+        }
+
+        @Override
+        public Future<?> terminationFuture() {
+            return group.terminationFuture();
+        }
+
+        @Override
+        @Deprecated
+        public void shutdown() {
+            group.shutdown();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return group.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return group.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return group.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -452,6 +452,84 @@ public class RecyclerTest {
                 " internally");
     }
 
+    @Test
+    public void testCounters() {
+        Recycler<HandledObject> recycler = newRecycler(256, 0, 16);
+        HandledObject object = recycler.get();
+        object.recycle();
+        assertSame(object, recycler.get());
+        // A miss publishes the pending hits of the thread.
+        HandledObject object2 = recycler.get();
+        assertEquals(1, recycler.numHits());
+        assertEquals(2, recycler.numMisses());
+        assertEquals(0, recycler.numDrops());
+        object.recycle();
+        object2.recycle();
+    }
+
+    @Test
+    public void testDropsWhenPoolIsFull() throws Exception {
+        final Recycler<HandledObject> recycler = newRecycler(4, 0, 2);
+        final HandledObject[] array = new HandledObject[8];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = recycler.get();
+        }
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (HandledObject object : array) {
+                    object.recycle();
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(array.length, recycler.threadLocalSize() + recycler.numDrops());
+        assertTrue(recycler.numDrops() > 0);
+    }
+
+    @Test
+    public void testMagazinesAreHandedOverWhenFull() throws Exception {
+        final Recycler<HandledObject> recycler = new Recycler<HandledObject>(256, 0, 4, true) {
+            @Override
+            protected HandledObject newObject(Recycler.Handle<HandledObject> handle) {
+                return new HandledObject(handle);
+            }
+        };
+        final HandledObject[] array = new HandledObject[4];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = recycler.get();
+        }
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < array.length - 1; i++) {
+                recycle(single, array[i]);
+            }
+            // The magazine of the other thread is not full yet.
+            assertEquals(0, recycler.threadLocalSize());
+
+            recycle(single, array[array.length - 1]);
+            assertEquals(array.length, recycler.threadLocalSize());
+            for (int i = 0; i < array.length; i++) {
+                recycler.get();
+            }
+            assertEquals(array.length, recycler.numMisses());
+            assertEquals(0, recycler.numDrops());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private static void recycle(ExecutorService executor, final HandledObject object) throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                object.recycle();
+            }
+        }).get();
+    }
+
     static final class HandledObject {
         Recycler.Handle<HandledObject> handle;
 
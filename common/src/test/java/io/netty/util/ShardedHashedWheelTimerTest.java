@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedHashedWheelTimerTest {
+
+    private static final TimerTask NOOP = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            // NOOP
+        }
+    };
+
+    @Test
+    @org.junit.jupiter.api.Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+    public void testTimeoutsOfAllThreadsExpire() throws Exception {
+        final ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(
+                Executors.defaultThreadFactory(), 10, TimeUnit.MILLISECONDS, 16, 4);
+        final CountDownLatch latch = new CountDownLatch(4 * 10);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10; i++) {
+                        timer.newTimeout(new TimerTask() {
+                            @Override
+                            public void run(Timeout timeout) {
+                                latch.countDown();
+                            }
+                        }, 10, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        latch.await();
+        for (HashedWheelTimer shard : timer.shards()) {
+            assertTrue(shard.tickLagNanos() >= 0);
+        }
+        assertEquals(0, timer.stop().size());
+    }
+
+    @Test
+    public void testSameThreadUsesSameShard() {
+        ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(4);
+        try {
+            Timeout first = timer.newTimeout(NOOP, 1, TimeUnit.MINUTES);
+            Timeout second = timer.newTimeout(NOOP, 1, TimeUnit.MINUTES);
+            assertSame(first.timer(), second.timer());
+            assertEquals(2, ((HashedWheelTimer) first.timer()).pendingTimeouts());
+            assertEquals(2, timer.pendingTimeouts());
+            assertTrue(second.cancel());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void testStopReturnsUnprocessedTimeoutsOfAllShards() throws Exception {
+        final ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(2);
+        timer.newTimeout(NOOP, 1, TimeUnit.MINUTES);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                timer.newTimeout(NOOP, 1, TimeUnit.MINUTES);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(2, timer.stop().size());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.concurrent.EventExecutorMetrics.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventExecutorMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        EventExecutorMetrics metrics = new EventExecutorMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.taskExecuted(null, i * 1000);
+        }
+        Histogram taskTime = metrics.snapshot().taskTime();
+        assertEquals(100, taskTime.count());
+        assertEquals(5050000, taskTime.totalNanos());
+        assertEquals(50500, taskTime.meanNanos());
+        assertEquals(100000, taskTime.maxNanos());
+        long p50 = taskTime.valueAtPercentile(50);
+        assertTrue(p50 >= 50000 && p50 < 100000, "p50: " + p50);
+        assertEquals(100000, taskTime.valueAtPercentile(100));
+        assertEquals(0, metrics.snapshot().ioTime().valueAtPercentile(99));
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+    public void testExecutorTimings() throws Exception {
+        SingleThreadEventExecutor executor = new SingleThreadEventExecutor(
+                null, Executors.defaultThreadFactory(), false) {
+            @Override
+            protected void run() {
+                while (!confirmShutdown()) {
+                    if (!hasTasks()) {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ignore) {
+                            // Ignore
+                        }
+                    }
+                    runAllTasks();
+                }
+            }
+        };
+        try {
+            assertNull(executor.metricsListener());
+            EventExecutorMetrics metrics = new EventExecutorMetrics();
+            executor.setMetricsListener(metrics);
+            assertSame(metrics, executor.metricsListener());
+
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }, 10, TimeUnit.MILLISECONDS).sync();
+            for (int i = 0; i < 10; i++) {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException ignore) {
+                            // Ignore
+                        }
+                    }
+                }).sync();
+            }
+
+            EventExecutorMetrics.Snapshot snapshot = metrics.snapshot();
+            assertTrue(snapshot.taskTime().count() >= 11, snapshot.toString());
+            assertTrue(snapshot.taskTime().maxNanos() >= TimeUnit.MILLISECONDS.toNanos(2), snapshot.toString());
+            assertEquals(1, snapshot.scheduledTaskLateness().count(), snapshot.toString());
+            assertTrue(snapshot.taskQueueDelay().count() >= 1, snapshot.toString());
+            assertEquals(0, snapshot.ioTime().count());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventExecutorWatchdogTest {
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+    public void testReportsBlockedExecutor() throws Exception {
+        final BlockingQueue<Report> reports = new LinkedBlockingQueue<Report>();
+        EventExecutorWatchdog watchdog = new EventExecutorWatchdog(50, 0, TimeUnit.MILLISECONDS,
+                new EventExecutorWatchdog.Listener() {
+                    @Override
+                    public void blocked(SingleThreadEventExecutor executor, long blockedNanos, String taskClassName,
+                                        StackTraceElement[] stackTrace) {
+                        reports.add(new Report(executor, blockedNanos, taskClassName, stackTrace));
+                    }
+                });
+        DefaultEventExecutorGroup group = new DefaultEventExecutorGroup(2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            watchdog.watch(group);
+            // Wait until the watchdog knows the threads.
+            Thread.sleep(100);
+            assertTrue(reports.isEmpty());
+
+            SingleThreadEventExecutor executor = (SingleThreadEventExecutor) group.next();
+            Runnable blockingTask = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException ignore) {
+                        // Ignore
+                    }
+                }
+            };
+            executor.submit(blockingTask);
+
+            Report report = reports.take();
+            assertSame(executor, report.executor);
+            assertTrue(report.blockedNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertEquals(blockingTask.getClass().getName(), report.taskClassName);
+            assertTrue(Arrays.toString(report.stackTrace).contains("CountDownLatch.await"));
+
+            latch.countDown();
+            Thread.sleep(150);
+            // Only reported once while it was blocked.
+            assertTrue(reports.isEmpty());
+        } finally {
+            latch.countDown();
+            watchdog.stop();
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void testTaskClassName() {
+        StackTraceElement[] stackTrace = {
+                new StackTraceElement(Thread.class.getName(), "sleep", null, -1),
+                new StackTraceElement("com.example.BlockingHandler", "channelRead", null, 1),
+                new StackTraceElement(PromiseTask.class.getName(), "run", null, 1),
+                new StackTraceElement(AbstractEventExecutor.class.getName(), "runTask", null, 1),
+                new StackTraceElement(AbstractEventExecutor.class.getName(), "safeExecute", null, 1),
+                new StackTraceElement(SingleThreadEventExecutor.class.getName(), "runAllTasks", null, 1),
+        };
+        assertEquals("com.example.BlockingHandler", EventExecutorWatchdog.taskClassName(stackTrace));
+        assertNull(EventExecutorWatchdog.taskClassName(Arrays.copyOfRange(stackTrace, 0, 3)));
+    }
+
+    private static final class Report {
+        final SingleThreadEventExecutor executor;
+        final long blockedNanos;
+        final String taskClassName;
+        final StackTraceElement[] stackTrace;
+
+        Report(SingleThreadEventExecutor executor, long blockedNanos, String taskClassName,
+               StackTraceElement[] stackTrace) {
+            this.executor = executor;
+            this.blockedNanos = blockedNanos;
+            this.taskClassName = taskClassName;
+            this.stackTrace = stackTrace;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyedOrderedEventExecutorGroupTest {
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testOrderingPerKey() throws Exception {
+        final EventExecutorGroup group = new UnorderedThreadPoolEventExecutor(4);
+        KeyedOrderedEventExecutorGroup keyedGroup = new KeyedOrderedEventExecutorGroup(group, 16, 8);
+        try {
+            final int keys = 100;
+            final int tasksPerKey = 100;
+            final int[] nextTasks = new int[keys];
+            final AtomicInteger errors = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<Future<?>>(keys);
+            for (int task = 0; task < tasksPerKey; task++) {
+                for (int key = 0; key < keys; key++) {
+                    keyedGroup.execute(key, new OrderedTask(nextTasks, key, task, errors));
+                }
+            }
+            for (int key = 0; key < keys; key++) {
+                futures.add(keyedGroup.submit(key, new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.sync();
+            }
+            awaitInactive(keyedGroup);
+            assertEquals(0, errors.get());
+            assertEquals(keys * tasksPerKey + keys, keyedGroup.executedTasks());
+            assertEquals(0, keyedGroup.pendingTasks());
+            assertTrue(keyedGroup.yieldedRuns() > 0);
+        } finally {
+            keyedGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testLane() throws Exception {
+        KeyedOrderedEventExecutorGroup keyedGroup =
+                new KeyedOrderedEventExecutorGroup(new DefaultEventExecutorGroup(2));
+        try {
+            EventExecutor executor = keyedGroup.executor("key");
+            assertSame(executor, keyedGroup.executor("key"));
+            assertSame(keyedGroup, executor.parent());
+            assertTrue(executor instanceof OrderedEventExecutor);
+            assertFalse(executor.inEventLoop());
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch blocked = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            started.await();
+            Future<?> future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            });
+            assertEquals(1, keyedGroup.activeLanes());
+            assertEquals(1, keyedGroup.pendingTasks("key"));
+            blocked.countDown();
+            future.sync();
+            awaitInactive(keyedGroup);
+            assertEquals(2, keyedGroup.executedTasks());
+        } finally {
+            keyedGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    private static void awaitInactive(KeyedOrderedEventExecutorGroup keyedGroup) throws InterruptedException {
+        // The lanes count the executed tasks after the futures were completed.
+        while (keyedGroup.activeLanes() != 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static final class OrderedTask implements Runnable {
+        private final int[] nextTasks;
+        private final int key;
+        private final int task;
+        private final AtomicInteger errors;
+
+        OrderedTask(int[] nextTasks, int key, int task, AtomicInteger errors) {
+            this.nextTasks = nextTasks;
+            this.key = key;
+            this.task = task;
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            // The lane of the key publishes the writes of one task to the next one.
+            if (nextTasks[key]++ != task) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+}
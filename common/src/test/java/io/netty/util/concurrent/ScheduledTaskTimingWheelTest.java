@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ScheduledTaskTimingWheelTest {
+    private static final Runnable TEST_RUNNABLE = new Runnable() {
+
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testTimingWheelRunsTasksInOrder() {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        executor.setTimingWheelEnabled(true);
+        Random random = new Random(42);
+        List<ScheduledFutureTask<?>> pending = new ArrayList<ScheduledFutureTask<?>>();
+        long[] maxDelays = { TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(2),
+                TimeUnit.MINUTES.toNanos(10), TimeUnit.DAYS.toNanos(3) };
+        for (int step = 0; step < 2000; step++) {
+            for (int i = random.nextInt(20); i > 0; i--) {
+                long delay = (long) (random.nextDouble() * maxDelays[random.nextInt(maxDelays.length)]);
+                pending.add((ScheduledFutureTask<?>) executor.schedule(TEST_RUNNABLE, delay, TimeUnit.NANOSECONDS));
+            }
+            for (int i = random.nextInt(5); i > 0 && !pending.isEmpty(); i--) {
+                pending.remove(random.nextInt(pending.size())).cancel(false);
+            }
+            executor.currentTimeNanos += step % 100 == 0 ? TimeUnit.MINUTES.toNanos(1) :
+                    (long) (random.nextDouble() * TimeUnit.MILLISECONDS.toNanos(10));
+            assertDueTasksPolledInOrder(executor, pending);
+        }
+        executor.currentTimeNanos += TimeUnit.DAYS.toNanos(4);
+        assertDueTasksPolledInOrder(executor, pending);
+        assertEquals(0, pending.size());
+        assertNull(executor.peekScheduledTask());
+    }
+
+    private static void assertDueTasksPolledInOrder(TestScheduledEventExecutor executor,
+                                                    List<ScheduledFutureTask<?>> pending) {
+        Collections.sort(pending, new Comparator<ScheduledFutureTask<?>>() {
+            @Override
+            public int compare(ScheduledFutureTask<?> o1, ScheduledFutureTask<?> o2) {
+                return o1.compareTo(o2);
+            }
+        });
+        while (!pending.isEmpty() && pending.get(0).deadlineNanos() <= executor.currentTimeNanos) {
+            assertSame(pending.remove(0), executor.pollScheduledTask());
+        }
+        assertNull(executor.pollScheduledTask());
+        if (!pending.isEmpty()) {
+            assertSame(pending.get(0), executor.peekScheduledTask());
+        }
+    }
+
+    @Test
+    public void testSwitchingToTimingWheelKeepsTasks() {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        ScheduledFuture<?> first = executor.schedule(TEST_RUNNABLE, 1, TimeUnit.SECONDS);
+        ScheduledFuture<?> third = executor.schedule(TEST_RUNNABLE, 3, TimeUnit.SECONDS);
+        executor.setTimingWheelEnabled(true);
+        ScheduledFuture<?> second = executor.schedule(TEST_RUNNABLE, 2, TimeUnit.SECONDS);
+        assertEquals(3, executor.scheduledTaskQueue.size());
+        executor.currentTimeNanos = TimeUnit.SECONDS.toNanos(3);
+        assertSame(first, executor.pollScheduledTask());
+        assertSame(second, executor.pollScheduledTask());
+        assertSame(third, executor.pollScheduledTask());
+        assertNull(executor.pollScheduledTask());
+    }
+
+    private static final class TestScheduledEventExecutor extends AbstractScheduledEventExecutor {
+        long currentTimeNanos;
+
+        @Override
+        protected long getCurrentTimeNanos() {
+            return currentTimeNanos;
+        }
+
+        @Override
+        public boolean isShuttingDown() {
+            return false;
+        }
+
+        @Override
+        public boolean inEventLoop(Thread thread) {
+            return true;
+        }
+
+        @Override
+        public void shutdown() {
+            // NOOP
+        }
+
+        @Override
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<?> terminationFuture() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -21,9 +21,13 @@ import io.netty.util.concurrent.AbstractEventExecutor.LazyRunnable;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.function.Executable;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -411,6 +415,110 @@ public class SingleThreadEventExecutorTest {
         assertThat(t.ran.get(), is(true));
     }
 
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+    public void testPriorityTasks() throws Exception {
+        final SingleThreadEventExecutor executor = new SingleThreadEventExecutor(
+                null, Executors.defaultThreadFactory(), false) {
+            @Override
+            protected void run() {
+                while (!confirmShutdown()) {
+                    if (!hasTasks()) {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ignore) {
+                            // Ignore
+                        }
+                    }
+                    runAllTasks();
+                }
+            }
+        };
+        try {
+            testPriorityTasks(executor);
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+    public void testPriorityTasksTakeTask() throws Exception {
+        SingleThreadEventExecutor executor = new DefaultEventExecutor();
+        try {
+            testPriorityTasks(executor);
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    private static void testPriorityTasks(SingleThreadEventExecutor executor) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+        final Queue<String> order = new ConcurrentLinkedQueue<String>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new OrderedTask(order, "task" + i));
+            executor.executePriority(new OrderedTask(order, "priority" + i));
+        }
+        // At most 16 priority tasks in a row while other tasks are pending.
+        for (int i = 0; i < 16; i++) {
+            expected.add("priority" + i);
+        }
+        expected.add("task0");
+        for (int i = 16; i < 20; i++) {
+            expected.add("priority" + i);
+        }
+        for (int i = 1; i < 20; i++) {
+            expected.add("task" + i);
+        }
+        blocked.countDown();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // NOOP
+            }
+        }).sync();
+        assertEquals(expected, new ArrayList<String>(order));
+
+        // A priority task also wakes up an idle executor.
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.executePriority(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    private static final class OrderedTask implements Runnable {
+        private final Queue<String> order;
+        private final String name;
+
+        OrderedTask(Queue<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+        }
+    }
+
     private static final class TestRunnable implements Runnable {
         final AtomicBoolean ran = new AtomicBoolean();
 
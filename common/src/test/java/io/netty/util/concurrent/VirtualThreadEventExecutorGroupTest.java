@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadEventExecutorGroupTest {
+
+    private static final ThreadFactory THREAD_FACTORY = new DefaultThreadFactory(
+            VirtualThreadEventExecutorGroupTest.class);
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testTasksRunInOrder() throws Exception {
+        VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup(THREAD_FACTORY, 16);
+        try {
+            final EventExecutor executor = group.next();
+            final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch latch = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                final int value = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        assertTrue(executor.inEventLoop());
+                        results.add(value);
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) results.get(i));
+            }
+            assertFalse(executor.inEventLoop());
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testBlockingExecutorDoesNotBlockOthers() throws Exception {
+        VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup(THREAD_FACTORY, 16);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            group.next().execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(blocked);
+                }
+            });
+            assertEquals("done", group.next().submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }, "done").get());
+        } finally {
+            blocked.countDown();
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testScheduledTaskRunsOnExecutor() throws Exception {
+        VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup(THREAD_FACTORY, 16);
+        try {
+            final EventExecutor executor = group.next();
+            final long start = System.nanoTime();
+            assertTrue(executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(executor.inEventLoop());
+                }
+            }, 100, TimeUnit.MILLISECONDS).sync().isSuccess());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testTasksRunAfterThreadFactoryFailed() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        final CountDownLatch failed = new CountDownLatch(1);
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                // Fail to start the thread the first executor yields to after running one task.
+                if (threads.incrementAndGet() == 2) {
+                    throw new IllegalStateException();
+                }
+                return THREAD_FACTORY.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            r.run();
+                        } catch (IllegalStateException expected) {
+                            failed.countDown();
+                        }
+                    }
+                });
+            }
+        };
+        VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup(threadFactory, 1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        try {
+            EventExecutor executor = group.next();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(blocked);
+                }
+            });
+            Runnable countDown = new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            };
+            executor.execute(countDown);
+            blocked.countDown();
+            failed.await();
+
+            // The executor did not get stuck, the next task starts a new thread which runs both tasks.
+            executor.execute(countDown);
+            done.await();
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testShutdown() throws Exception {
+        final VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup(THREAD_FACTORY, 16);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final EventExecutor executor = group.next();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                await(blocked);
+            }
+        });
+        group.shutdownGracefully();
+        assertTrue(group.isShuttingDown());
+        assertFalse(group.isTerminated());
+        assertThrows(RejectedExecutionException.class, new Executable() {
+            @Override
+            public void execute() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // NOOP
+                    }
+                });
+            }
+        });
+        blocked.countDown();
+        assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+    public void testVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreadEventExecutorGroup.isVirtualThreadSupported());
+        VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup();
+        try {
+            assertEquals(Boolean.TRUE, group.next().submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                }
+            }).get());
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * Periodically checks how much direct memory is used, and notifies its {@link Listener}s once the usage exceeds the
+ * high watermark, and again once it dropped below the low watermark.
+ * <p>
+ * If Netty tracks the direct memory it allocates itself (see {@link PlatformDependent#usedDirectMemory()}), this
+ * counter is used, as it includes the chunks of the pooled allocators as well as the unpooled buffers. Otherwise the
+ * used direct memory of the given {@link ByteBufAllocator}s is summed up, which are {@link ByteBufAllocator#DEFAULT}
+ * and {@link UnpooledByteBufAllocator#DEFAULT} by default.
+ * <p>
+ * The {@link MemoryPressureHandler} uses a monitor to stop reading from channels under memory pressure.
+ */
+public class DirectMemoryPressureMonitor {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(DirectMemoryPressureMonitor.class);
+
+    /**
+     * Is notified when the memory pressure changes. The methods are called by the thread that checks the usage.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the used direct memory exceeded the high watermark.
+         */
+        void highWatermarkExceeded(DirectMemoryPressureMonitor monitor);
+
+        /**
+         * Called when the used direct memory dropped below the low watermark after it exceeded the high watermark.
+         */
+        void lowWatermarkReached(DirectMemoryPressureMonitor monitor);
+    }
+
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final List<ByteBufAllocatorMetricProvider> allocators;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final ScheduledFuture<?> future;
+    private volatile boolean high;
+
+    /**
+     * Creates a new instance which checks the usage every 100 milliseconds, with a high watermark at 85% and a low
+     * watermark at 70% of {@link PlatformDependent#maxDirectMemory()}.
+     */
+    public DirectMemoryPressureMonitor(ScheduledExecutorService executor) {
+        this(executor, 100, TimeUnit.MILLISECONDS,
+                PlatformDependent.maxDirectMemory() / 100 * 85, PlatformDependent.maxDirectMemory() / 100 * 70);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor      the {@link ScheduledExecutorService} which is used to check the usage periodically, or
+     *                      {@code null} if {@link #check()} is called by the user
+     * @param interval      the interval at which the usage is checked
+     * @param unit          the unit of {@code interval}
+     * @param highWatermark the number of bytes of used direct memory above which the memory pressure is high
+     * @param lowWatermark  the number of bytes of used direct memory below which the memory pressure is normal again
+     * @param allocators    the allocators of which the used direct memory is summed up if Netty does not track the
+     *                      direct memory itself, or none to use the default allocators
+     */
+    public DirectMemoryPressureMonitor(ScheduledExecutorService executor, long interval, TimeUnit unit,
+                                       long highWatermark, long lowWatermark,
+                                       ByteBufAllocatorMetricProvider... allocators) {
+        checkPositive(highWatermark, "highWatermark");
+        ObjectUtil.checkInRange(lowWatermark, 0, highWatermark, "lowWatermark");
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.allocators = new ArrayList<ByteBufAllocatorMetricProvider>();
+        if (allocators.length == 0) {
+            if (ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider &&
+                    ByteBufAllocator.DEFAULT != UnpooledByteBufAllocator.DEFAULT) {
+                this.allocators.add((ByteBufAllocatorMetricProvider) ByteBufAllocator.DEFAULT);
+            }
+            this.allocators.add(UnpooledByteBufAllocator.DEFAULT);
+        } else {
+            for (ByteBufAllocatorMetricProvider allocator : allocators) {
+                this.allocators.add(ObjectUtil.checkNotNull(allocator, "allocator"));
+            }
+        }
+        if (executor == null) {
+            future = null;
+        } else {
+            checkPositive(interval, "interval");
+            future = executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        check();
+                    } catch (Throwable t) {
+                        // Do not let the exception cancel the periodic check.
+                        logger.warn("Failed to check the used direct memory.", t);
+                    }
+                }
+            }, interval, interval, unit);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of used direct memory above which the memory pressure is high.
+     */
+    public long highWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Returns the number of bytes of used direct memory below which the memory pressure is normal again.
+     */
+    public long lowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Returns {@code true} if the used direct memory exceeded the high watermark and did not drop below the low
+     * watermark since then.
+     */
+    public boolean isHigh() {
+        return high;
+    }
+
+    /**
+     * Adds a {@link Listener} which is notified when the memory pressure changes.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(ObjectUtil.checkNotNull(listener, "listener"));
+    }
+
+    /**
+     * Removes a {@link Listener} which was added by {@link #addListener(Listener)}.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of bytes of direct memory which are currently used.
+     */
+    public long usedDirectMemory() {
+        long used = PlatformDependent.usedDirectMemory();
+        if (used >= 0) {
+            return used;
+        }
+        used = 0;
+        for (ByteBufAllocatorMetricProvider allocator : allocators) {
+            used += allocator.metric().usedDirectMemory();
+        }
+        return used;
+    }
+
+    /**
+     * Checks the used direct memory and notifies the {@link Listener}s if the memory pressure changed. This is
+     * called periodically if the monitor was created with a {@link ScheduledExecutorService}.
+     */
+    public synchronized void check() {
+        long used = usedDirectMemory();
+        if (!high && used > highWatermark) {
+            high = true;
+            logger.debug("Used direct memory of {} bytes exceeded the high watermark of {} bytes",
+                    used, highWatermark);
+            for (Listener listener : listeners) {
+                try {
+                    listener.highWatermarkExceeded(this);
+                } catch (Throwable t) {
+                    logger.warn("An exception was thrown by " + listener.getClass().getName() +
+                            ".highWatermarkExceeded()", t);
+                }
+            }
+        } else if (high && used < lowWatermark) {
+            high = false;
+            logger.debug("Used direct memory of {} bytes dropped below the low watermark of {} bytes",
+                    used, lowWatermark);
+            for (Listener listener : listeners) {
+                try {
+                    listener.lowWatermarkReached(this);
+                } catch (Throwable t) {
+                    logger.warn("An exception was thrown by " + listener.getClass().getName() +
+                            ".lowWatermarkReached()", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops checking the used direct memory periodically.
+     */
+    public void stop() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.BudgetedByteBufAllocator;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.util.internal.ObjectUtil;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * Limits the memory that is used by the buffers which are allocated via {@link ChannelHandlerContext#alloc()}, for
+ * example by the cumulation of a {@code ByteToMessageDecoder} or by {@code HttpObjectAggregator}, and stops reading
+ * from the {@link io.netty.channel.Channel} while the budget is exceeded.
+ * <p>
+ * The handler replaces the {@link ByteBufAllocator} of the {@link ChannelConfig} with a
+ * {@link BudgetedByteBufAllocator}, and suppresses {@code read()} calls until enough buffers were released. The
+ * memory of a group of channels, for example all channels of the same user, can be limited by passing the same
+ * {@link BudgetedByteBufAllocator} to the handlers of all of them.
+ *
+ * <pre>{@code
+ * BudgetedByteBufAllocator tenantBudget = new BudgetedByteBufAllocator(ByteBufAllocator.DEFAULT, 64 * 1024 * 1024);
+ *
+ * ChannelPipeline pipeline = ...;
+ * pipeline.addLast(new MemoryBudgetHandler(tenantBudget, 1024 * 1024));
+ * pipeline.addLast(new HttpServerCodec());
+ * pipeline.addLast(new HttpObjectAggregator(8 * 1024 * 1024));
+ * }</pre>
+ *
+ * The used memory is exposed via the {@link BudgetedByteBufAllocator#metric()} of {@link #allocator()}.
+ */
+public class MemoryBudgetHandler extends ChannelOutboundHandlerAdapter {
+
+    private final BudgetedByteBufAllocator group;
+    private final long maxBytes;
+
+    private BudgetedByteBufAllocator allocator;
+    private ByteBufAllocator previousAllocator;
+    private ChannelHandlerContext ctx;
+    private boolean readPending;
+
+    private final BudgetedByteBufAllocator.Listener listener = new BudgetedByteBufAllocator.Listener() {
+        @Override
+        public void budgetExceeded(BudgetedByteBufAllocator allocator) {
+            // Nothing to do, the next read() will be suppressed.
+        }
+
+        @Override
+        public void budgetAvailable(BudgetedByteBufAllocator allocator) {
+            ctx.executor().execute(readTask);
+        }
+    };
+
+    private final Runnable readTask = new Runnable() {
+        @Override
+        public void run() {
+            if (readPending && !isExceeded()) {
+                readPending = false;
+                ctx.read();
+            }
+        }
+    };
+
+    /**
+     * Creates a new instance which limits the memory of the {@link io.netty.channel.Channel}.
+     *
+     * @param maxBytes the number of bytes that can be used by the buffers of the channel
+     */
+    public MemoryBudgetHandler(long maxBytes) {
+        this.group = null;
+        this.maxBytes = checkPositive(maxBytes, "maxBytes");
+    }
+
+    /**
+     * Creates a new instance which limits the memory of all channels that use the same group.
+     *
+     * @param group the {@link BudgetedByteBufAllocator} which is used by all channels of the group
+     */
+    public MemoryBudgetHandler(BudgetedByteBufAllocator group) {
+        this.group = ObjectUtil.checkNotNull(group, "group");
+        this.maxBytes = 0;
+    }
+
+    /**
+     * Creates a new instance which limits the memory of the {@link io.netty.channel.Channel} as well as the memory
+     * of all channels that use the same group.
+     *
+     * @param group    the {@link BudgetedByteBufAllocator} which is used by all channels of the group
+     * @param maxBytes the number of bytes that can be used by the buffers of the channel
+     */
+    public MemoryBudgetHandler(BudgetedByteBufAllocator group, long maxBytes) {
+        this.group = ObjectUtil.checkNotNull(group, "group");
+        this.maxBytes = checkPositive(maxBytes, "maxBytes");
+    }
+
+    /**
+     * Returns the {@link BudgetedByteBufAllocator} which is used by the {@link io.netty.channel.Channel}, or
+     * {@code null} if the handler was not added to a pipeline yet.
+     */
+    public BudgetedByteBufAllocator allocator() {
+        return allocator;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        ChannelConfig config = ctx.channel().config();
+        previousAllocator = config.getAllocator();
+        if (maxBytes == 0) {
+            allocator = group;
+        } else {
+            allocator = new BudgetedByteBufAllocator(group == null ? previousAllocator : group, maxBytes);
+        }
+        config.setAllocator(allocator);
+        allocator.addListener(listener);
+        if (group != null && group != allocator) {
+            group.addListener(listener);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        allocator.removeListener(listener);
+        if (group != null) {
+            group.removeListener(listener);
+        }
+        ChannelConfig config = ctx.channel().config();
+        if (config.getAllocator() == allocator) {
+            // Buffers which are still in use are accounted until they are released.
+            config.setAllocator(previousAllocator);
+        }
+        if (readPending) {
+            readPending = false;
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (isExceeded()) {
+            readPending = true;
+        } else {
+            ctx.read();
+        }
+    }
+
+    private boolean isExceeded() {
+        return allocator.isExceeded() || group != null && group.isExceeded();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+/**
+ * User event that is fired by the {@link MemoryPressureHandler} when the memory pressure of its
+ * {@link DirectMemoryPressureMonitor} changes.
+ */
+public final class MemoryPressureEvent {
+
+    /**
+     * The used direct memory exceeded the high watermark, reading from the channel is paused.
+     */
+    public static final MemoryPressureEvent HIGH = new MemoryPressureEvent(true);
+
+    /**
+     * The used direct memory dropped below the low watermark, reading from the channel is resumed.
+     */
+    public static final MemoryPressureEvent NORMAL = new MemoryPressureEvent(false);
+
+    private final boolean high;
+
+    private MemoryPressureEvent(boolean high) {
+        this.high = high;
+    }
+
+    /**
+     * Returns {@code true} if the memory pressure is high.
+     */
+    public boolean isHigh() {
+        return high;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryPressureEvent(" + (high ? "HIGH" : "NORMAL") + ')';
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.MaxMessagesRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.util.UncheckedBooleanSupplier;
+import io.netty.util.internal.ObjectUtil;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * Pauses reading from the {@link io.netty.channel.Channel} while the {@link DirectMemoryPressureMonitor} reports
+ * high memory pressure, and fires a {@link MemoryPressureEvent} through the pipeline whenever the pressure changes.
+ * <p>
+ * While the pressure is high, the {@code read()} calls are suppressed, the current read loop is stopped and the
+ * receive buffers are not larger than {@code maxReceiveBufferSize}. Reading is resumed once the used direct memory
+ * dropped below the low watermark. The receive buffers can only be limited if the handler is added before the
+ * channel reads for the first time, for example by a {@link ChannelInitializer}.
+ * <p>
+ * All channels should share the same monitor:
+ * <pre>{@code
+ * DirectMemoryPressureMonitor monitor = new DirectMemoryPressureMonitor(group);
+ *
+ * ChannelPipeline pipeline = ...;
+ * pipeline.addLast(new MemoryPressureHandler(monitor));
+ * }</pre>
+ */
+public class MemoryPressureHandler extends ChannelDuplexHandler {
+
+    private static final int DEFAULT_MAX_RECEIVE_BUFFER_SIZE = 2048;
+
+    private final DirectMemoryPressureMonitor monitor;
+    private final int maxReceiveBufferSize;
+
+    private ChannelHandlerContext ctx;
+    private RecvByteBufAllocator recvByteBufAllocator;
+    private boolean high;
+    private boolean readPending;
+
+    private final DirectMemoryPressureMonitor.Listener listener = new DirectMemoryPressureMonitor.Listener() {
+        @Override
+        public void highWatermarkExceeded(DirectMemoryPressureMonitor monitor) {
+            ctx.executor().execute(updateTask);
+        }
+
+        @Override
+        public void lowWatermarkReached(DirectMemoryPressureMonitor monitor) {
+            ctx.executor().execute(updateTask);
+        }
+    };
+
+    private final Runnable updateTask = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+
+    /**
+     * Creates a new instance which limits the receive buffers to {@code 2048} bytes under memory pressure.
+     */
+    public MemoryPressureHandler(DirectMemoryPressureMonitor monitor) {
+        this(monitor, DEFAULT_MAX_RECEIVE_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param monitor              the {@link DirectMemoryPressureMonitor} which reports the memory pressure
+     * @param maxReceiveBufferSize the maximum size of the receive buffers while the memory pressure is high
+     */
+    public MemoryPressureHandler(DirectMemoryPressureMonitor monitor, int maxReceiveBufferSize) {
+        this.monitor = ObjectUtil.checkNotNull(monitor, "monitor");
+        this.maxReceiveBufferSize = checkPositive(maxReceiveBufferSize, "maxReceiveBufferSize");
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        ChannelConfig config = ctx.channel().config();
+        recvByteBufAllocator = new PressureAwareRecvByteBufAllocator(config.getRecvByteBufAllocator());
+        config.setRecvByteBufAllocator(recvByteBufAllocator);
+        monitor.addListener(listener);
+        high = monitor.isHigh();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        monitor.removeListener(listener);
+        ChannelConfig config = ctx.channel().config();
+        if (config.getRecvByteBufAllocator() == recvByteBufAllocator) {
+            config.setRecvByteBufAllocator(((PressureAwareRecvByteBufAllocator) recvByteBufAllocator).delegate);
+        }
+        high = false;
+        if (readPending) {
+            readPending = false;
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (high) {
+            readPending = true;
+        } else {
+            ctx.read();
+        }
+    }
+
+    private void update() {
+        if (ctx.isRemoved()) {
+            return;
+        }
+        boolean high = monitor.isHigh();
+        if (this.high == high) {
+            return;
+        }
+        this.high = high;
+        ctx.fireUserEventTriggered(high ? MemoryPressureEvent.HIGH : MemoryPressureEvent.NORMAL);
+        if (!high && readPending) {
+            readPending = false;
+            ctx.read();
+        }
+    }
+
+    private final class PressureAwareRecvByteBufAllocator implements MaxMessagesRecvByteBufAllocator {
+        final RecvByteBufAllocator delegate;
+
+        PressureAwareRecvByteBufAllocator(RecvByteBufAllocator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Handle newHandle() {
+            return new PressureAwareHandle(delegate.newHandle());
+        }
+
+        @Override
+        public int maxMessagesPerRead() {
+            // Throws a ClassCastException like DefaultChannelConfig expects if it is not supported by the delegate.
+            return ((MaxMessagesRecvByteBufAllocator) delegate).maxMessagesPerRead();
+        }
+
+        @Override
+        public MaxMessagesRecvByteBufAllocator maxMessagesPerRead(int maxMessagesPerRead) {
+            ((MaxMessagesRecvByteBufAllocator) delegate).maxMessagesPerRead(maxMessagesPerRead);
+            return this;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private final class PressureAwareHandle extends RecvByteBufAllocator.DelegatingHandle
+            implements RecvByteBufAllocator.ExtendedHandle {
+
+        PressureAwareHandle(RecvByteBufAllocator.Handle delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public ByteBuf allocate(ByteBufAllocator alloc) {
+            return high ? alloc.ioBuffer(guess()) : super.allocate(alloc);
+        }
+
+        @Override
+        public int guess() {
+            int guess = super.guess();
+            return high ? Math.min(guess, maxReceiveBufferSize) : guess;
+        }
+
+        @Override
+        public boolean continueReading() {
+            return !high && super.continueReading();
+        }
+
+        @Override
+        public boolean continueReading(UncheckedBooleanSupplier maybeMoreDataSupplier) {
+            if (high) {
+                return false;
+            }
+            RecvByteBufAllocator.Handle delegate = delegate();
+            return delegate instanceof RecvByteBufAllocator.ExtendedHandle ?
+                    ((RecvByteBufAllocator.ExtendedHandle) delegate).continueReading(maybeMoreDataSupplier) :
+                    delegate.continueReading();
+        }
+    }
+}
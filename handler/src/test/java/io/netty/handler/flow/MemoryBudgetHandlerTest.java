@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+import io.netty.buffer.BudgetedByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryBudgetHandlerTest {
+
+    @Test
+    public void testSuppressesReadWhileBudgetIsExceeded() {
+        ReadCounter reads = new ReadCounter();
+        MemoryBudgetHandler handler = new MemoryBudgetHandler(1024);
+        EmbeddedChannel channel = new EmbeddedChannel(reads, handler);
+        assertSame(handler.allocator(), channel.alloc());
+
+        ByteBuf buffer = channel.alloc().buffer(2048);
+        assertEquals(2048, handler.allocator().metric().usedHeapMemory() +
+                handler.allocator().metric().usedDirectMemory());
+        int count = reads.count;
+        channel.read();
+        assertEquals(count, reads.count);
+
+        assertTrue(buffer.release());
+        channel.runPendingTasks();
+        assertEquals(count + 1, reads.count);
+
+        channel.read();
+        assertEquals(count + 2, reads.count);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testSuppressesReadWhenCumulationGrowsPastBudget() {
+        ReadCounter reads = new ReadCounter();
+        MemoryBudgetHandler handler = new MemoryBudgetHandler(1024);
+        EmbeddedChannel channel = new EmbeddedChannel(reads, handler);
+        ByteBufAllocator alloc = channel.alloc();
+
+        ByteBuf cumulation = alloc.buffer(64).writeZero(64);
+        for (int i = 0; i < 4; i++) {
+            cumulation = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(
+                    alloc, cumulation, Unpooled.buffer(256).writeZero(256));
+        }
+        assertTrue(cumulation.capacity() > 1024);
+        assertEquals(cumulation.capacity(), handler.allocator().usedMemory());
+        int count = reads.count;
+        channel.read();
+        assertEquals(count, reads.count);
+
+        assertTrue(cumulation.release());
+        assertEquals(0, handler.allocator().usedMemory());
+        channel.runPendingTasks();
+        assertEquals(count + 1, reads.count);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testGroupBudget() {
+        BudgetedByteBufAllocator group = new BudgetedByteBufAllocator(ByteBufAllocator.DEFAULT, 1024);
+        ReadCounter firstReads = new ReadCounter();
+        ReadCounter secondReads = new ReadCounter();
+        EmbeddedChannel first = new EmbeddedChannel(firstReads, new MemoryBudgetHandler(group, 4096));
+        EmbeddedChannel second = new EmbeddedChannel(secondReads, new MemoryBudgetHandler(group, 4096));
+
+        // The first channel exceeds the budget of the group, which also suppresses the reads of the second channel.
+        ByteBuf buffer = first.alloc().buffer(2048);
+        int count = secondReads.count;
+        second.read();
+        assertEquals(count, secondReads.count);
+
+        assertTrue(buffer.release());
+        second.runPendingTasks();
+        assertEquals(count + 1, secondReads.count);
+        assertFalse(first.finish());
+        assertFalse(second.finish());
+    }
+
+    @Test
+    public void testRestoresAllocator() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ByteBufAllocator allocator = channel.alloc();
+        MemoryBudgetHandler handler = new MemoryBudgetHandler(1024);
+        channel.pipeline().addLast(handler);
+        assertSame(handler.allocator(), channel.alloc());
+        channel.pipeline().remove(handler);
+        assertSame(allocator, channel.alloc());
+        assertFalse(channel.finish());
+    }
+
+    private static final class ReadCounter extends ChannelOutboundHandlerAdapter {
+        int count;
+
+        @Override
+        public void read(ChannelHandlerContext ctx) throws Exception {
+            count++;
+            ctx.read();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at:
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.netty.handler.flow;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryPressureHandlerTest {
+
+    @Test
+    public void testMonitorWatermarks() {
+        TestMonitor monitor = new TestMonitor();
+        monitor.used = 900;
+        monitor.check();
+        assertFalse(monitor.isHigh());
+        monitor.used = 1001;
+        monitor.check();
+        assertTrue(monitor.isHigh());
+        // Still above the low watermark.
+        monitor.used = 600;
+        monitor.check();
+        assertTrue(monitor.isHigh());
+        monitor.used = 499;
+        monitor.check();
+        assertFalse(monitor.isHigh());
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopNotifications() {
+        TestMonitor monitor = new TestMonitor();
+        final AtomicInteger notifications = new AtomicInteger();
+        DirectMemoryPressureMonitor.Listener failing = new DirectMemoryPressureMonitor.Listener() {
+            @Override
+            public void highWatermarkExceeded(DirectMemoryPressureMonitor monitor) {
+                throw new RejectedExecutionException();
+            }
+
+            @Override
+            public void lowWatermarkReached(DirectMemoryPressureMonitor monitor) {
+                throw new RejectedExecutionException();
+            }
+        };
+        DirectMemoryPressureMonitor.Listener counting = new DirectMemoryPressureMonitor.Listener() {
+            @Override
+            public void highWatermarkExceeded(DirectMemoryPressureMonitor monitor) {
+                notifications.incrementAndGet();
+            }
+
+            @Override
+            public void lowWatermarkReached(DirectMemoryPressureMonitor monitor) {
+                notifications.incrementAndGet();
+            }
+        };
+        monitor.addListener(failing);
+        monitor.addListener(counting);
+        monitor.used = 1001;
+        monitor.check();
+        assertTrue(monitor.isHigh());
+        monitor.used = 0;
+        monitor.check();
+        assertFalse(monitor.isHigh());
+        assertEquals(2, notifications.get());
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    public void testPeriodicCheckSurvivesExceptions() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final CountDownLatch checks = new CountDownLatch(3);
+        try {
+            DirectMemoryPressureMonitor monitor = new DirectMemoryPressureMonitor(
+                    executor, 1, TimeUnit.MILLISECONDS, 1000, 500) {
+                @Override
+                public long usedDirectMemory() {
+                    checks.countDown();
+                    throw new IllegalStateException();
+                }
+            };
+            checks.await();
+            monitor.stop();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testPausesReadingUnderPressure() {
+        TestMonitor monitor = new TestMonitor();
+        ReadCounter reads = new ReadCounter();
+        EventRecorder events = new EventRecorder();
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(65536));
+        channel.pipeline().addLast(reads, new MemoryPressureHandler(monitor, 1024), events);
+        RecvByteBufAllocator.Handle handle = channel.unsafe().recvBufAllocHandle();
+        assertEquals(65536, handle.guess());
+
+        monitor.used = 2048;
+        monitor.check();
+        channel.runPendingTasks();
+        assertEquals(1, events.events.size());
+        assertSame(MemoryPressureEvent.HIGH, events.events.get(0));
+        assertEquals(1024, handle.guess());
+        assertFalse(handle.continueReading());
+
+        int count = reads.count;
+        channel.read();
+        assertEquals(count, reads.count);
+
+        monitor.used = 0;
+        monitor.check();
+        channel.runPendingTasks();
+        assertEquals(2, events.events.size());
+        assertSame(MemoryPressureEvent.NORMAL, events.events.get(1));
+        assertEquals(count + 1, reads.count);
+        assertEquals(65536, handle.guess());
+        assertFalse(channel.finish());
+    }
+
+    private static final class TestMonitor extends DirectMemoryPressureMonitor {
+        long used;
+
+        TestMonitor() {
+            super(null, 0, TimeUnit.MILLISECONDS, 1000, 500);
+        }
+
+        @Override
+        public long usedDirectMemory() {
+            return used;
+        }
+    }
+
+    private static final class ReadCounter extends ChannelOutboundHandlerAdapter {
+        int count;
+
+        @Override
+        public void read(ChannelHandlerContext ctx) throws Exception {
+            count++;
+            ctx.read();
+        }
+    }
+
+    private static final class EventRecorder extends ChannelInboundHandlerAdapter {
+        final List<Object> events = new ArrayList<Object>();
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            events.add(evt);
+        }
+    }
+}
@@ -109,4 +109,9 @@ public class ByteBufUtilDecodeStringBenchmark extends AbstractMicrobenchmark {
     public String decodeString() {
         return ByteBufUtil.decodeString(buffer, buffer.readerIndex(), size, charset);
     }
+
+    @Benchmark
+    public boolean isText() {
+        return ByteBufUtil.isText(buffer, buffer.readerIndex(), size, charset);
+    }
 }
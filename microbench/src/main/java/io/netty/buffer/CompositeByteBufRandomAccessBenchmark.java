@@ -40,13 +40,25 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
         SMALL_CHUNKS {
             @Override
             ByteBuf newBuffer(int length) {
-                return newBufferSmallChunks(length);
+                return newBufferSmallChunks(length, false);
             }
         },
         LARGE_CHUNKS {
             @Override
             ByteBuf newBuffer(int length) {
-                return newBufferLargeChunks(length);
+                return newBufferLargeChunks(length, false);
+            }
+        },
+        SMALL_CHUNKS_ROPE {
+            @Override
+            ByteBuf newBuffer(int length) {
+                return newBufferSmallChunks(length, true);
+            }
+        },
+        LARGE_CHUNKS_ROPE {
+            @Override
+            ByteBuf newBuffer(int length) {
+                return newBufferLargeChunks(length, true);
             }
         };
         abstract ByteBuf newBuffer(int length);
@@ -84,7 +96,7 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
         return buffer.setLong(i, 1);
     }
 
-    private static ByteBuf newBufferSmallChunks(int length) {
+    private static ByteBuf newBufferSmallChunks(int length, boolean rope) {
 
         List<ByteBuf> buffers = new ArrayList<ByteBuf>(((length + 1) / 45) * 19);
         for (int i = 0; i < length + 45; i += 45) {
@@ -95,13 +107,10 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
             buffers.add(EMPTY_BUFFER);
         }
 
-        ByteBuf buffer = wrappedBuffer(Integer.MAX_VALUE, buffers.toArray(new ByteBuf[0]));
-
-        // Truncate to the requested capacity.
-        return buffer.capacity(length).writerIndex(0);
+        return newBuffer(buffers, length, rope);
     }
 
-    private static ByteBuf newBufferLargeChunks(int length) {
+    private static ByteBuf newBufferLargeChunks(int length, boolean rope) {
 
         List<ByteBuf> buffers = new ArrayList<ByteBuf>((length + 1) / 512);
         for (int i = 0; i < length + 1536; i += 1536) {
@@ -110,7 +119,20 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
             buffers.add(wrappedBuffer(new byte[1024]));
         }
 
-        ByteBuf buffer = wrappedBuffer(Integer.MAX_VALUE, buffers.toArray(new ByteBuf[0]));
+        return newBuffer(buffers, length, rope);
+    }
+
+    private static ByteBuf newBuffer(List<ByteBuf> buffers, int length, boolean rope) {
+        ByteBuf buffer;
+        if (rope) {
+            RopeByteBuf ropeBuffer = new RopeByteBuf(UnpooledByteBufAllocator.DEFAULT, false);
+            for (ByteBuf buf : buffers) {
+                ropeBuffer.addComponent(buf);
+            }
+            buffer = ropeBuffer;
+        } else {
+            buffer = wrappedBuffer(Integer.MAX_VALUE, buffers.toArray(new ByteBuf[0]));
+        }
 
         // Truncate to the requested capacity.
         return buffer.capacity(length).writerIndex(0);
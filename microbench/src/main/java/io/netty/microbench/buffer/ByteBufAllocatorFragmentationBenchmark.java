@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.AdaptiveByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays allocations with realistic sizes and lifetimes on several threads, and reports the memory efficiency of the
+ * allocator at the end of each iteration as secondary results in addition to the throughput:
+ * <ul>
+ *     <li>residentBytes: the direct memory that is held by the allocator</li>
+ *     <li>usedBytes: the memory of the size classes of the live and cached buffers, only known for the pooled
+ *     allocator</li>
+ *     <li>requestedBytes: the capacity that was requested for the live buffers</li>
+ * </ul>
+ * The lifetime of a buffer is the number of allocations that the same thread does until it is released. Instead of
+ * a synthetic workload, a trace can be replayed by passing {@code -p trace=<file>}, with one allocation per line in
+ * the form {@code <size> <lifetime>}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(4)
+public class ByteBufAllocatorFragmentationBenchmark extends AbstractMicrobenchmark {
+
+    private static final int MAX_LIFETIME = 1024;
+
+    public enum AllocatorType {
+        POOLED,
+        ADAPTIVE
+    }
+
+    /**
+     * Synthetic mixes of allocations, as {@code weight, min size, max size, min lifetime, max lifetime}.
+     */
+    public enum Workload {
+        // Headers, bodies and aggregated requests.
+        HTTP(new int[][] {
+                { 60, 64, 512, 1, 8 },
+                { 30, 1024, 16 * 1024, 8, 64 },
+                { 10, 64 * 1024, 1024 * 1024, 64, 512 }
+        }),
+        // Small frames and a few long lived streams.
+        GRPC(new int[][] {
+                { 70, 32, 256, 1, 4 },
+                { 25, 1024, 8 * 1024, 4, 32 },
+                { 5, 16 * 1024, 64 * 1024, 256, 1000 }
+        }),
+        MIXED(new int[][] {
+                { 40, 32, 512, 1, 8 },
+                { 30, 512, 8 * 1024, 4, 64 },
+                { 20, 8 * 1024, 64 * 1024, 16, 256 },
+                { 10, 64 * 1024, 4 * 1024 * 1024, 1, 1000 }
+        });
+
+        private final int[][] buckets;
+        private final int totalWeight;
+
+        Workload(int[][] buckets) {
+            this.buckets = buckets;
+            int totalWeight = 0;
+            for (int[] bucket : buckets) {
+                totalWeight += bucket[0];
+            }
+            this.totalWeight = totalWeight;
+        }
+
+        void next(Random random, int[] allocation) {
+            int weight = random.nextInt(totalWeight);
+            for (int[] bucket : buckets) {
+                weight -= bucket[0];
+                if (weight < 0) {
+                    allocation[0] = bucket[1] + random.nextInt(bucket[2] - bucket[1] + 1);
+                    allocation[1] = bucket[3] + random.nextInt(bucket[4] - bucket[3] + 1);
+                    return;
+                }
+            }
+            throw new AssertionError();
+        }
+    }
+
+    @Param
+    public AllocatorType allocatorType;
+
+    @Param
+    public Workload workload;
+
+    @Param({ "" })
+    public String trace;
+
+    private ByteBufAllocator allocator;
+    // Sizes and lifetimes of the trace, if one is replayed.
+    private int[] traceSizes;
+    private int[] traceLifetimes;
+    private final LongCounter requestedBytes = PlatformDependent.newLongCounter();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch (allocatorType) {
+            case POOLED:
+                allocator = new PooledByteBufAllocator(true);
+                break;
+            case ADAPTIVE:
+                allocator = new AdaptiveByteBufAllocator(true);
+                break;
+            default:
+                throw new Error();
+        }
+        if (!trace.isEmpty()) {
+            loadTrace();
+        }
+    }
+
+    private void loadTrace() throws IOException {
+        List<int[]> allocations = new ArrayList<int[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(trace),
+                CharsetUtil.US_ASCII));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                allocations.add(new int[] {
+                        Integer.parseInt(fields[0]),
+                        Math.max(1, Math.min(MAX_LIFETIME - 1, Integer.parseInt(fields[1])))
+                });
+            }
+        } finally {
+            reader.close();
+        }
+        if (allocations.isEmpty()) {
+            throw new IllegalArgumentException("trace " + trace + " does not contain any allocation");
+        }
+        traceSizes = new int[allocations.size()];
+        traceLifetimes = new int[allocations.size()];
+        for (int i = 0; i < traceSizes.length; i++) {
+            traceSizes[i] = allocations.get(i)[0];
+            traceLifetimes[i] = allocations.get(i)[1];
+        }
+    }
+
+    private long residentBytes() {
+        return ((ByteBufAllocatorMetricProvider) allocator).metric().usedDirectMemory();
+    }
+
+    private long usedBytes() {
+        if (!(allocator instanceof PooledByteBufAllocator)) {
+            return 0;
+        }
+        long used = 0;
+        for (PoolArenaMetric arena : ((PooledByteBufAllocator) allocator).metric().directArenas()) {
+            // Huge allocations are not part of any chunk.
+            long huge = arena.numActiveBytes();
+            for (PoolChunkListMetric chunkList : arena.chunkLists()) {
+                for (PoolChunkMetric chunk : chunkList) {
+                    used += chunk.chunkSize() - chunk.freeBytes();
+                    huge -= chunk.chunkSize();
+                }
+            }
+            used += Math.max(0, huge);
+        }
+        return used;
+    }
+
+    /**
+     * Reports the memory efficiency at the end of each iteration. JMH sums the counters of all threads, so only the
+     * first thread reports the values, which are shared by all threads. The summary table also sums them over the
+     * iterations, while the secondary results show the average of an iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class MemoryCounters {
+        private ByteBufAllocatorFragmentationBenchmark benchmark;
+        private boolean report;
+
+        @Setup(Level.Trial)
+        public void setup(ByteBufAllocatorFragmentationBenchmark benchmark, ThreadParams threadParams) {
+            this.benchmark = benchmark;
+            report = threadParams.getThreadIndex() == 0;
+        }
+
+        public long residentBytes() {
+            return report ? benchmark.residentBytes() : 0;
+        }
+
+        public long usedBytes() {
+            return report ? benchmark.usedBytes() : 0;
+        }
+
+        public long requestedBytes() {
+            return report ? benchmark.requestedBytes.value() : 0;
+        }
+    }
+
+    /**
+     * The live buffers of a thread, by the allocation at which they are released.
+     */
+    @State(Scope.Thread)
+    public static class Replay {
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<ByteBuf>[] wheel = new ArrayDeque[MAX_LIFETIME];
+        final int[] allocation = new int[2];
+        Random random;
+        int traceIndex;
+        long step;
+
+        @Setup(Level.Trial)
+        public void setup(ByteBufAllocatorFragmentationBenchmark benchmark, ThreadParams threadParams) {
+            int index = threadParams.getThreadIndex();
+            random = new Random(index);
+            if (benchmark.traceSizes != null) {
+                // Every thread starts at a different position of the trace.
+                traceIndex = (int) ((long) benchmark.traceSizes.length * index / threadParams.getThreadCount());
+            }
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new ArrayDeque<ByteBuf>();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(ByteBufAllocatorFragmentationBenchmark benchmark) {
+            for (ArrayDeque<ByteBuf> buffers : wheel) {
+                release(buffers, benchmark);
+            }
+        }
+
+        void release(ArrayDeque<ByteBuf> buffers, ByteBufAllocatorFragmentationBenchmark benchmark) {
+            for (;;) {
+                ByteBuf buf = buffers.poll();
+                if (buf == null) {
+                    return;
+                }
+                benchmark.requestedBytes.add(-buf.capacity());
+                buf.release();
+            }
+        }
+    }
+
+    @Benchmark
+    public ByteBuf allocate(Replay replay, MemoryCounters counters) {
+        int slot = (int) (replay.step++ % MAX_LIFETIME);
+        replay.release(replay.wheel[slot], this);
+
+        int size;
+        int lifetime;
+        if (traceSizes != null) {
+            size = traceSizes[replay.traceIndex];
+            lifetime = traceLifetimes[replay.traceIndex];
+            if (++replay.traceIndex == traceSizes.length) {
+                replay.traceIndex = 0;
+            }
+        } else {
+            workload.next(replay.random, replay.allocation);
+            size = replay.allocation[0];
+            lifetime = Math.min(MAX_LIFETIME - 1, replay.allocation[1]);
+        }
+        ByteBuf buf = allocator.directBuffer(size, size);
+        requestedBytes.add(size);
+        replay.wheel[(slot + lifetime) % MAX_LIFETIME].add(buf);
+        return buf;
+    }
+}
@@ -55,6 +55,8 @@ public class ByteBufIndexOfBenchmark extends AbstractMicrobenchmark {
     int permutations;
 
     ByteBuf[] data;
+    // Like data, but the needle is at the start, so lastIndexOf() has to search the whole buffer.
+    ByteBuf[] reversedData;
     private int i;
 
     @Param({ "0" })
@@ -75,6 +77,7 @@ public class ByteBufIndexOfBenchmark extends AbstractMicrobenchmark {
         SplittableRandom random = new SplittableRandom(seed);
         permutations = 1 << logPermutations;
         this.data = new ByteBuf[permutations];
+        this.reversedData = new ByteBuf[permutations];
         final ByteBufAllocator allocator = pooled? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
         for (int i = 0; i < permutations; ++i) {
             data[i] = direct? allocator.directBuffer(size, size) : allocator.heapBuffer(size, size);
@@ -90,8 +93,10 @@ public class ByteBufIndexOfBenchmark extends AbstractMicrobenchmark {
                 }
                 data[i].setByte(j, value);
             }
+            reversedData[i] = data[i].copy(0, size);
             final int foundIndex = random.nextInt(Math.max(0, size - 8), size);
             data[i].setByte(foundIndex, needleByte);
+            reversedData[i].setByte(size - 1 - foundIndex, needleByte);
         }
     }
 
@@ -104,11 +109,19 @@ public class ByteBufIndexOfBenchmark extends AbstractMicrobenchmark {
         return getData().indexOf(0, size, needleByte);
     }
 
+    @Benchmark
+    public int lastIndexOf() {
+        return reversedData[i++ & (permutations - 1)].indexOf(size, 0, needleByte);
+    }
+
     @TearDown
     public void releaseBuffers() {
         for (ByteBuf buffer : data) {
             buffer.release();
         }
+        for (ByteBuf buffer : reversedData) {
+            buffer.release();
+        }
     }
 
 }
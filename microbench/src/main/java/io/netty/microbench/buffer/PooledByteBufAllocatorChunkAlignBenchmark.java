@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Compares the random access throughput of direct buffers whose chunks are aligned to the huge page size with
+ * buffers whose chunks are not aligned at all. The aligned chunks can only be backed by huge pages if transparent huge
+ * pages are enabled for all memory ({@code /sys/kernel/mm/transparent_hugepage/enabled} is {@code always}).
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PooledByteBufAllocatorChunkAlignBenchmark extends AbstractMicrobenchmark {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int ACCESSES = 4096;
+
+    // "0" disables the alignment, "2097152" aligns the chunks to 2 MiB huge pages.
+    @Param({ "0", "2097152" })
+    public int chunkAlignment;
+
+    // The amount of memory that is accessed, in MiB.
+    @Param({ "64", "512" })
+    public int memory;
+
+    private ByteBuf[] buffers;
+    private int[] bufferIndexes;
+    private int[] offsets;
+
+    @Setup
+    public void setup() {
+        // Use 16 MiB chunks, which are a multiple of the huge page size.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, false, 0,
+                chunkAlignment);
+        buffers = new ByteBuf[memory * 1024 * 1024 / BUFFER_SIZE];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = allocator.directBuffer(BUFFER_SIZE, BUFFER_SIZE);
+            // Touch every page so the memory is mapped before we measure.
+            for (int j = 0; j < BUFFER_SIZE; j += 4096) {
+                buffers[i].setLong(j, j);
+            }
+        }
+        Random random = new Random(42);
+        bufferIndexes = new int[ACCESSES];
+        offsets = new int[ACCESSES];
+        for (int i = 0; i < ACCESSES; i++) {
+            bufferIndexes[i] = random.nextInt(buffers.length);
+            offsets[i] = random.nextInt(BUFFER_SIZE / 8) * 8;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (ByteBuf buffer : buffers) {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long randomRead() {
+        ByteBuf[] buffers = this.buffers;
+        int[] bufferIndexes = this.bufferIndexes;
+        int[] offsets = this.offsets;
+        long sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += buffers[bufferIndexes[i]].getLong(offsets[i]);
+        }
+        return sum;
+    }
+}
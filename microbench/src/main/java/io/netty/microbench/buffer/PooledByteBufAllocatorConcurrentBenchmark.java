@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the contention on the {@link io.netty.buffer.PoolArena} locks. The benchmark threads are not
+ * {@link io.netty.util.concurrent.FastThreadLocalThread}s and the thread caches are disabled, so every allocation and
+ * deallocation goes through the arena. Use {@code -t} to scale the number of threads beyond the default.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(64)
+public class PooledByteBufAllocatorConcurrentBenchmark extends AbstractMicrobenchmark {
+
+    // "00256" and "01024" are small sizes which are served by subpages, "16384" and "65536" are normal sizes.
+    @Param({ "00256", "01024", "16384", "65536" })
+    public int size;
+
+    // The number of arenas that are shared by all the benchmark threads.
+    @Param({ "1", "4" })
+    public int arenas;
+
+    private ByteBufAllocator allocator;
+
+    @Setup
+    public void setup() {
+        allocator = new PooledByteBufAllocator(true, arenas, arenas, PooledByteBufAllocator.defaultPageSize(),
+                PooledByteBufAllocator.defaultMaxOrder(), 0, 0, false);
+    }
+
+    @Benchmark
+    public boolean allocateReleaseDirect() {
+        return allocator.directBuffer(size).release();
+    }
+
+    @Benchmark
+    public boolean allocateReleaseHeap() {
+        return allocator.heapBuffer(size).release();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pooled direct buffers which access their memory via {@code sun.misc.Unsafe}
+ * ({@code PooledUnsafeDirectByteBuf}) with the ones that only use the {@link java.nio.ByteBuffer} API
+ * ({@code PooledDirectByteBuf}), for primitive get/set and bulk copies.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 8, time = 1)
+public class PooledDirectByteBufAccessBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "64", "1024", "16384" })
+    private int size;
+
+    @Param({ "false", "true" })
+    private boolean noUnsafe;
+
+    private PooledByteBufAllocator allocator;
+    private ByteBuf buffer;
+    private ByteBuf source;
+    private byte[] array;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("io.netty.noUnsafe", Boolean.valueOf(noUnsafe).toString());
+        allocator = new PooledByteBufAllocator(true);
+        buffer = allocator.directBuffer(size, size);
+        if (buffer.hasMemoryAddress() == noUnsafe) {
+            throw new IllegalStateException("io.netty.noUnsafe=" + noUnsafe + " was not applied: " + buffer);
+        }
+        source = allocator.directBuffer(size, size);
+        array = new byte[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = (byte) i;
+        }
+        source.writeBytes(array);
+        buffer.writeBytes(array);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buffer.release();
+        source.release();
+    }
+
+    @Benchmark
+    public long setGetLong() {
+        return buffer.setLong(0, size).getLong(0);
+    }
+
+    @Benchmark
+    public long getLongs() {
+        ByteBuf buffer = this.buffer;
+        long sum = 0;
+        for (int i = 0; i + 8 <= size; i += 8) {
+            sum += buffer.getLong(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ByteBuf setLongs() {
+        ByteBuf buffer = this.buffer;
+        for (int i = 0; i + 8 <= size; i += 8) {
+            buffer.setLong(i, i);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuf copyFromDirect() {
+        return buffer.setBytes(0, source, 0, size);
+    }
+
+    @Benchmark
+    public ByteBuf copyFromArray() {
+        return buffer.setBytes(0, array, 0, size);
+    }
+
+    @Benchmark
+    public byte[] copyToArray() {
+        buffer.getBytes(0, array, 0, size);
+        return array;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel;
+
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.LoadAwareEventLoopChooserFactory;
+import io.netty.channel.MultithreadEventLoopGroup;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
+import io.netty.util.concurrent.EventExecutorChooserFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates a server whose connections are assigned to the event loops by the {@link EventExecutorChooserFactory}.
+ * Most connections are short and cheap, but a few live long and keep their event loop busy. The benchmark measures
+ * the latency of the short connections, whose p99 depends on how well the heavy connections are spread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class EventLoopChooserBenchmark extends AbstractMicrobenchmark {
+
+    private static final int EVENT_LOOPS = 4;
+    // Each heavy connection keeps its event loop busy for 20% of the time, 50% per event loop on average.
+    private static final int HEAVY_CONNECTIONS = 10;
+    private static final long HEAVY_WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long HEAVY_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SHORT_WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+
+    @Param({ "roundRobin", "loadAware" })
+    public String chooser;
+
+    @Param({ "0.05" })
+    public double heavyRatio;
+
+    private EventLoopGroup group;
+    private final Queue<HeavyConnection> heavyConnections = new ArrayDeque<HeavyConnection>();
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setup() {
+        EventExecutorChooserFactory chooserFactory = "loadAware".equals(chooser) ?
+                LoadAwareEventLoopChooserFactory.INSTANCE : DefaultEventExecutorChooserFactory.INSTANCE;
+        group = new MultithreadEventLoopGroup(EVENT_LOOPS, (Executor) null, chooserFactory) {
+            @Override
+            protected EventLoop newChild(Executor executor, Object... args) {
+                return new SimulatedEventLoop(this, executor);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        HeavyConnection connection;
+        while ((connection = heavyConnections.poll()) != null) {
+            connection.close();
+        }
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+    }
+
+    @Benchmark
+    public Object acceptConnection() throws Exception {
+        SimulatedEventLoop loop = (SimulatedEventLoop) group.next();
+        if (random.nextDouble() < heavyRatio) {
+            if (heavyConnections.size() == HEAVY_CONNECTIONS) {
+                // The oldest heavy connection is closed, so their lifetimes are skewed.
+                heavyConnections.poll().close();
+            }
+            heavyConnections.add(new HeavyConnection(loop));
+        }
+        return loop.submit(new ShortConnection(loop)).sync().getNow();
+    }
+
+    private static void work(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline) {
+            // Busy work.
+        }
+    }
+
+    private static final class ShortConnection implements Runnable {
+        private final SimulatedEventLoop loop;
+
+        ShortConnection(SimulatedEventLoop loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public void run() {
+            loop.connections.incrementAndGet();
+            work(SHORT_WORK_NANOS);
+            loop.connections.decrementAndGet();
+        }
+    }
+
+    private static final class HeavyConnection implements Runnable {
+        private final SimulatedEventLoop loop;
+        private final ScheduledFuture<?> future;
+
+        HeavyConnection(SimulatedEventLoop loop) {
+            this.loop = loop;
+            loop.connections.incrementAndGet();
+            future = loop.scheduleAtFixedRate(this, 0, HEAVY_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            work(HEAVY_WORK_NANOS);
+        }
+
+        void close() {
+            future.cancel(false);
+            loop.connections.decrementAndGet();
+        }
+    }
+
+    /**
+     * A {@link DefaultEventLoop} which counts its connections and its idle time like a transport would.
+     */
+    private static final class SimulatedEventLoop extends DefaultEventLoop {
+        final AtomicInteger connections = new AtomicInteger();
+
+        SimulatedEventLoop(EventLoopGroup parent, Executor executor) {
+            super(parent, executor);
+        }
+
+        @Override
+        public int registeredChannels() {
+            return connections.get();
+        }
+
+        @Override
+        protected void run() {
+            for (;;) {
+                Runnable task;
+                if (hasTasks()) {
+                    task = takeTask();
+                } else {
+                    idleStarted();
+                    try {
+                        task = takeTask();
+                    } finally {
+                        idleEnded();
+                    }
+                }
+                if (task != null) {
+                    runTask(task);
+                    updateLastExecutionTime();
+                }
+
+                if (confirmShutdown()) {
+                    break;
+                }
+            }
+        }
+    }
+}
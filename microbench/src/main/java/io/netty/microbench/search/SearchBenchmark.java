@@ -22,6 +22,7 @@ import io.netty.buffer.search.AbstractMultiSearchProcessorFactory;
 import io.netty.buffer.search.AbstractSearchProcessorFactory;
 import io.netty.buffer.search.SearchProcessorFactory;
 import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.CharsetUtil;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.CompilerControl;
 import org.openjdk.jmh.annotations.CompilerControl.Mode;
@@ -90,6 +91,26 @@ public class SearchBenchmark extends AbstractMicrobenchmark {
                 return randomBytes(rnd, 2048, 0, 1);
             }
         },
+        HTTP_HEADERS_END {
+            @Override
+            byte[] getNeedle(Random rnd) {
+                return "\r\n\r\n".getBytes(CharsetUtil.US_ASCII);
+            }
+            @Override
+            byte[] getHaystack(Random rnd) {
+                return httpRequest(rnd);
+            }
+        },
+        HTTP_HEADER_NAME {
+            @Override
+            byte[] getNeedle(Random rnd) {
+                return "\r\nContent-Length:".getBytes(CharsetUtil.US_ASCII);
+            }
+            @Override
+            byte[] getHaystack(Random rnd) {
+                return httpRequest(rnd);
+            }
+        },
         WORST_CASE { // Bitap will fail on it because the needle is >64 bytes long
             @Override
             byte[] getNeedle(Random rnd) {
@@ -171,6 +192,26 @@ public class SearchBenchmark extends AbstractMicrobenchmark {
         return haystack.forEachByte(ahoCorasicFactory.newSearchProcessor());
     }
 
+    private static byte[] httpRequest(Random rnd) {
+        String headers = "POST /api/v1/orders?customer=1234567&sort=desc HTTP/1.1\r\n" +
+                "Host: api.example.com\r\n" +
+                "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                "Chrome/103.0.0.0 Safari/537.36\r\n" +
+                "Accept: application/json, text/plain, */*\r\n" +
+                "Accept-Language: en-US,en;q=0.9\r\n" +
+                "Accept-Encoding: gzip, deflate, br\r\n" +
+                "Cookie: session=3f2a7c9e1b4d4e8f9a0b1c2d3e4f5a6b; theme=dark; tracking=disabled\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Connection: keep-alive\r\n" +
+                "Content-Length: 512\r\n" +
+                "\r\n";
+        byte[] headerBytes = headers.getBytes(CharsetUtil.US_ASCII);
+        byte[] request = Arrays.copyOf(headerBytes, headerBytes.length + 512);
+        byte[] body = randomBytes(rnd, 512, ' ', 126);
+        System.arraycopy(body, 0, request, headerBytes.length, body.length);
+        return request;
+    }
+
     private static byte[] randomBytes(Random rnd, int size, int from, int to) {
         byte[] bytes = new byte[size];
         for (int i = 0; i < size; i++) {
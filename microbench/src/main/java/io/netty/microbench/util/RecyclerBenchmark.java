@@ -16,18 +16,26 @@
 package io.netty.microbench.util;
 
 import io.netty.util.Recycler;
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.infra.ThreadParams;
 import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
 
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -96,6 +104,114 @@ public class RecyclerBenchmark extends AbstractMicrobenchmark {
         } while (!control.stopMeasurement);
     }
 
+    private static final int CROSS_THREAD_CONSUMERS = 3;
+
+    @State(Scope.Group)
+    public static class CrossThreadState {
+        @Param({ "false", "true" })
+        public boolean magazines;
+
+        Recycler<DummyObject> recycler;
+        // Every consumer has its own queue, so each queue has a single producer and a single consumer.
+        final Queue<DummyObject>[] queues;
+        // Only changed by the producer.
+        int nextQueue;
+
+        @SuppressWarnings("unchecked")
+        public CrossThreadState() {
+            queues = new Queue[CROSS_THREAD_CONSUMERS];
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = PlatformDependent.newFixedMpscQueue(1024 / CROSS_THREAD_CONSUMERS);
+            }
+        }
+
+        @Setup(Level.Trial)
+        public void setup() {
+            recycler = new Recycler<DummyObject>(4096, 8, 32, magazines) {
+                @Override
+                protected DummyObject newObject(Recycler.Handle<DummyObject> handle) {
+                    return new DummyObject(handle);
+                }
+            };
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CrossThreadConsumerState {
+        Queue<DummyObject> queue;
+
+        @Setup(Level.Trial)
+        public void setup(CrossThreadState state, ThreadParams threadParams) {
+            queue = state.queues[threadParams.getSubgroupThreadIndex()];
+        }
+    }
+
+    /**
+     * Reports the hits, misses and drops of the recycler during an iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RecyclerCounters {
+        private Recycler<?> recycler;
+        private long hits;
+        private long misses;
+        private long drops;
+
+        @Setup(Level.Iteration)
+        public void setup(CrossThreadState state) {
+            recycler = state.recycler;
+            hits = recycler.numHits();
+            misses = recycler.numMisses();
+            drops = recycler.numDrops();
+        }
+
+        public long hits() {
+            return recycler.numHits() - hits;
+        }
+
+        public long misses() {
+            return recycler.numMisses() - misses;
+        }
+
+        public long drops() {
+            return recycler.numDrops() - drops;
+        }
+    }
+
+    // One thread takes the objects out of its pool and hands them to several threads which recycle them, like
+    // requests that are decoded on the event loop and processed by an offload executor.
+    @Benchmark
+    @Group("crossThread")
+    @GroupThreads(1)
+    public void crossThreadProducer(CrossThreadState state, RecyclerCounters counters, Control control) {
+        Queue<DummyObject>[] queues = state.queues;
+        DummyObject object = state.recycler.get();
+        while (!control.stopMeasurement) {
+            // Hand the objects to the consumers in turn, and skip the queues of consumers which fall behind.
+            Queue<DummyObject> queue = queues[state.nextQueue];
+            if (++state.nextQueue == queues.length) {
+                state.nextQueue = 0;
+            }
+            if (queue.offer(object)) {
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("crossThread")
+    @GroupThreads(CROSS_THREAD_CONSUMERS)
+    public void crossThreadConsumer(CrossThreadConsumerState state, Control control) {
+        DummyObject object;
+        do {
+            object = state.queue.poll();
+            if (object != null) {
+                object.recycle();
+                return;
+            }
+        } while (!control.stopMeasurement);
+    }
+
     @SuppressWarnings("unused")
     private static final class DummyObject {
         private final Recycler.Handle<DummyObject> handle;
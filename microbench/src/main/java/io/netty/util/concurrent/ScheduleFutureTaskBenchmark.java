@@ -15,12 +15,14 @@
  */
 package io.netty.util.concurrent;
 
+import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
@@ -50,11 +52,15 @@ public class ScheduleFutureTaskBenchmark extends AbstractMicrobenchmark {
         @Param({ "100000" })
         int num;
 
+        @Param({ "false", "true" })
+        boolean timingWheel;
+
         AbstractScheduledEventExecutor eventLoop;
 
         @Setup(Level.Trial)
         public void reset() {
             eventLoop = (AbstractScheduledEventExecutor) new NioEventLoopGroup(1).next();
+            eventLoop.setTimingWheelEnabled(timingWheel);
         }
 
         @Setup(Level.Invocation)
@@ -106,4 +112,62 @@ public class ScheduleFutureTaskBenchmark extends AbstractMicrobenchmark {
         }
         return null;
     }
+
+    private static final int RESCHEDULES = 1000;
+
+    /**
+     * An event loop with many outstanding timeouts, like one that serves many connections with idle or read timeouts.
+     */
+    @State(Scope.Benchmark)
+    public static class OutstandingState {
+
+        @Param({ "10000", "100000", "1000000", "10000000" })
+        int outstanding;
+
+        @Param({ "false", "true" })
+        boolean timingWheel;
+
+        AbstractScheduledEventExecutor eventLoop;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            eventLoop = (AbstractScheduledEventExecutor) new NioEventLoopGroup(1).next();
+            eventLoop.setTimingWheelEnabled(timingWheel);
+            eventLoop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(42);
+                    for (int i = 0; i < outstanding; i++) {
+                        eventLoop.schedule(NO_OP, 1000 + random.nextInt(60000), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }).syncUninterruptibly();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            eventLoop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    eventLoop.cancelScheduledTasks();
+                }
+            }).awaitUninterruptibly();
+            eventLoop.parent().shutdownGracefully().awaitUninterruptibly();
+        }
+    }
+
+    // Schedules a timeout and cancels it again on the event loop, like a write timeout of a write that completes.
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(RESCHEDULES)
+    public Future<?> scheduleCancelWithOutstanding(final OutstandingState state) {
+        return state.eventLoop.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < RESCHEDULES; i++) {
+                    state.eventLoop.schedule(NO_OP, 30, TimeUnit.SECONDS).cancel(false);
+                }
+            }
+        }).syncUninterruptibly();
+    }
 }
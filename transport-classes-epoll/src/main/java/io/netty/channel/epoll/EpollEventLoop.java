@@ -26,6 +26,7 @@ import io.netty.channel.unix.IovArray;
 import io.netty.util.IntSupplier;
 import io.netty.util.collection.IntObjectHashMap;
 import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.EventExecutorMetricsListener;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
@@ -346,16 +347,21 @@ class EpollEventLoop extends SingleThreadEventLoop {
                         nextWakeupNanos.set(curDeadlineNanos);
                         try {
                             if (!hasTasks()) {
-                                if (curDeadlineNanos == prevDeadlineNanos) {
-                                    // No timer activity needed
-                                    strategy = epollWaitNoTimerChange();
-                                } else {
-                                    // Timerfd needs to be re-armed or disarmed
-                                    long result = epollWait(curDeadlineNanos);
-                                    // The result contains the actual return value and if a timer was used or not.
-                                    // We need to "unpack" using the helper methods exposed in Native.
-                                    strategy = Native.epollReady(result);
-                                    prevDeadlineNanos = Native.epollTimerWasUsed(result) ? curDeadlineNanos : NONE;
+                                idleStarted();
+                                try {
+                                    if (curDeadlineNanos == prevDeadlineNanos) {
+                                        // No timer activity needed
+                                        strategy = epollWaitNoTimerChange();
+                                    } else {
+                                        // Timerfd needs to be re-armed or disarmed
+                                        long result = epollWait(curDeadlineNanos);
+                                        // The result contains the actual return value and if a timer was used or
+                                        // not. We need to "unpack" using the helper methods exposed in Native.
+                                        strategy = Native.epollReady(result);
+                                        prevDeadlineNanos = Native.epollTimerWasUsed(result) ? curDeadlineNanos : NONE;
+                                    }
+                                } finally {
+                                    idleEnded();
                                 }
                             }
                         } finally {
@@ -370,12 +376,17 @@ class EpollEventLoop extends SingleThreadEventLoop {
                 }
 
                 final int ioRatio = this.ioRatio;
+                final EventExecutorMetricsListener metricsListener = metricsListener();
                 if (ioRatio == 100) {
+                    final long ioStartTime = metricsListener != null && strategy > 0 ? System.nanoTime() : 0;
                     try {
                         if (strategy > 0 && processReady(events, strategy)) {
                             prevDeadlineNanos = NONE;
                         }
                     } finally {
+                        if (metricsListener != null && strategy > 0) {
+                            metricsListener.ioProcessed(this, System.nanoTime() - ioStartTime);
+                        }
                         // Ensure we always run tasks.
                         runAllTasks();
                     }
@@ -388,6 +399,9 @@ class EpollEventLoop extends SingleThreadEventLoop {
                     } finally {
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (metricsListener != null) {
+                            metricsListener.ioProcessed(this, ioTime);
+                        }
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 } else {
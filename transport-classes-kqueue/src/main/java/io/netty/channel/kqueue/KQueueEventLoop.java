@@ -26,6 +26,7 @@ import io.netty.channel.unix.IovArray;
 import io.netty.util.IntSupplier;
 import io.netty.util.collection.IntObjectHashMap;
 import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.EventExecutorMetricsListener;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
@@ -235,7 +236,12 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                         // fall-through to SELECT since the busy-wait is not supported with kqueue
 
                     case SelectStrategy.SELECT:
-                        strategy = kqueueWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
+                        idleStarted();
+                        try {
+                            strategy = kqueueWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
+                        } finally {
+                            idleEnded();
+                        }
 
                         // 'wakenUp.compareAndSet(false, true)' is always evaluated
                         // before calling 'selector.wakeup()' to reduce the wake-up
@@ -273,12 +279,17 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                 }
 
                 final int ioRatio = this.ioRatio;
+                final EventExecutorMetricsListener metricsListener = metricsListener();
                 if (ioRatio == 100) {
+                    final long ioStartTime = metricsListener != null && strategy > 0 ? System.nanoTime() : 0;
                     try {
                         if (strategy > 0) {
                             processReady(strategy);
                         }
                     } finally {
+                        if (metricsListener != null && strategy > 0) {
+                            metricsListener.ioProcessed(this, System.nanoTime() - ioStartTime);
+                        }
                         runAllTasks();
                     }
                 } else {
@@ -290,6 +301,9 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                         }
                     } finally {
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (metricsListener != null && strategy > 0) {
+                            metricsListener.ioProcessed(this, ioTime);
+                        }
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 }
@@ -23,6 +23,7 @@ import io.netty.util.ResourceLeakHint;
 import io.netty.util.concurrent.AbstractEventExecutor;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.OrderedEventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import io.netty.util.internal.ObjectPool;
 import io.netty.util.internal.ObjectPool.Handle;
 import io.netty.util.internal.ObjectPool.ObjectCreator;
@@ -85,6 +86,14 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
      */
     private static final int INIT = 0;
 
+    /**
+     * If {@code true}, {@link #close(ChannelPromise)} and {@link #flush()} use
+     * {@link SingleThreadEventExecutor#executePriority(Runnable)} when called outside the event loop, unless
+     * outbound operations of the same channel are still queued, as they would be overtaken.
+     */
+    private static final boolean PRIORITIZE_CONTROL_TASKS =
+            SystemPropertyUtil.getBoolean("io.netty.transport.prioritizeControlTasks", false);
+
     private final DefaultChannelPipeline pipeline;
     private final String name;
     private final boolean ordered;
@@ -605,12 +614,12 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
         if (executor.inEventLoop()) {
             next.invokeClose(promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecuteControlTask(executor, new Runnable() {
                 @Override
                 public void run() {
                     next.invokeClose(promise);
                 }
-            }, promise, null, false);
+            }, promise);
         }
 
         return promise;
@@ -731,7 +740,7 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
             if (tasks == null) {
                 next.invokeTasks = tasks = new Tasks(next);
             }
-            safeExecute(executor, tasks.invokeFlushTask, channel().voidPromise(), null, false);
+            safeExecuteControlTask(executor, tasks.invokeFlushTask, channel().voidPromise());
         }
 
         return this;
@@ -980,8 +989,11 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
         return channel().hasAttr(key);
     }
 
-    private static boolean safeExecute(EventExecutor executor, Runnable runnable,
+    private boolean safeExecute(EventExecutor executor, Runnable runnable,
             ChannelPromise promise, Object msg, boolean lazy) {
+        if (PRIORITIZE_CONTROL_TASKS) {
+            runnable = new QueuedOutboundTask(pipeline, runnable);
+        }
         try {
             if (lazy && executor instanceof AbstractEventExecutor) {
                 ((AbstractEventExecutor) executor).lazyExecute(runnable);
@@ -990,6 +1002,9 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
             }
             return true;
         } catch (Throwable cause) {
+            if (PRIORITIZE_CONTROL_TASKS) {
+                pipeline.decrementQueuedOutboundTasks();
+            }
             try {
                 if (msg != null) {
                     ReferenceCountUtil.release(msg);
@@ -1001,6 +1016,20 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
         }
     }
 
+    private boolean safeExecuteControlTask(EventExecutor executor, Runnable runnable, ChannelPromise promise) {
+        if (PRIORITIZE_CONTROL_TASKS && executor instanceof SingleThreadEventExecutor &&
+                !pipeline.hasQueuedOutboundTasks()) {
+            try {
+                ((SingleThreadEventExecutor) executor).executePriority(runnable);
+                return true;
+            } catch (Throwable cause) {
+                promise.setFailure(cause);
+                return false;
+            }
+        }
+        return safeExecute(executor, runnable, promise, null, false);
+    }
+
     @Override
     public String toHintString() {
         return '\'' + name + "' will handle the message from this point.";
@@ -1098,6 +1127,30 @@ abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, R
         }
     }
 
+    /**
+     * Counts the outbound operations of a {@link DefaultChannelPipeline} which wait in the task queue of an executor,
+     * see {@link #PRIORITIZE_CONTROL_TASKS}.
+     */
+    private static final class QueuedOutboundTask implements Runnable {
+        private final DefaultChannelPipeline pipeline;
+        private final Runnable task;
+
+        QueuedOutboundTask(DefaultChannelPipeline pipeline, Runnable task) {
+            this.pipeline = pipeline;
+            this.task = task;
+            pipeline.incrementQueuedOutboundTasks();
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                pipeline.decrementQueuedOutboundTasks();
+            }
+        }
+    }
+
     private static final class Tasks {
         private final AbstractChannelHandlerContext next;
         private final Runnable invokeChannelReadCompleteTask = new Runnable() {
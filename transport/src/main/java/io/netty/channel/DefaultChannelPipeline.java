@@ -37,6 +37,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.WeakHashMap;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
@@ -61,6 +62,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private static final AtomicReferenceFieldUpdater<DefaultChannelPipeline, MessageSizeEstimator.Handle> ESTIMATOR =
             AtomicReferenceFieldUpdater.newUpdater(
                     DefaultChannelPipeline.class, MessageSizeEstimator.Handle.class, "estimatorHandle");
+    private static final AtomicIntegerFieldUpdater<DefaultChannelPipeline> QUEUED_OUTBOUND_TASKS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(DefaultChannelPipeline.class, "queuedOutboundTasks");
     final AbstractChannelHandlerContext head;
     final AbstractChannelHandlerContext tail;
 
@@ -71,6 +74,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     private Map<EventExecutorGroup, EventExecutor> childExecutors;
     private volatile MessageSizeEstimator.Handle estimatorHandle;
+    private volatile int queuedOutboundTasks;
     private boolean firstRegistration = true;
 
     /**
@@ -112,6 +116,18 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         return handle;
     }
 
+    final void incrementQueuedOutboundTasks() {
+        QUEUED_OUTBOUND_TASKS_UPDATER.incrementAndGet(this);
+    }
+
+    final void decrementQueuedOutboundTasks() {
+        QUEUED_OUTBOUND_TASKS_UPDATER.decrementAndGet(this);
+    }
+
+    final boolean hasQueuedOutboundTasks() {
+        return queuedOutboundTasks != 0;
+    }
+
     final Object touch(Object msg, AbstractChannelHandlerContext next) {
         return touch ? ReferenceCountUtil.touch(msg, next) : msg;
     }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorChooserFactory;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.Random;
+
+/**
+ * {@link EventExecutorChooserFactory} which chooses the less loaded of two randomly picked {@link EventExecutor}s,
+ * instead of using them round-robin. This keeps long-lived busy {@link Channel}s from piling up on the same
+ * {@link EventLoop}s, and as only two {@link EventExecutor}s are compared, many {@link Channel}s registered at once do
+ * not all go to the same one, whose load is only updated once they are registered.
+ * <p>
+ * The load of an {@link EventExecutor} is computed from its {@link SingleThreadEventLoop#registeredChannels()},
+ * {@link SingleThreadEventExecutor#pendingTasks()} and {@link SingleThreadEventLoop#busyRatio()}, if supported.
+ * Use it with the constructors of the {@link EventLoopGroup}s that take an {@link EventExecutorChooserFactory}, for
+ * example for the child group of a {@code ServerBootstrap}.
+ */
+@UnstableApi
+public final class LoadAwareEventLoopChooserFactory implements EventExecutorChooserFactory {
+
+    public static final LoadAwareEventLoopChooserFactory INSTANCE = new LoadAwareEventLoopChooserFactory();
+
+    private LoadAwareEventLoopChooserFactory() { }
+
+    @Override
+    public EventExecutorChooser newChooser(EventExecutor[] executors) {
+        if (executors.length == 1) {
+            return new SingleEventExecutorChooser(executors[0]);
+        }
+        return new PowerOfTwoChoicesEventExecutorChooser(executors);
+    }
+
+    /**
+     * Returns the load of the given {@link EventExecutor}. Each registered {@link Channel} and pending task adds the
+     * same load, which is weighted by the busy ratio so {@link Channel}s count up to twice as much on a busy
+     * {@link EventLoop}.
+     */
+    static long load(EventExecutor executor) {
+        long work = 1;
+        int busyRatio = 0;
+        if (executor instanceof SingleThreadEventExecutor) {
+            work += ((SingleThreadEventExecutor) executor).pendingTasks();
+        }
+        if (executor instanceof SingleThreadEventLoop) {
+            SingleThreadEventLoop eventLoop = (SingleThreadEventLoop) executor;
+            work += Math.max(0, eventLoop.registeredChannels());
+            busyRatio = Math.max(0, eventLoop.busyRatio());
+        }
+        return work * (100 + busyRatio);
+    }
+
+    private static final class SingleEventExecutorChooser implements EventExecutorChooser {
+        private final EventExecutor executor;
+
+        SingleEventExecutorChooser(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return executor;
+        }
+    }
+
+    private static final class PowerOfTwoChoicesEventExecutorChooser implements EventExecutorChooser {
+        private final EventExecutor[] executors;
+
+        PowerOfTwoChoicesEventExecutorChooser(EventExecutor[] executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public EventExecutor next() {
+            Random random = PlatformDependent.threadLocalRandom();
+            int first = random.nextInt(executors.length);
+            int second = random.nextInt(executors.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            EventExecutor a = executors[first];
+            EventExecutor b = executors[second];
+            return load(a) <= load(b) ? a : b;
+        }
+    }
+}
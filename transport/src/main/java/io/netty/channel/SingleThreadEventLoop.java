@@ -15,6 +15,7 @@
  */
 package io.netty.channel;
 
+import io.netty.util.concurrent.EventExecutorMetricsListener;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.SingleThreadEventExecutor;
@@ -25,6 +26,7 @@ import io.netty.util.internal.UnstableApi;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract base class for {@link EventLoop}s that execute all its submitted tasks in a single thread.
@@ -35,8 +37,20 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     protected static final int DEFAULT_MAX_PENDING_TASKS = Math.max(16,
             SystemPropertyUtil.getInt("io.netty.eventLoop.maxPendingTasks", Integer.MAX_VALUE));
 
+    private static final long BUSY_RATIO_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private final Queue<Runnable> tailTasks;
 
+    // Written by the event loop thread, see idleStarted() and idleEnded().
+    private volatile long idleNanos;
+    private volatile long idleStartNanos;
+    private volatile boolean idle;
+    private volatile boolean idleTimeReported;
+    // The last sample of busyRatio(), which may be called by any thread.
+    private volatile long busyRatioSampleNanos = System.nanoTime();
+    private volatile long busyRatioSampleIdleNanos;
+    private volatile int busyRatio = -1;
+
     protected SingleThreadEventLoop(EventLoopGroup parent, ThreadFactory threadFactory, boolean addTaskWakesUp) {
         this(parent, threadFactory, addTaskWakesUp, DEFAULT_MAX_PENDING_TASKS, RejectedExecutionHandlers.reject());
     }
@@ -154,4 +168,61 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     public int registeredChannels() {
         return -1;
     }
+
+    /**
+     * Returns the percentage of the recent time in which this {@link EventLoop} was not waiting for I/O or tasks, or
+     * {@code -1} if operation is not supported. The value is computed again if it is at least {@code 100}
+     * milliseconds old, over the time since then. The returned value is not guaranteed to be exact accurate and
+     * should be viewed as a best effort.
+     */
+    @UnstableApi
+    public int busyRatio() {
+        if (!idleTimeReported) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        long elapsed = now - busyRatioSampleNanos;
+        if (elapsed >= BUSY_RATIO_WINDOW_NANOS) {
+            long idleNanos = this.idleNanos;
+            if (idle) {
+                idleNanos += now - idleStartNanos;
+            }
+            // Races with the event loop thread may count an idle period partly in the wrong window.
+            long idleInWindow = Math.max(0, Math.min(idleNanos - busyRatioSampleIdleNanos, elapsed));
+            busyRatio = (int) (100 - idleInWindow * 100 / elapsed);
+            busyRatioSampleIdleNanos = idleNanos;
+            busyRatioSampleNanos = now;
+        }
+        return busyRatio;
+    }
+
+    /**
+     * Called by the {@link EventLoop} before it waits for I/O or tasks, so it supports {@link #busyRatio()}. Each
+     * call must be followed by a call of {@link #idleEnded()} once it stopped waiting.
+     */
+    @UnstableApi
+    protected void idleStarted() {
+        assert inEventLoop();
+        idleStartNanos = System.nanoTime();
+        idle = true;
+        idleTimeReported = true;
+    }
+
+    /**
+     * Called by the {@link EventLoop} once it stopped waiting for I/O or tasks, which also reports the wakeup to the
+     * {@link #metricsListener()}.
+     *
+     * @see #idleStarted()
+     */
+    @UnstableApi
+    protected void idleEnded() {
+        assert inEventLoop();
+        idle = false;
+        long idleTime = System.nanoTime() - idleStartNanos;
+        idleNanos += idleTime;
+        EventExecutorMetricsListener metricsListener = metricsListener();
+        if (metricsListener != null) {
+            metricsListener.wokenUp(this, idleTime);
+        }
+    }
 }
@@ -23,6 +23,7 @@ import io.netty.channel.EventLoopTaskQueueFactory;
 import io.netty.channel.SelectStrategy;
 import io.netty.channel.SingleThreadEventLoop;
 import io.netty.util.IntSupplier;
+import io.netty.util.concurrent.EventExecutorMetricsListener;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
@@ -457,7 +458,12 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                         nextWakeupNanos.set(curDeadlineNanos);
                         try {
                             if (!hasTasks()) {
-                                strategy = select(curDeadlineNanos);
+                                idleStarted();
+                                try {
+                                    strategy = select(curDeadlineNanos);
+                                } finally {
+                                    idleEnded();
+                                }
                             }
                         } finally {
                             // This update is just to help block unnecessary selector wakeups
@@ -480,13 +486,18 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                 cancelledKeys = 0;
                 needsToSelectAgain = false;
                 final int ioRatio = this.ioRatio;
+                final EventExecutorMetricsListener metricsListener = metricsListener();
                 boolean ranTasks;
                 if (ioRatio == 100) {
+                    final long ioStartTime = metricsListener != null && strategy > 0 ? System.nanoTime() : 0;
                     try {
                         if (strategy > 0) {
                             processSelectedKeys();
                         }
                     } finally {
+                        if (metricsListener != null && strategy > 0) {
+                            metricsListener.ioProcessed(this, System.nanoTime() - ioStartTime);
+                        }
                         // Ensure we always run tasks.
                         ranTasks = runAllTasks();
                     }
@@ -497,6 +508,9 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                     } finally {
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (metricsListener != null) {
+                            metricsListener.ioProcessed(this, ioTime);
+                        }
                         ranTasks = runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 } else {
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.channel.local.LocalChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorChooserFactory.EventExecutorChooser;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadAwareEventLoopChooserFactoryTest {
+
+    @Test
+    public void testChoosesLessLoadedEventLoop() {
+        TestEventLoop idle = new TestEventLoop(1);
+        TestEventLoop loaded = new TestEventLoop(10);
+        try {
+            EventExecutorChooser chooser = LoadAwareEventLoopChooserFactory.INSTANCE.newChooser(
+                    new EventExecutor[] { loaded, idle });
+            for (int i = 0; i < 100; i++) {
+                assertSame(idle, chooser.next());
+            }
+        } finally {
+            idle.shutdownGracefully();
+            loaded.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testSpreadsChannels() throws Exception {
+        EventLoopGroup group = new MultithreadEventLoopGroup(
+                4, (Executor) null, LoadAwareEventLoopChooserFactory.INSTANCE) {
+            @Override
+            protected EventLoop newChild(Executor executor, Object... args) {
+                return new TestEventLoop(this, executor);
+            }
+        };
+        try {
+            assertEquals(-1, ((SingleThreadEventLoop) group.next()).busyRatio());
+            for (int i = 0; i < 400; i++) {
+                group.register(new LocalChannel()).sync();
+            }
+            for (EventExecutor executor : group) {
+                int registered = ((SingleThreadEventLoop) executor).registeredChannels();
+                assertTrue(registered > 50 && registered < 150, "registeredChannels: " + registered);
+            }
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    private static final class TestEventLoop extends DefaultEventLoop {
+        private int registeredChannels;
+
+        TestEventLoop(int registeredChannels) {
+            this.registeredChannels = registeredChannels;
+        }
+
+        TestEventLoop(EventLoopGroup parent, Executor executor) {
+            super(parent, executor);
+        }
+
+        @Override
+        public ChannelFuture register(ChannelPromise promise) {
+            registeredChannels++;
+            return super.register(promise);
+        }
+
+        @Override
+        public int registeredChannels() {
+            return registeredChannels;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.IntSupplier;
 import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorMetrics;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.ThreadPerTaskExecutor;
@@ -305,6 +306,71 @@ public class NioEventLoopTest extends AbstractEventLoopTest {
         }
     }
 
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS)
+    public void testBusyRatio() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(1);
+        final NioEventLoop loop = (NioEventLoop) group.next();
+
+        try {
+            assertEquals(-1, loop.busyRatio());
+            // Start the event loop, which then waits for I/O.
+            loop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+            Thread.sleep(200);
+            int idleRatio = loop.busyRatio();
+            assertTrue(idleRatio >= 0 && idleRatio < 50, "busyRatio: " + idleRatio);
+
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+                    while (System.nanoTime() < deadline) {
+                        // Keep the event loop busy.
+                    }
+                }
+            });
+            Thread.sleep(200);
+            int busyRatio = loop.busyRatio();
+            assertTrue(busyRatio > 50, "busyRatio: " + busyRatio);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS)
+    public void testMetrics() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(1);
+        final NioEventLoop loop = (NioEventLoop) group.next();
+        EventExecutorMetrics metrics = new EventExecutorMetrics();
+        loop.setMetricsListener(metrics);
+        Channel channel = new NioServerSocketChannel();
+        try {
+            loop.register(channel).syncUninterruptibly();
+            channel.bind(new InetSocketAddress(0)).syncUninterruptibly();
+
+            SocketChannel client = SocketChannel.open(channel.localAddress());
+            try {
+                EventExecutorMetrics.Snapshot snapshot;
+                while ((snapshot = metrics.snapshot()).ioTime().count() == 0) {
+                    Thread.sleep(10);
+                }
+                assertTrue(snapshot.wakeups() > 0, snapshot.toString());
+                assertTrue(snapshot.taskTime().count() > 0, snapshot.toString());
+            } finally {
+                client.close();
+            }
+        } finally {
+            channel.close().syncUninterruptibly();
+            group.shutdownGracefully();
+        }
+    }
+
     // Only reliable if run from event loop
     private static int registeredChannels(final SingleThreadEventLoop loop) throws Exception {
         return loop.submit(new Callable<Integer>() {